@@ -0,0 +1,356 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import burlap.behavior.singleagent.ApprenticeshipLearning;
+import burlap.behavior.singleagent.ApprenticeshipLearningRequest;
+import burlap.behavior.singleagent.EpisodeAnalysis;
+import burlap.behavior.singleagent.ExactFeatureExpectationEvaluator;
+import burlap.behavior.singleagent.FeatureExpectationEstimate;
+import burlap.behavior.singleagent.FeatureIndicatorCache;
+import burlap.behavior.singleagent.MaxMarginQPSolver;
+import burlap.behavior.singleagent.MaxMarginSolver;
+import burlap.behavior.singleagent.MinNormPointSolver;
+import burlap.behavior.singleagent.Policy;
+import burlap.behavior.singleagent.RandomStartStateGenerator;
+import burlap.behavior.singleagent.RolloutFeatureExpectationEstimator;
+import burlap.behavior.singleagent.StateFeatureExtractor;
+import burlap.behavior.singleagent.planning.commonpolicies.GreedyQPolicy;
+import burlap.behavior.singleagent.planning.stochastic.valueiteration.GridValueIteration;
+import burlap.behavior.singleagent.planning.stochastic.valueiteration.ValueIteration;
+import burlap.behavior.statehashing.DiscreteStateHashFactory;
+import burlap.behavior.statehashing.IndexedStateHashFactory;
+import burlap.behavior.statehashing.StateHashFactory;
+import burlap.debugtools.MicroBenchmark;
+import burlap.domain.singleagent.gridworld.GridWorldDomain;
+import burlap.oomdp.core.Domain;
+import burlap.oomdp.core.PropositionalFunction;
+import burlap.oomdp.core.State;
+import burlap.oomdp.core.TerminalFunction;
+import burlap.oomdp.singleagent.RewardFunction;
+import burlap.oomdp.singleagent.SADomain;
+
+/**
+ * Benchmarks the hot paths of apprenticeship learning on MacroGridWorld: feature expectation
+ * estimation, reward evaluation, the weight solvers, the projection step, value iteration at several
+ * grid sizes, and a full run of getLearnedPolicy. Each benchmark reports time and bytes allocated per
+ * operation, so changes to the IRL loop can be compared run to run.
+ *
+ * Usage: ApprenticeshipLearningBenchmark [grid sizes...], for example 8 16 32. Run with the same JVM
+ * flags each time, and nothing else busy on the machine.
+ * @author brawner
+ *
+ */
+public class ApprenticeshipLearningBenchmark {
+	private static final int 				MACRO_CELLS = 4;
+	private static final int 				EXPERT_EPISODES = 10;
+	private static final int 				EPISODE_LENGTH = 100;
+	private static final int 				HISTORY_LENGTH = 20;
+	private static final int 				CHECK_EPISODES = 2000;
+	private static final double 			CHECK_STANDARD_ERRORS = 5.0;
+	private static final double 			GAMMA = 0.99;
+
+	private MicroBenchmark 					benchmark;
+	private MacroGridWorld 					gridWorld;
+	private Domain 							domain;
+	private DiscreteStateHashFactory 		hashingFactory;
+	private IndexedStateHashFactory 		indexedHashingFactory;
+	private TerminalFunction 				terminalFunction;
+	private PropositionalFunction[] 		featureFunctions;
+	private StateFeatureExtractor 			featureExtractor;
+	private RewardFunction 					expertReward;
+	private State 							initialState;
+	private RandomStartStateGenerator 		startStateGenerator;
+	private List<EpisodeAnalysis> 			expertEpisodes;
+
+	/**
+	 * Sets up a grid world, an expert policy and its demonstrations
+	 * @param benchmark Harness the benchmarks are run with
+	 * @param size Width and height of the grid world
+	 */
+	public ApprenticeshipLearningBenchmark(MicroBenchmark benchmark, int size) {
+		this.benchmark = benchmark;
+		this.gridWorld = new MacroGridWorld(size, size, MACRO_CELLS, MACRO_CELLS);
+		this.gridWorld.setProbSucceedTransitionDynamics(.7);
+		this.domain = this.gridWorld.generateDomain();
+		this.hashingFactory = new DiscreteStateHashFactory();
+		this.hashingFactory.setAttributesForClass(GridWorldDomain.CLASSAGENT,
+				this.domain.getObjectClass(GridWorldDomain.CLASSAGENT).attributeList);
+		this.indexedHashingFactory = 
+				new IndexedStateHashFactory(MacroGridWorld.getStateIndexer(this.domain, this.gridWorld));
+		this.terminalFunction = new IRLGraphGeneration.IRLGridTF();
+		this.featureFunctions = MacroGridWorld.getPropositionalFunctions(this.domain, this.gridWorld);
+		Map<String, Double> rewards = MacroGridWorld.generateRandomRewards(this.featureFunctions, MACRO_CELLS);
+		this.featureExtractor = MacroGridWorld.getFeatureExtractor(this.gridWorld);
+		this.expertReward = 
+				new ApprenticeshipLearning.FeatureBasedRewardFunction(this.featureFunctions, this.featureExtractor, rewards);
+		this.initialState = MacroGridWorld.getOneAgentState(this.domain);
+		MacroGridWorld.setAgent(this.initialState, 0, 0);
+		this.startStateGenerator = new RandomStartStateGenerator((SADomain)this.domain, this.initialState);
+
+		ValueIteration planner = this.newPlanner(this.expertReward);
+		planner.planFromState(this.initialState);
+		Policy expertPolicy = new GreedyQPolicy(planner);
+		this.expertEpisodes = new ArrayList<EpisodeAnalysis>();
+		for (int i = 0; i < EXPERT_EPISODES; ++i) {
+			this.expertEpisodes.add(expertPolicy.evaluateBehavior(
+					this.startStateGenerator.generateState(), this.expertReward, this.terminalFunction, EPISODE_LENGTH));
+		}
+	}
+
+	private ValueIteration newPlanner(RewardFunction rewardFunction) {
+		return this.newPlanner(rewardFunction, this.hashingFactory);
+	}
+
+	private ValueIteration newPlanner(RewardFunction rewardFunction, StateHashFactory hashingFactory) {
+		ValueIteration planner = 
+				new ValueIteration(this.domain, rewardFunction, this.terminalFunction, GAMMA, hashingFactory, .01, 100);
+		planner.toggleDebugPrinting(false);
+		return planner;
+	}
+
+	public void benchmarkFeatureExpectations() {
+		final String size = this.gridWorld.getWidth() + "x" + this.gridWorld.getHeight();
+		final FeatureIndicatorCache featureCache =
+				new FeatureIndicatorCache(this.featureFunctions, this.hashingFactory, GAMMA);
+		this.benchmark.measureAndPrint("estimateFeatureExpectation " + size, new MicroBenchmark.Operation() {
+			@Override
+			public Object run() {
+				return ApprenticeshipLearning.estimateFeatureExpectation(expertEpisodes, featureFunctions, GAMMA);
+			}
+		});
+		this.benchmark.measureAndPrint("estimateFeatureExpectation cached " + size, new MicroBenchmark.Operation() {
+			@Override
+			public Object run() {
+				return featureCache.estimateFeatureExpectation(expertEpisodes);
+			}
+		});
+	}
+
+	public void benchmarkReward() {
+		final String size = this.gridWorld.getWidth() + "x" + this.gridWorld.getHeight();
+		final FeatureIndicatorCache featureCache =
+				new FeatureIndicatorCache(this.featureFunctions, this.hashingFactory, GAMMA);
+		double[] weights = new double[this.featureFunctions.length];
+		Random random = new Random(0);
+		for (int i = 0; i < weights.length; ++i) {
+			weights[i] = random.nextGaussian();
+		}
+		final RewardFunction linearReward = ApprenticeshipLearning.generateRewardFunction(
+				featureCache, new ApprenticeshipLearning.FeatureWeights(weights, 0.0));
+		final List<State> states = this.expertEpisodes.get(0).stateSequence;
+
+		this.benchmark.measureAndPrint("generateRewardFunction.reward " + size, new MicroBenchmark.Operation() {
+			@Override
+			public Object run() {
+				double sum = 0.0;
+				for (State state : states) {
+					sum += linearReward.reward(state, null, state);
+				}
+				return sum;
+			}
+		});
+		this.benchmark.measureAndPrint("FeatureBasedRewardFunction.reward " + size, new MicroBenchmark.Operation() {
+			@Override
+			public Object run() {
+				double sum = 0.0;
+				for (State state : states) {
+					sum += expertReward.reward(state, null, state);
+				}
+				return sum;
+			}
+		});
+	}
+
+	/**
+	 * Checks that the exact and sampled feature expectations of the expert agree when episodes end in
+	 * terminal states, so the two estimators count the same states. Episodes end in the grid's right
+	 * column. Every feature of the sampled estimate must be within a few standard errors of the exact one.
+	 */
+	public void checkFeatureExpectations() {
+		final int lastColumn = this.gridWorld.getWidth() - 1;
+		TerminalFunction rightColumn = new TerminalFunction() {
+			@Override
+			public boolean isTerminal(State s) {
+				return s.getFirstObjectOfClass(GridWorldDomain.CLASSAGENT).getDiscValForAttribute(GridWorldDomain.ATTX) == lastColumn;
+			}
+		};
+		ValueIteration planner = 
+				new ValueIteration(this.domain, this.expertReward, rightColumn, GAMMA, this.hashingFactory, .01, 100);
+		planner.toggleDebugPrinting(false);
+		planner.planFromState(this.initialState);
+		Policy policy = new GreedyQPolicy(planner);
+
+		FeatureIndicatorCache featureCache = new FeatureIndicatorCache(this.featureExtractor, this.hashingFactory, GAMMA);
+		ExactFeatureExpectationEvaluator exactEvaluator = 
+				new ExactFeatureExpectationEvaluator(this.domain, rightColumn, this.hashingFactory, featureCache);
+		RolloutFeatureExpectationEstimator rolloutEstimator = new RolloutFeatureExpectationEstimator(featureCache, null, 0, rightColumn);
+		String size = this.gridWorld.getWidth() + "x" + this.gridWorld.getHeight();
+
+		// short episodes show a state counted by only one estimator, long ones show terminal states
+		for (int episodeLength : new int[]{2, EPISODE_LENGTH}) {
+			double[] exact = exactEvaluator.estimateFeatureExpectation(
+					policy, this.startStateGenerator.getReachableStates(), episodeLength);
+			this.startStateGenerator.setSeed(0);
+			FeatureExpectationEstimate sampled = rolloutEstimator.estimateFeatureExpectation(
+					policy, this.startStateGenerator, CHECK_EPISODES, CHECK_EPISODES, 0.0, 0.0, episodeLength, 0);
+
+			double[] mean = sampled.getMean();
+			double[] standardError = sampled.getStandardError();
+			double maxDifference = 0.0;
+			int disagreements = 0;
+			for (int i = 0; i < exact.length; ++i) {
+				double difference = Math.abs(exact[i] - mean[i]);
+				maxDifference = Math.max(maxDifference, difference);
+				if (difference > CHECK_STANDARD_ERRORS * standardError[i] + 1.E-9) {
+					++disagreements;
+				}
+			}
+			System.out.println("exact vs sampled feature expectations " + size + ", " + episodeLength + " states: max difference " + 
+					maxDifference + ", " + disagreements + " of " + exact.length + " features outside " + CHECK_STANDARD_ERRORS + " standard errors");
+			if (disagreements > 0) {
+				throw new IllegalStateException("Exact and sampled feature expectations disagree on " + size + ", " + episodeLength + " states");
+			}
+		}
+	}
+
+	public void benchmarkWeightSolvers() {
+		final double[] expertExpectations =
+				ApprenticeshipLearning.estimateFeatureExpectation(this.expertEpisodes, this.featureFunctions, GAMMA);
+		final List<double[]> history = new ArrayList<double[]>();
+		Random random = new Random(0);
+		for (int j = 0; j < HISTORY_LENGTH; ++j) {
+			double[] featureExpectations = new double[expertExpectations.length];
+			for (int i = 0; i < featureExpectations.length; ++i) {
+				featureExpectations[i] = expertExpectations[i] + random.nextGaussian();
+			}
+			history.add(featureExpectations);
+		}
+
+		this.benchmark.measureAndPrint("MaxMarginQPSolver.solve " + HISTORY_LENGTH + " policies", new MicroBenchmark.Operation() {
+			@Override
+			public Object run() {
+				return ApprenticeshipLearningBenchmark.solveIncrementally(new MaxMarginQPSolver(expertExpectations), history);
+			}
+		});
+		this.benchmark.measureAndPrint("MinNormPointSolver.solve " + HISTORY_LENGTH + " policies", new MicroBenchmark.Operation() {
+			@Override
+			public Object run() {
+				return ApprenticeshipLearningBenchmark.solveIncrementally(new MinNormPointSolver(expertExpectations), history);
+			}
+		});
+		this.benchmark.measureAndPrint("projectExpertFE", new MicroBenchmark.Operation() {
+			@Override
+			public Object run() {
+				double[] projection = history.get(0);
+				for (int j = 1; j < history.size(); ++j) {
+					projection = ApprenticeshipLearning.projectExpertFE(expertExpectations, history.get(j), projection);
+				}
+				return ApprenticeshipLearning.getWeightsProjectionMethod(expertExpectations, projection);
+			}
+		});
+	}
+
+	/**
+	 * Adds the history one policy at a time and solves after each, as an apprenticeship learning run does
+	 */
+	private static Object solveIncrementally(MaxMarginSolver solver, List<double[]> history) {
+		Object weights = null;
+		for (double[] featureExpectations : history) {
+			solver.addFeatureExpectations(featureExpectations);
+			weights = solver.solve();
+		}
+		return weights;
+	}
+
+	public void benchmarkPlanning() {
+		final String size = this.gridWorld.getWidth() + "x" + this.gridWorld.getHeight();
+		this.benchmark.measureAndPrint("ValueIteration.planFromState " + size, new MicroBenchmark.Operation() {
+			@Override
+			public Object run() {
+				ValueIteration planner = newPlanner(expertReward);
+				planner.planFromState(initialState);
+				return planner;
+			}
+		});
+		this.benchmark.measureAndPrint("ValueIteration.planFromState indexed " + size, new MicroBenchmark.Operation() {
+			@Override
+			public Object run() {
+				ValueIteration planner = newPlanner(expertReward, indexedHashingFactory);
+				planner.planFromState(initialState);
+				return planner;
+			}
+		});
+		this.benchmark.measureAndPrint("GridValueIteration.planFromState " + size, new MicroBenchmark.Operation() {
+			@Override
+			public Object run() {
+				GridValueIteration planner = gridWorld.getPlanner(domain, expertReward, terminalFunction, GAMMA, .01, 100);
+				planner.toggleDebugPrinting(false);
+				planner.planFromState(initialState);
+				return planner;
+			}
+		});
+		final ForkJoinPool pool = new ForkJoinPool();
+		this.benchmark.measureAndPrint("GridValueIteration.planFromState " + pool.getParallelism() + " threads " + size, 
+				new MicroBenchmark.Operation() {
+			@Override
+			public Object run() {
+				GridValueIteration planner = gridWorld.getPlanner(domain, expertReward, terminalFunction, GAMMA, .01, 100);
+				planner.toggleDebugPrinting(false);
+				planner.setSweepPool(pool);
+				planner.planFromState(initialState);
+				return planner;
+			}
+		});
+		pool.shutdown();
+	}
+
+	public void benchmarkLearning() {
+		final String size = this.gridWorld.getWidth() + "x" + this.gridWorld.getHeight();
+		for (final boolean useMaxMargin : new boolean[]{true, false}) {
+			String name = "getLearnedPolicy " + (useMaxMargin ? "max margin " : "projection ") + size;
+			this.benchmark.measureAndPrint(name, new MicroBenchmark.Operation() {
+				@Override
+				public Object run() {
+					ApprenticeshipLearningRequest request = new ApprenticeshipLearningRequest(
+							domain, newPlanner(null), featureFunctions, expertEpisodes, startStateGenerator);
+					request.setFeatureExtractor(featureExtractor);
+					request.setGamma(GAMMA);
+					request.setMaxIterations(10);
+					request.setUsingMaxMargin(useMaxMargin);
+					request.setSeed(0);
+					request.setVerbose(false);
+					return ApprenticeshipLearning.getLearnedPolicy(request);
+				}
+			});
+		}
+	}
+
+	/**
+	 * @param args Grid sizes to benchmark, 8 16 32 if none are given
+	 */
+	public static void main(String[] args) {
+		int[] sizes = {8, 16, 32};
+		if (args.length > 0) {
+			sizes = new int[args.length];
+			for (int i = 0; i < args.length; ++i) {
+				sizes[i] = Integer.parseInt(args[i]);
+			}
+		}
+
+		MicroBenchmark benchmark = new MicroBenchmark();
+		for (int size : sizes) {
+			ApprenticeshipLearningBenchmark suite = new ApprenticeshipLearningBenchmark(benchmark, size);
+			suite.benchmarkFeatureExpectations();
+			suite.benchmarkReward();
+			suite.benchmarkPlanning();
+			suite.benchmarkLearning();
+			if (size == sizes[0]) {
+				suite.checkFeatureExpectations();
+				suite.benchmarkWeightSolvers();
+			}
+		}
+	}
+}
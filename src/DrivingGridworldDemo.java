@@ -1,3 +1,4 @@
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -5,9 +6,12 @@ import java.util.Map;
 import burlap.behavior.singleagent.ApprenticeshipLearning;
 import burlap.behavior.singleagent.ApprenticeshipLearningRequest;
 import burlap.behavior.singleagent.EpisodeAnalysis;
+import burlap.behavior.singleagent.EpisodeFileReader;
+import burlap.behavior.singleagent.EpisodeFileWriter;
 import burlap.behavior.singleagent.EpisodeSequenceVisualizer;
 import burlap.behavior.singleagent.Policy;
 import burlap.behavior.singleagent.RandomStartStateGenerator;
+import burlap.behavior.singleagent.StateRecordCodec;
 import burlap.behavior.singleagent.planning.QComputablePlanner;
 import burlap.behavior.singleagent.planning.commonpolicies.GreedyQPolicy;
 import burlap.behavior.singleagent.planning.stochastic.valueiteration.ValueIteration;
@@ -74,17 +78,16 @@ public class DrivingGridworldDemo {
 		ValueIteration planner = new ValueIteration(gridWorldDomain, new UniformCostRF(), terminalFunction, 0.9, hashingFactory, .01, 100);		
 		
 		StateParser stateParser = new DrivingWorldStateParser(gridWorldDomain);
+		StateRecordCodec codec = new DrivingWorldStateCodec(gridWorldDomain, height);
 		
-		int index = 0;
-		for (EpisodeAnalysis episode : expertEpisodes) {
-			episode.writeToFile(outputPath + "expert" + index++, stateParser);
-		}
+		DrivingGridworldDemo.writeEpisodes(outputPath + "expert", gridWorldDomain, codec, expertEpisodes);
 		
 		ApprenticeshipLearningRequest request =
 				new ApprenticeshipLearningRequest(gridWorldDomain, planner, featureFunctions, expertEpisodes, stateGenerator);
 		request.setMaxIterations(20);
 		Policy projectionPolicy = ApprenticeshipLearning.getLearnedPolicy(request);
 		
+		List<EpisodeAnalysis> projectionEpisodes = new ArrayList<EpisodeAnalysis>();
 		for (int i = 0; i < 10; i++) {
 		State testState = stateGenerator.generateState();
 		
@@ -94,9 +97,10 @@ public class DrivingGridworldDemo {
 		//create a Q-greedy policy using the Q-values that the planner computes
 		Policy p = new GreedyQPolicy((QComputablePlanner)planner);
 		
-		EpisodeAnalysis projectionEpisode = p.evaluateBehavior(testState, new UniformCostRF(), terminalFunction, 100);
-		projectionEpisode.writeToFile(outputPath + "Projection" + i, stateParser);
+		projectionEpisodes.add(p.evaluateBehavior(testState, new UniformCostRF(), terminalFunction, 100));
 		}
+		DrivingGridworldDemo.writeEpisodes(outputPath + "Projection", gridWorldDomain, codec, projectionEpisodes);
+		DrivingGridworldDemo.exportEpisodes(outputPath, gridWorldDomain, codec, stateParser);
 		Visualizer v = DrivingWorldVisualizer.getVisualizer(gridWorldDomain, gridWorld.getMap());
 		StateParser sp = new DrivingWorldStateParser(gridWorldDomain);
 		EpisodeSequenceVisualizer evis = new EpisodeSequenceVisualizer(v, gridWorldDomain, sp, outputPath);
@@ -115,11 +119,31 @@ public class DrivingGridworldDemo {
 		StateGenerator stateGenerator = new DrivingWorldStateGenerator(gridWorldDomain, xLocations, height, height);
 
 		StateParser stateParser = new DrivingWorldStateParser(gridWorldDomain);
+		DrivingGridworldDemo.exportEpisodes(outputPath, gridWorldDomain, new DrivingWorldStateCodec(gridWorldDomain, height), stateParser);
 		Visualizer v = DrivingWorldVisualizer.getVisualizer(gridWorldDomain, gridWorld.getMap());
 		StateParser sp = new DrivingWorldStateParser(gridWorldDomain);
 		EpisodeSequenceVisualizer evis = new EpisodeSequenceVisualizer(v, gridWorldDomain, sp, outputPath);
 	}
 	
+	private static void writeEpisodes(String path, Domain domain, StateRecordCodec codec, List<EpisodeAnalysis> episodes) {
+		try {
+			EpisodeFileWriter.writeEpisodes(path, domain, codec, episodes);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Writes the binary episode files in a directory as text episodes for the episode viewer
+	 */
+	private static void exportEpisodes(String outputPath, Domain domain, StateRecordCodec codec, StateParser stateParser) {
+		try {
+			EpisodeFileReader.exportTextEpisodes(outputPath, domain, codec, stateParser);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
 	public static void main(String[] args) {
 		String outputPath = "output_driving";
 		int width = 11;
@@ -0,0 +1,75 @@
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import burlap.behavior.singleagent.StateRecordCodec;
+import burlap.oomdp.core.Domain;
+import burlap.oomdp.core.ObjectInstance;
+import burlap.oomdp.core.State;
+
+
+public class DrivingWorldStateCodec implements StateRecordCodec {
+
+	protected Domain				domain;
+	protected int					maxBlockCount;
+	
+	
+	/**
+	 * Codec for states with up to a maximum number of blocks
+	 * @param domain
+	 * @param maxBlockCount Largest number of blocks a state can have
+	 */
+	public DrivingWorldStateCodec(Domain domain, int maxBlockCount){
+		this.domain = domain;
+		this.maxBlockCount = maxBlockCount;
+	}
+	
+	/**
+	 * A record is the number of blocks, the agent's x and y position and each block's, with room
+	 * for the maximum number of blocks
+	 */
+	@Override
+	public int getRecordSize() {
+		return 2 + 4 * (1 + this.maxBlockCount);
+	}
+
+	@Override
+	public void encode(State s, ByteBuffer buffer) {
+		ObjectInstance a = s.getObjectsOfTrueClass(DrivingGridWorld.agentClass).get(0);
+		List<ObjectInstance> locs = s.getObjectsOfTrueClass(DrivingGridWorld.blockClass);
+		if (locs.size() > this.maxBlockCount) {
+			throw new IllegalArgumentException("Expected at most " + this.maxBlockCount + " blocks, state has " + locs.size());
+		}
+		
+		String xa = DrivingGridWorld.ATTX;
+		String ya = DrivingGridWorld.ATTY;
+		
+		buffer.putShort((short)locs.size());
+		buffer.putShort((short)a.getDiscValForAttribute(xa)).putShort((short)a.getDiscValForAttribute(ya));
+		for(ObjectInstance l : locs){
+			buffer.putShort((short)l.getDiscValForAttribute(xa)).putShort((short)l.getDiscValForAttribute(ya));
+		}
+		for(int i = locs.size(); i < this.maxBlockCount; i++){
+			buffer.putShort((short)0).putShort((short)0);
+		}
+	}
+
+	@Override
+	public State decode(ByteBuffer buffer) {
+		int nl = buffer.getShort();
+		int ax = buffer.getShort();
+		int ay = buffer.getShort();
+		
+		State s = DrivingGridWorld.getOneAgentNLocationState(domain, nl);
+		DrivingGridWorld.setAgent(s, ax, ay);
+		
+		for(int i = 0; i < nl; i++){
+			int lx = buffer.getShort();
+			int ly = buffer.getShort();
+			DrivingGridWorld.setBlockLocation(s, i, lx, ly);
+		}
+		buffer.position(buffer.position() + 4 * (this.maxBlockCount - nl));
+		
+		return s;
+	}
+
+}
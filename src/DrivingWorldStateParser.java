@@ -24,7 +24,7 @@ public class DrivingWorldStateParser implements StateParser {
 	@Override
 	public String stateToString(State s) {
 		
-		StringBuffer sbuf = new StringBuffer(256);
+		StringBuilder sbuf = new StringBuilder(256);
 		
 		ObjectInstance a = s.getObjectsOfTrueClass(DrivingGridWorld.agentClass).get(0);
 		List<ObjectInstance> locs = s.getObjectsOfTrueClass(DrivingGridWorld.blockClass);
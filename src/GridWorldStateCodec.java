@@ -0,0 +1,43 @@
+import java.nio.ByteBuffer;
+
+import burlap.behavior.singleagent.StateRecordCodec;
+import burlap.oomdp.core.Domain;
+import burlap.oomdp.core.ObjectInstance;
+import burlap.oomdp.core.State;
+
+
+public class GridWorldStateCodec implements StateRecordCodec {
+
+	protected Domain				domain;
+	
+	
+	public GridWorldStateCodec(Domain domain){
+		this.domain = domain;
+	}
+	
+	/**
+	 * A record is the agent's x and y position
+	 */
+	@Override
+	public int getRecordSize() {
+		return 4;
+	}
+
+	@Override
+	public void encode(State s, ByteBuffer buffer) {
+		ObjectInstance a = s.getObjectsOfTrueClass(MacroGridWorld.CLASSAGENT).get(0);
+		buffer.putShort((short)a.getDiscValForAttribute(MacroGridWorld.ATTX));
+		buffer.putShort((short)a.getDiscValForAttribute(MacroGridWorld.ATTY));
+	}
+
+	@Override
+	public State decode(ByteBuffer buffer) {
+		int ax = buffer.getShort();
+		int ay = buffer.getShort();
+		
+		State s = MacroGridWorld.getOneAgentState(domain);
+		MacroGridWorld.setAgent(s, ax, ay);
+		return s;
+	}
+
+}
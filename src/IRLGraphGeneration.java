@@ -1,24 +1,28 @@
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import burlap.behavior.singleagent.ApprenticeshipLearning;
 import burlap.behavior.singleagent.ApprenticeshipLearningRequest;
 import burlap.behavior.singleagent.EpisodeAnalysis;
+import burlap.behavior.singleagent.EpisodeFileWriter;
 import burlap.behavior.singleagent.EpisodeSequenceVisualizer;
 import burlap.behavior.singleagent.Policy;
 import burlap.behavior.singleagent.RandomStartStateGenerator;
+import burlap.behavior.singleagent.RolloutFeatureExpectationEstimator;
+import burlap.behavior.singleagent.StateRecordCodec;
 import burlap.behavior.singleagent.planning.QComputablePlanner;
 import burlap.behavior.singleagent.planning.commonpolicies.GreedyQPolicy;
 import burlap.behavior.singleagent.planning.stochastic.valueiteration.ValueIteration;
 import burlap.behavior.statehashing.DiscreteStateHashFactory;
+import burlap.debugtools.ExperimentRunner;
 import burlap.domain.singleagent.gridworld.GridWorldDomain;
-import burlap.domain.singleagent.gridworld.GridWorldStateParser;
 import burlap.domain.singleagent.gridworld.GridWorldVisualizer;
 import burlap.oomdp.auxiliary.StateGenerator;
-import burlap.oomdp.auxiliary.StateParser;
 import burlap.oomdp.core.Domain;
 import burlap.oomdp.core.PropositionalFunction;
 import burlap.oomdp.core.State;
@@ -32,18 +36,44 @@ import burlap.oomdp.visualizer.Visualizer;
 public class IRLGraphGeneration {
 	MacroGridWorld gridWorld;
 	Domain domain;
-	StateParser stateParser;
+	StateRecordCodec codec;
 	State initialState;
+	Random random;
 	static TerminalFunction terminalFunction = new IRLGridTF();
-	static DiscreteStateHashFactory hashingFactory = new DiscreteStateHashFactory();
+	//each tester configures its own hashing factory, so testers can run on separate threads
+	DiscreteStateHashFactory hashingFactory;
 	
 	public IRLGraphGeneration(MacroGridWorld world) {
 		this.gridWorld = world;
 		this.domain = world.generateDomain();
-		this.stateParser = new GridWorldStateParser(domain); //for writing states to a file
+		this.codec = new GridWorldStateCodec(domain); //for writing episodes to a file
 		this.initialState = MacroGridWorld.getOneAgentState(domain);
 		MacroGridWorld.setAgent(initialState, 0, 0);
-		hashingFactory.setAttributesForClass(MacroGridWorld.CLASSAGENT, domain.getObjectClass(GridWorldDomain.CLASSAGENT).attributeList);
+		this.random = new Random();
+		this.hashingFactory = new DiscreteStateHashFactory();
+		this.hashingFactory.setAttributesForClass(MacroGridWorld.CLASSAGENT, domain.getObjectClass(GridWorldDomain.CLASSAGENT).attributeList);
+	}
+	
+	/**
+	 * Seeds the random rewards, start states and learning of the following runs
+	 * @param seed
+	 */
+	public void setSeed(long seed) {
+		this.random.setSeed(seed);
+	}
+	
+	private void writeEpisodes(String path, List<EpisodeAnalysis> episodes) {
+		try {
+			EpisodeFileWriter.writeEpisodes(path, this.domain, this.codec, episodes);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	private RandomStartStateGenerator getStartStateGenerator() {
+		RandomStartStateGenerator startStateGenerator = new RandomStartStateGenerator((SADomain)this.domain, this.initialState);
+		startStateGenerator.setSeed(this.random.nextLong());
+		return startStateGenerator;
 	}
 	
 	/**
@@ -60,11 +90,11 @@ public class IRLGraphGeneration {
 		PropositionalFunction[] featureFunctions = 
 				MacroGridWorld.getPropositionalFunctions(domain, this.gridWorld);
 		
-		Map<String, Double> rewards = MacroGridWorld.generateRandomRewards(featureFunctions, 4);
-		RewardFunction randomReward = new ApprenticeshipLearning.FeatureBasedRewardFunction(featureFunctions, rewards);
+		Map<String, Double> rewards = MacroGridWorld.generateRandomRewards(featureFunctions, 4, this.random);
+		RewardFunction randomReward = new ApprenticeshipLearning.FeatureBasedRewardFunction(featureFunctions, MacroGridWorld.getFeatureExtractor(this.gridWorld), rewards);
 		
 		//create and instance of planner; discount is set to 0.99; the minimum delta threshold is set to 0.001
-		ValueIteration planner = new ValueIteration(domain, randomReward, terminalFunction, 0.9, hashingFactory, .01, 100);		
+		ValueIteration planner = new ValueIteration(domain, randomReward, terminalFunction, 0.9, this.hashingFactory, .01, 100);		
 		
 		//run planner from our initial state
 		planner.planFromState(initialState);
@@ -76,7 +106,7 @@ public class IRLGraphGeneration {
 		//a '.episode' extension is automatically added by the writeToFileMethod
 		List<EpisodeAnalysis> episodes = new ArrayList<EpisodeAnalysis>();
 		for (int i =0; i < episodesCount; ++i) {
-			EpisodeAnalysis episode = p.evaluateBehavior(initialState, randomReward, terminalFunction, 100);
+			EpisodeAnalysis episode = RolloutFeatureExpectationEstimator.rollout(p, initialState, randomReward, terminalFunction, 100, this.random);
 			episodes.add(episode);
 		}
 		
@@ -101,12 +131,12 @@ public class IRLGraphGeneration {
 		}
 		
 		PropositionalFunction[] featureFunctions = MacroGridWorld.getPropositionalFunctions(this.domain);
-		Map<String, Double> rewards = MacroGridWorld.generateRandomRewards(featureFunctions, MacroGridWorld.MCELL_FILLED);
-		RewardFunction randomReward = new ApprenticeshipLearning.FeatureBasedRewardFunction(featureFunctions, rewards);
+		Map<String, Double> rewards = MacroGridWorld.generateRandomRewards(featureFunctions, MacroGridWorld.MCELL_FILLED, this.random);
+		RewardFunction randomReward = new ApprenticeshipLearning.FeatureBasedRewardFunction(featureFunctions, MacroGridWorld.getFeatureExtractor(), rewards);
 
 		
 		//create and instance of planner; discount is set to 0.99; the minimum delta threshold is set to 0.001
-		ValueIteration planner = new ValueIteration(domain, randomReward, terminalFunction, ApprenticeshipLearningRequest.DEFAULT_GAMMA, hashingFactory, .01, 100);		
+		ValueIteration planner = new ValueIteration(domain, randomReward, terminalFunction, ApprenticeshipLearningRequest.DEFAULT_GAMMA, this.hashingFactory, .01, 100);		
 		
 		//run planner from our initial state
 		planner.planFromState(initialState);
@@ -114,19 +144,22 @@ public class IRLGraphGeneration {
 		//create a Q-greedy policy using the Q-values that the planner computes
 		Policy p = new GreedyQPolicy((QComputablePlanner)planner);
 		
-		StateGenerator startStateGenerator = new RandomStartStateGenerator((SADomain)this.domain, this.initialState);
+		StateGenerator startStateGenerator = this.getStartStateGenerator();
 		
 		//run a sample of the computed policy and write its results to the file "VIResult.episode" in the directory outputPath
 		//a '.episode' extension is automatically added by the writeToFileMethod
 		List<EpisodeAnalysis> episodes = new ArrayList<EpisodeAnalysis>();
 		for (int i =0; i < 10; ++i) {
-			EpisodeAnalysis episode = p.evaluateBehavior(startStateGenerator.generateState(), randomReward, terminalFunction ,100);
+			EpisodeAnalysis episode = RolloutFeatureExpectationEstimator.rollout(
+					p, startStateGenerator.generateState(), randomReward, terminalFunction, 100, this.random);
 			episodes.add(episode);
 		}
 		
 		ApprenticeshipLearningRequest request = 
 				new ApprenticeshipLearningRequest(this.domain, planner, featureFunctions, episodes, startStateGenerator);
+		request.setFeatureExtractor(MacroGridWorld.getFeatureExtractor());
 		request.setPolicyCount(episodeNumber);
+		request.setSeed(this.random.nextLong());
 		request.setUsingMaxMargin(method == 0);
 		ApprenticeshipLearning.getLearnedPolicy(request);
 		
@@ -135,93 +168,132 @@ public class IRLGraphGeneration {
 	}
 	
 	public long runALviaIRLMaxMargin(String outputPath, ValueIteration planner, PropositionalFunction[] featureFunctions, List<EpisodeAnalysis> expertEpisodes, RewardFunction randomReward) {
-		//run a sample of the computed policy and write its results to the file "VIResult.episode" in the directory outputPath
-		//a '.episode' extension is automatically added by the writeToFileMethod
-		int index = 0;
-		for (EpisodeAnalysis episode : expertEpisodes) {
-			episode.writeToFile(outputPath + "expert" + index++, stateParser);
-		}
+		//write the expert's episodes to the file "expert.episodes" in the directory outputPath
+		//a '.episodes' extension is automatically added by the EpisodeFileWriter
+		this.writeEpisodes(outputPath + "expert", expertEpisodes);
 		
-		StateGenerator startStateGenerator = new RandomStartStateGenerator((SADomain)this.domain, this.initialState);
+		StateGenerator startStateGenerator = this.getStartStateGenerator();
 		ApprenticeshipLearningRequest request = 
 				new ApprenticeshipLearningRequest(this.domain, planner, featureFunctions, expertEpisodes, startStateGenerator);
 		request.setUsingMaxMargin(true);
+		request.setFeatureExtractor(MacroGridWorld.getFeatureExtractor(this.gridWorld));
+		request.setSeed(this.random.nextLong());
 		
 		long start = System.currentTimeMillis();
 		Policy policy = ApprenticeshipLearning.getLearnedPolicy(request);
 		long end = System.currentTimeMillis();
-		EpisodeAnalysis resultEpisode = policy.evaluateBehavior(startStateGenerator.generateState(), randomReward, terminalFunction, 100);
-		resultEpisode.writeToFile(outputPath + "Result", stateParser);
+		EpisodeAnalysis resultEpisode = RolloutFeatureExpectationEstimator.rollout(
+				policy, startStateGenerator.generateState(), randomReward, terminalFunction, 100, this.random);
+		this.writeEpisodes(outputPath + "Result", Collections.singletonList(resultEpisode));
 		
 		return end - start;
 	}
 	
 	public long runALviaIRLProjection(String outputPath, ValueIteration planner, PropositionalFunction[] featureFunctions, List<EpisodeAnalysis> expertEpisodes, RewardFunction randomReward)
 	{
-		//run a sample of the computed policy and write its results to the file "VIResult.episode" in the directory outputPath
-		//a '.episode' extension is automatically added by the writeToFileMethod
-		int index = 0;
-		for (EpisodeAnalysis episode : expertEpisodes) {
-			episode.writeToFile(outputPath + "expert" + index++, stateParser);
-		}
-		StateGenerator startStateGenerator = new RandomStartStateGenerator((SADomain)this.domain, this.initialState);
+		//write the expert's episodes to the file "expert.episodes" in the directory outputPath
+		//a '.episodes' extension is automatically added by the EpisodeFileWriter
+		this.writeEpisodes(outputPath + "expert", expertEpisodes);
+		StateGenerator startStateGenerator = this.getStartStateGenerator();
 		ApprenticeshipLearningRequest request = 
 				new ApprenticeshipLearningRequest(this.domain, planner, featureFunctions, expertEpisodes, startStateGenerator);
+		request.setFeatureExtractor(MacroGridWorld.getFeatureExtractor(this.gridWorld));
+		request.setSeed(this.random.nextLong());
 		
 		long start = System.currentTimeMillis();
 		Policy projectionPolicy = ApprenticeshipLearning.getLearnedPolicy(request);
 		long end = System.currentTimeMillis();
-		EpisodeAnalysis projectionEpisode = projectionPolicy.evaluateBehavior(initialState, randomReward, terminalFunction, 100);
-		projectionEpisode.writeToFile(outputPath + "Projection", stateParser);
+		EpisodeAnalysis projectionEpisode = RolloutFeatureExpectationEstimator.rollout(
+				projectionPolicy, initialState, randomReward, terminalFunction, 100, this.random);
+		this.writeEpisodes(outputPath + "Projection", Collections.singletonList(projectionEpisode));
 		
 		return end - start;
 	}	
 	
 	public static void generateRuntimeVSFeatures(String outputPath, int repetitions) {
-		int count = 0;
-		FileWriter writer;
-
-		try {	
-			writer = new FileWriter("results.txt");
-			for (int i = 0; i < repetitions; ++i) {
-				for (int j = 1; j < 5; j++) {
-					int macroCellWidth = (int)Math.pow(2, j);
-					for (int k = 0; k < 5; k++) {
-						int macroCellHeight = (int)Math.pow(2, k);
-						IRLGraphGeneration tester = new IRLGraphGeneration(new MacroGridWorld(16, 16, macroCellWidth, macroCellHeight));
-						String trialOutputPath = outputPath + "/trial" + count++;
-						writer.append(macroCellWidth + ", " + macroCellHeight + ", " + tester.runALviaIRLRandomlyGeneratedEpisodes(trialOutputPath,0, 1) + ", 0\n");
-						writer.append(macroCellWidth + ", " + macroCellHeight + ", " + tester.runALviaIRLRandomlyGeneratedEpisodes(trialOutputPath,1, 1) + ", 1\n");
-					}
+		generateRuntimeVSFeatures(outputPath, repetitions, Runtime.getRuntime().availableProcessors(), new Random().nextLong());
+	}
+	
+	/**
+	 * Times both learning methods on every macro cell size, running the trials on several threads
+	 * @param outputPath Directory the trials' episodes are written to
+	 * @param repetitions Number of trials of each macro cell size
+	 * @param threadCount Number of trials run at once
+	 * @param seed Seed the trials' seeds are derived from
+	 */
+	public static void generateRuntimeVSFeatures(final String outputPath, int repetitions, int threadCount, long seed) {
+		int[] trials = new int[repetitions];
+		for (int i = 0; i < repetitions; ++i) {
+			trials[i] = i;
+		}
+		ExperimentRunner runner = new ExperimentRunner(threadCount, seed);
+		for (int[] configuration : ExperimentRunner.getConfigurations(trials, new int[]{1, 2, 3, 4}, new int[]{0, 1, 2, 3, 4})) {
+			final int macroCellWidth = (int)Math.pow(2, configuration[1]);
+			final int macroCellHeight = (int)Math.pow(2, configuration[2]);
+			final String trialOutputPath = outputPath + "/trial" + runner.getJobCount();
+			runner.addJob(new ExperimentRunner.Job() {
+				@Override
+				public List<String> run(long seed) {
+					IRLGraphGeneration tester = new IRLGraphGeneration(new MacroGridWorld(16, 16, macroCellWidth, macroCellHeight));
+					tester.setSeed(seed);
+					List<String> lines = new ArrayList<String>();
+					lines.add(macroCellWidth + ", " + macroCellHeight + ", " + tester.runALviaIRLRandomlyGeneratedEpisodes(trialOutputPath,0, 1) + ", 0");
+					lines.add(macroCellWidth + ", " + macroCellHeight + ", " + tester.runALviaIRLRandomlyGeneratedEpisodes(trialOutputPath,1, 1) + ", 1");
+					return lines;
 				}
-			}
-			
-			writer.flush();
-			writer.close();
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			});
 		}
+		
+		IRLGraphGeneration.runExperiments(runner, "results.txt");
 	}
 	
 	public static void generateTVSRuntimeForEpisodesIterations(String outputPath, int maxPolicyCount, int repetitions) {
-		int count = 0;
-		IRLGraphGeneration tester = new IRLGraphGeneration(new MacroGridWorld(16, 16, 8, 8));
-		FileWriter writer;
-		try {	
-			writer = new FileWriter("tVSRuns.txt");
-			for (int i = 0; i < repetitions; ++i) {
-				for (int j = 1; j < maxPolicyCount; j++) {
-					String trialOutputPath = outputPath + "/trial" + count++;
-					double[] tHistory = tester.runALviaIRLRandomlyGeneratedEpisodesWithTHistory(trialOutputPath,1, 5, j);
-					for (int k = 0; k < tHistory.length; ++k) {
-						writer.append(j + ", " + tHistory[k] + ", 1\n");
+		generateTVSRuntimeForEpisodesIterations(outputPath, maxPolicyCount, repetitions, Runtime.getRuntime().availableProcessors(), new Random().nextLong());
+	}
+	
+	/**
+	 * Records the t history of projection learning for each policy count, running the trials on several
+	 * threads
+	 * @param outputPath Directory the trials' episodes are written to
+	 * @param maxPolicyCount Policy counts from 1 up to this are tried
+	 * @param repetitions Number of trials of each policy count
+	 * @param threadCount Number of trials run at once
+	 * @param seed Seed the trials' seeds are derived from
+	 */
+	public static void generateTVSRuntimeForEpisodesIterations(String outputPath, int maxPolicyCount, int repetitions, int threadCount, long seed) {
+		ExperimentRunner runner = new ExperimentRunner(threadCount, seed);
+		for (int i = 0; i < repetitions; ++i) {
+			for (int j = 1; j < maxPolicyCount; j++) {
+				final int policyCount = j;
+				final String trialOutputPath = outputPath + "/trial" + runner.getJobCount();
+				runner.addJob(new ExperimentRunner.Job() {
+					@Override
+					public List<String> run(long seed) {
+						IRLGraphGeneration tester = new IRLGraphGeneration(new MacroGridWorld(16, 16, 8, 8));
+						tester.setSeed(seed);
+						double[] tHistory = tester.runALviaIRLRandomlyGeneratedEpisodesWithTHistory(trialOutputPath,1, 5, policyCount);
+						List<String> lines = new ArrayList<String>();
+						for (int k = 0; k < tHistory.length; ++k) {
+							lines.add(policyCount + ", " + tHistory[k] + ", 1");
+						}
+						return lines;
 					}
-				}
+				});
 			}
-			
-			writer.flush();
+		}
+		
+		IRLGraphGeneration.runExperiments(runner, "tVSRuns.txt");
+	}
+	
+	private static void runExperiments(ExperimentRunner runner, String fileName) {
+		FileWriter writer;
+		try {	
+			writer = new FileWriter(fileName);
+			int failures = runner.run(writer);
 			writer.close();
+			if (failures > 0) {
+				System.err.println(failures + " of " + runner.getJobCount() + " trials failed");
+			}
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
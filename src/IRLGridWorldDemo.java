@@ -1,3 +1,5 @@
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -6,9 +8,13 @@ import java.util.Random;
 import burlap.behavior.singleagent.ApprenticeshipLearning;
 import burlap.behavior.singleagent.ApprenticeshipLearningRequest;
 import burlap.behavior.singleagent.EpisodeAnalysis;
+import burlap.behavior.singleagent.EpisodeFileReader;
+import burlap.behavior.singleagent.EpisodeFileWriter;
 import burlap.behavior.singleagent.EpisodeSequenceVisualizer;
+import burlap.behavior.singleagent.MappedEpisodeStore;
 import burlap.behavior.singleagent.Policy;
 import burlap.behavior.singleagent.RandomStartStateGenerator;
+import burlap.behavior.singleagent.StateRecordCodec;
 import burlap.behavior.singleagent.planning.QComputablePlanner;
 import burlap.behavior.singleagent.planning.commonpolicies.GreedyQPolicy;
 import burlap.behavior.singleagent.planning.stochastic.valueiteration.ValueIteration;
@@ -33,6 +39,7 @@ public class IRLGridWorldDemo {
 	MacroGridWorld 				irlgw;
 	Domain						domain;
 	StateParser 				sp;
+	StateRecordCodec			codec;
 	RewardFunction 				rf;
 	TerminalFunction			tf;
 	State 						initialState;
@@ -47,6 +54,7 @@ public class IRLGridWorldDemo {
 		irlgw = new MacroGridWorld(); //create an 11x11 grid world
 		domain = irlgw.generateDomain();
 		sp = new GridWorldStateParser(domain); //for writing states to a file
+		codec = new GridWorldStateCodec(domain); //for writing episodes to binary files
 		
 		
 		//set up the initial state
@@ -58,15 +66,25 @@ public class IRLGridWorldDemo {
 			
 		tf = new IRLGridTF();
 		
+		hashingFactory = this.createHashingFactory();
+	}
+	
+	/**
+	 * Creates a new hashing factory for this domain. Planners run on separate threads should each be
+	 * given their own.
+	 * @return
+	 */
+	protected DiscreteStateHashFactory createHashingFactory() {
 		//set up the state hashing system
 		//this class will compute a hash value based on the discrete values of the attributes of objects
-		hashingFactory = new DiscreteStateHashFactory();
+		DiscreteStateHashFactory hashingFactory = new DiscreteStateHashFactory();
 		
 		//in particular, tell the hashing function to compute hash codes with respect to the attributes of the agent class only
 		//when computing hash values this will ignore the attributes of the location objects. since location objects cannot be moved
 		//by any action, there is no reason to include the in the computation for our task.
 		//if the below line was not included, the hashingFactory would use every attribute of every object class
 		hashingFactory.setAttributesForClass(MacroGridWorld.CLASSAGENT, domain.getObjectClass(GridWorldDomain.CLASSAGENT).attributeList);
+		return hashingFactory;
 	}
 
 	
@@ -93,22 +111,44 @@ public class IRLGridWorldDemo {
 	 * @param outputPath the path to the directory containing the saved episode files
 	 */
 	public void visualizeEpisodeWithFeatures(String outputPath){
-		MacroGridWorld.InMacroCellPF[] macroCellFunctions = new MacroGridWorld.InMacroCellPF[this.featureFunctions.length];
-		for (int i =0; i < this.featureFunctions.length; i++) {
-			macroCellFunctions[i] = (MacroGridWorld.InMacroCellPF)this.featureFunctions[i];
-		}
-		
-		
-		Visualizer v = MacroCellVisualizer.getVisualizer(domain, irlgw.getMap(), macroCellFunctions, this.rewardMap);
+		this.exportEpisodes(outputPath);
+		Visualizer v = MacroCellVisualizer.getVisualizer(
+				domain, irlgw.getMap(), MacroGridWorld.getFeatureExtractor(), this.featureFunctions, this.rewardMap);
 		EpisodeSequenceVisualizer evis = new EpisodeSequenceVisualizer(v, domain, sp, outputPath);
 	}
 	
 	public void visualizeEpisode(String outputPath) {
+		this.exportEpisodes(outputPath);
 		Visualizer v = GridWorldVisualizer.getVisualizer(domain, irlgw.getMap());
 		EpisodeSequenceVisualizer evis = new EpisodeSequenceVisualizer(v, domain, sp, outputPath);
 	}
 	
 	
+	/**
+	 * Writes episodes to one binary episode file
+	 * @param path the path of the file, the extension is added if it doesn't have it
+	 * @param episodes
+	 */
+	protected void writeEpisodes(String path, List<EpisodeAnalysis> episodes) {
+		try {
+			EpisodeFileWriter.writeEpisodes(path, domain, codec, episodes);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Writes the episodes of the binary episode files in a directory as text files, for the episode viewer
+	 * @param outputPath the path to the directory containing the episode files
+	 */
+	protected void exportEpisodes(String outputPath) {
+		try {
+			EpisodeFileReader.exportTextEpisodes(outputPath, domain, codec, sp);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
 	/**
 	 * This will method will perform VI planning and save a sample of the policy.
 	 * @param outputPath the path to the directory in which the policy sample will be saved
@@ -123,7 +163,7 @@ public class IRLGridWorldDemo {
 		
 		this.featureFunctions = MacroGridWorld.getPropositionalFunctions(this.domain);
 		this.rewardMap = MacroGridWorld.generateRandomRewards(featureFunctions, MacroGridWorld.MCELL_FILLED);
-		RewardFunction randomReward = new ApprenticeshipLearning.FeatureBasedRewardFunction(featureFunctions, this.rewardMap);
+		RewardFunction randomReward = new ApprenticeshipLearning.FeatureBasedRewardFunction(featureFunctions, MacroGridWorld.getFeatureExtractor(), this.rewardMap);
 		rf = randomReward;
 		
 		//create and instance of planner; discount is set to 0.99; the minimum delta threshold is set to 0.001
@@ -146,6 +186,20 @@ public class IRLGridWorldDemo {
 		this.runALviaIRL(outputPath, planner, featureFunctions, episodes, randomReward);
 	}
 	
+	/**
+	 * Runs ALviaIRL on the demonstrations of a binary episode file, which are read through a memory
+	 * mapping of the file instead of being loaded
+	 * @param outputPath the path to the directory in which the policy sample will be saved
+	 * @param episodeFile the episode file of the expert's demonstrations
+	 */
+	public void runALviaIRLWithEpisodeFile(String outputPath, String episodeFile){
+		try {
+			this.runALviaIRLWithEpisodes(outputPath, new MappedEpisodeStore(new File(episodeFile), domain, codec));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
 	/**
 	 * This will method will perform VI planning and save a sample of the policy.
 	 * @param outputPath the path to the directory in which the policy sample will be saved
@@ -159,7 +213,7 @@ public class IRLGridWorldDemo {
 		
 		PropositionalFunction[] featureFunctions = MacroGridWorld.getPropositionalFunctions(this.domain);
 		Map<String, Double> rewards = MacroGridWorld.generateRandomRewards(featureFunctions, MacroGridWorld.MCELL_FILLED);
-		RewardFunction randomReward = new ApprenticeshipLearning.FeatureBasedRewardFunction(featureFunctions, rewards);
+		RewardFunction randomReward = new ApprenticeshipLearning.FeatureBasedRewardFunction(featureFunctions, MacroGridWorld.getFeatureExtractor(), rewards);
 		
 		//create and instance of planner; discount is set to 0.99; the minimum delta threshold is set to 0.001
 		ValueIteration planner = new ValueIteration(domain, randomReward, tf, GAMMA, hashingFactory, .01, 100);		
@@ -186,10 +240,7 @@ public class IRLGridWorldDemo {
 	public void runALviaIRL(String outputPath, ValueIteration planner, PropositionalFunction[] featureFunctions, List<EpisodeAnalysis> expertEpisodes, RewardFunction randomReward) {
 		//run a sample of the computed policy and write its results to the file "VIResult.episode" in the directory outputPath
 		//a '.episode' extension is automatically added by the writeToFileMethod
-		int index = 0;
-		for (EpisodeAnalysis episode : expertEpisodes) {
-			episode.writeToFile(outputPath + "expert" + index++, sp);
-		}
+		this.writeEpisodes(outputPath + "expert", expertEpisodes);
 		
 		long start = System.currentTimeMillis();
 		//Policy policy = ApprenticeshipLearning.maxMarginMethod(this.domain, planner, featureFunctions, expertEpisodes, 0.9, 0.01, 100);
@@ -204,16 +255,20 @@ public class IRLGridWorldDemo {
 		StateGenerator startStateGenerator = new RandomStartStateGenerator((SADomain)this.domain, this.initialState);
 		ApprenticeshipLearningRequest request = 
 				new ApprenticeshipLearningRequest(this.domain, planner, featureFunctions, expertEpisodes, startStateGenerator);
+		request.setFeatureExtractor(MacroGridWorld.getFeatureExtractor());
 		//request.setUsingMaxMargin(true);
-		request.setPolicyCount(60);
+		//sample each policy until its feature expectation is known within epsilon, up to 60 episodes
+		request.setUsingAdaptivePolicyCount(true);
+		request.setMaxPolicyCount(60);
 		request.setMaxIterations(40);
 		Policy projectionPolicy = ApprenticeshipLearning.getLearnedPolicy(request);
 		//Policy projectionPolicy = ApprenticeshipLearning.projectionMethod(this.domain, planner, featureFunctions, expertEpisodes, 0.99, 0.01, 100);
 		
+		List<EpisodeAnalysis> projectionEpisodes = new ArrayList<EpisodeAnalysis>();
 		for (int i = 0; i < 10; i++) {
-			EpisodeAnalysis projectionEpisode = projectionPolicy.evaluateBehavior(startStateGenerator.generateState(), randomReward, tf, 100);
-			projectionEpisode.writeToFile(outputPath + "Projection" + i, sp);
+			projectionEpisodes.add(projectionPolicy.evaluateBehavior(startStateGenerator.generateState(), randomReward, tf, 100));
 		}
+		this.writeEpisodes(outputPath + "Projection", projectionEpisodes);
 		end = System.currentTimeMillis();
 		System.out.println("Time to complete projection: " + (end - start)/1000F);
 	}
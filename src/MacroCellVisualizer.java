@@ -7,6 +7,7 @@ import java.util.Random;
 import burlap.domain.singleagent.gridworld.GridWorldDomain;
 import burlap.domain.singleagent.gridworld.GridWorldVisualizer;
 import burlap.oomdp.core.Domain;
+import burlap.oomdp.core.PropositionalFunction;
 import burlap.oomdp.core.State;
 import burlap.oomdp.visualizer.StaticPainter;
 import burlap.oomdp.visualizer.Visualizer;
@@ -28,6 +29,25 @@ public class MacroCellVisualizer extends GridWorldVisualizer {
 		return v;
 	}
 	
+	/**
+	 * Returns a visualizer which shades each cell by the reward of the macro cell it is in
+	 * @param d
+	 * @param map
+	 * @param featureExtractor Extractor which finds the macro cell of each cell
+	 * @param featureFunctions The macro cell feature functions, used to look up rewards by name
+	 * @param rewardMap
+	 * @return
+	 */
+	public static Visualizer getVisualizer(Domain d, int [][] map, MacroGridWorld.MacroCellFeatureExtractor featureExtractor, 
+			PropositionalFunction[] featureFunctions, Map<String, Double> rewardMap) {
+		Visualizer v = new Visualizer();
+		
+		v.addStaticPainter(new MapPainter(d, map, featureExtractor, featureFunctions, rewardMap));
+		v.addObjectClassPainter(GridWorldDomain.CLASSAGENT, new GridWorldVisualizer.CellPainter(Color.red, map));
+		
+		return v;
+	}
+	
 	public static class MapPainter implements StaticPainter{
 
 		protected int 				dwidth;
@@ -51,6 +71,23 @@ public class MacroCellVisualizer extends GridWorldVisualizer {
 			}
 		}
 
+		public MapPainter(Domain domain, int [][] map, MacroGridWorld.MacroCellFeatureExtractor featureExtractor, 
+				PropositionalFunction[] featureFunctions, Map<String, Double> rewardMap) {
+			this.dwidth = map.length;
+			this.dheight = map[0].length;
+			this.map = map;
+			this.rewardMap = new double[map.length][map[0].length];
+			for (int i = 0; i < this.rewardMap.length; i++) {
+				for (int j = 0; j < this.rewardMap[0].length; j++) {
+					int index = featureExtractor.getCellIndex(i, j);
+					Double reward = (index < 0) ? null : rewardMap.get(featureFunctions[index].getName());
+					if (reward != null) {
+						this.rewardMap[i][j] = reward;
+					}
+				}
+			}
+		}
+
 		@Override
 		public void paint(Graphics2D g2, State s, float cWidth, float cHeight) {
 			
@@ -5,6 +5,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 
+import burlap.behavior.singleagent.StateFeatureExtractor;
+import burlap.behavior.singleagent.planning.stochastic.valueiteration.GridValueIteration;
+import burlap.behavior.statehashing.GridAgentStateIndexer;
 import burlap.domain.singleagent.gridworld.GridWorldDomain;
 import burlap.oomdp.auxiliary.StateGenerator;
 import burlap.oomdp.core.Attribute;
@@ -13,6 +16,8 @@ import burlap.oomdp.core.ObjectClass;
 import burlap.oomdp.core.ObjectInstance;
 import burlap.oomdp.core.PropositionalFunction;
 import burlap.oomdp.core.State;
+import burlap.oomdp.core.TerminalFunction;
+import burlap.oomdp.singleagent.RewardFunction;
 
 
 // TODO Rename to MacroCell gridworld
@@ -91,7 +96,10 @@ public class MacroGridWorld extends GridWorldDomain{
 	}
 	
 	public static State getRandomInitialState(Domain d) {
-		Random r = new Random();
+		return getRandomInitialState(d, new Random());
+	}
+	
+	public static State getRandomInitialState(Domain d, Random r) {
 		State s = new State();
 		ObjectInstance agent = new ObjectInstance(d.getObjectClass(CLASSAGENT), CLASSAGENT+0);
 		agent.setValue(ATTX, r.nextInt(WIDTH));
@@ -134,14 +142,63 @@ public class MacroGridWorld extends GridWorldDomain{
 		return functions;
 	}
 	
+	/**
+	 * Returns a feature extractor whose features match getPropositionalFunctions(domain)
+	 * @return
+	 */
+	public static MacroCellFeatureExtractor getFeatureExtractor() {
+		return new MacroCellFeatureExtractor(MacroGridWorld.WIDTH / MacroGridWorld.MCELL_WIDTH, 
+				MacroGridWorld.HEIGHT / MacroGridWorld.MCELL_HEIGHT, MacroGridWorld.MCELL_WIDTH, MacroGridWorld.MCELL_HEIGHT);
+	}
+	
+	/**
+	 * Returns a feature extractor whose features match getPropositionalFunctions(domain, gridWorld)
+	 * @param gridWorld
+	 * @return
+	 */
+	public static MacroCellFeatureExtractor getFeatureExtractor(MacroGridWorld gridWorld) {
+		return new MacroCellFeatureExtractor(gridWorld.getWidth() / gridWorld.getMacroCellHorizontalCount(), 
+				gridWorld.getHeight() / gridWorld.getMacroCellVerticalCount(), 
+				gridWorld.getMacroCellHorizontalCount(), gridWorld.getMacroCellVerticalCount());
+	}
+	
+	/**
+	 * Returns an indexer over the agent's cells in this grid world
+	 * @param domain Domain generated by gridWorld
+	 * @param gridWorld
+	 * @return
+	 */
+	public static GridAgentStateIndexer getStateIndexer(Domain domain, MacroGridWorld gridWorld) {
+		return new GridAgentStateIndexer(domain, gridWorld.getWidth(), gridWorld.getHeight());
+	}
+	
+	/**
+	 * Returns a value iteration planner over this grid world's cells, which plans on arrays from the
+	 * grid's map and transition dynamics
+	 * @param domain Domain generated by this grid world
+	 * @param rf the reward function
+	 * @param tf the terminal state function
+	 * @param gamma the discount factor
+	 * @param maxDelta when the maximum change in the value function is smaller than this value, VI will terminate.
+	 * @param maxIterations when the number of VI iterations exceeds this value, VI will terminate.
+	 * @return
+	 */
+	public GridValueIteration getPlanner(Domain domain, RewardFunction rf, TerminalFunction tf, double gamma, 
+			double maxDelta, int maxIterations) {
+		return new GridValueIteration(domain, rf, tf, gamma, MacroGridWorld.getStateIndexer(domain, this), 
+				this.map, this.transitionDynamics, maxDelta, maxIterations);
+	}
+	
 	//wrapper of old reward generation function
 	public static Map<String, Double> generateRandomRewards(PropositionalFunction[] functions) {
 		return generateRandomRewards(functions, 0);
 	}
 	
 	public static Map<String, Double> generateRandomRewards(PropositionalFunction[] functions, int numberFilled) {
-				
-		Random rando = new Random();
+		return generateRandomRewards(functions, numberFilled, new Random());
+	}
+	
+	public static Map<String, Double> generateRandomRewards(PropositionalFunction[] functions, int numberFilled, Random rando) {
 		//reward function generation algorithm from Ng et al
 		double[] weights = new double[functions.length];
 		int numFilled = 0;
@@ -185,7 +242,7 @@ public class MacroGridWorld extends GridWorldDomain{
 			this.left = x;
 			this.right = x + width;
 			this.bottom = y;
-			this.top = y + width;
+			this.top = y + height;
 		}
 
 		@Override
@@ -205,4 +262,75 @@ public class MacroGridWorld extends GridWorldDomain{
 					bottom <= agentY && agentY < top);
 		}
 	}
+	
+	/**
+	 * Computes the macro cell features directly from the agent's position. The agent is in exactly one
+	 * macro cell, found by integer division, so a state's features cost the same however many cells
+	 * there are. Feature i * verticalCount + j is the cell i to the right and j up, the same order
+	 * getPropositionalFunctions creates the InMacroCellPFs in.
+	 * @author brawner
+	 *
+	 */
+	public static class MacroCellFeatureExtractor implements StateFeatureExtractor {
+		private static final int[]					NO_FEATURES = new int[]{};
+		
+		private final int 							cellWidth;
+		private final int 							cellHeight;
+		private final int 							horizontalCount;
+		private final int 							verticalCount;
+		private final int[][] 						cellFeatures;
+		
+		/**
+		 * Constructor
+		 * @param cellWidth Width of each macro cell
+		 * @param cellHeight Height of each macro cell
+		 * @param horizontalCount Number of macro cells across
+		 * @param verticalCount Number of macro cells up
+		 */
+		public MacroCellFeatureExtractor(int cellWidth, int cellHeight, int horizontalCount, int verticalCount) {
+			this.cellWidth = cellWidth;
+			this.cellHeight = cellHeight;
+			this.horizontalCount = horizontalCount;
+			this.verticalCount = verticalCount;
+			this.cellFeatures = new int[horizontalCount * verticalCount][];
+			for (int i = 0; i < this.cellFeatures.length; ++i) {
+				this.cellFeatures[i] = new int[]{i};
+			}
+		}
+		
+		@Override
+		public int getFeatureCount() {
+			return this.cellFeatures.length;
+		}
+		
+		/**
+		 * Returns the index of the macro cell containing this cell
+		 * @param x
+		 * @param y
+		 * @return The macro cell's feature index, or -1 if it isn't in any macro cell
+		 */
+		public int getCellIndex(int x, int y) {
+			if (x < 0 || y < 0) {
+				return -1;
+			}
+			int i = x / this.cellWidth;
+			int j = y / this.cellHeight;
+			if (i >= this.horizontalCount || j >= this.verticalCount) {
+				return -1;
+			}
+			return i * this.verticalCount + j;
+		}
+		
+		@Override
+		public int[] getActiveFeatures(State state) {
+			List<ObjectInstance> agents = state.getObjectsOfTrueClass(MacroGridWorld.CLASSAGENT);
+			if (agents.size() == 0) {
+				return NO_FEATURES;
+			}
+			ObjectInstance agent = agents.get(0);
+			int index = this.getCellIndex(agent.getDiscValForAttribute(MacroGridWorld.ATTX), 
+					agent.getDiscValForAttribute(MacroGridWorld.ATTY));
+			return (index < 0) ? NO_FEATURES : this.cellFeatures[index];
+		}
+	}
 }
@@ -3,14 +3,13 @@ import java.util.List;
 import java.util.Map;
 
 import burlap.behavior.singleagent.ApprenticeshipLearning;
+import burlap.behavior.singleagent.ApprenticeshipLearningRequest;
 import burlap.behavior.singleagent.EpisodeAnalysis;
 import burlap.behavior.singleagent.Policy;
 import burlap.behavior.singleagent.RandomStartStateGenerator;
 import burlap.behavior.singleagent.planning.QComputablePlanner;
 import burlap.behavior.singleagent.planning.commonpolicies.GreedyQPolicy;
-import burlap.behavior.singleagent.planning.stochastic.valueiteration.ValueIteration;
-import burlap.behavior.statehashing.NameDependentStateHashFactory;
-import burlap.behavior.statehashing.StateHashFactory;
+import burlap.behavior.singleagent.planning.stochastic.valueiteration.GridValueIteration;
 import burlap.oomdp.core.Domain;
 import burlap.oomdp.core.PropositionalFunction;
 import burlap.oomdp.core.State;
@@ -27,12 +26,11 @@ public class Sampler {
 	public static void main(String[] args) {
 		MacroGridWorld gw = new MacroGridWorld(128, 128, 64, 64);
 		Domain domain = gw.generateDomain();
-		StateHashFactory hashingFactory = new NameDependentStateHashFactory();
 		PropositionalFunction[] featureFunctions = MacroGridWorld.getPropositionalFunctions(domain);
 		
 		// TODO Auto-generated method stub
 		Map<String, Double> rewards = MacroGridWorld.generateRandomRewards(featureFunctions, MacroGridWorld.MCELL_FILLED);
-		RewardFunction randomReward = new ApprenticeshipLearning.FeatureBasedRewardFunction(featureFunctions, rewards);
+		RewardFunction randomReward = new ApprenticeshipLearning.FeatureBasedRewardFunction(featureFunctions, MacroGridWorld.getFeatureExtractor(), rewards);
 		
 		TerminalFunction tf = new TerminalFunction() {	
 			@Override
@@ -41,7 +39,7 @@ public class Sampler {
 			}
 		};
 		//create and instance of planner; discount is set to 0.99; the minimum delta threshold is set to 0.001
-		ValueIteration planner = new ValueIteration(domain, randomReward, tf, 0.99, hashingFactory, .01, 100);		
+		GridValueIteration planner = gw.getPlanner(domain, randomReward, tf, 0.99, .01, 100);		
 		
 		
 		State initialState = MacroGridWorld.getOneAgentState(domain);
@@ -53,11 +51,14 @@ public class Sampler {
 		
 		//create a Q-greedy policy using the Q-values that the planner computes
 		Policy p = new GreedyQPolicy((QComputablePlanner)planner);
-		RandomStartStateGenerator stateGenerator = new RandomStartStateGenerator((SADomain)domain, initialState);
+		RandomStartStateGenerator stateGenerator = new RandomStartStateGenerator((SADomain)domain, initialState, 
+				MacroGridWorld.getStateIndexer(domain, gw));
 		List<Double> rewardHistory = new ArrayList<Double>();
 		
+		//steps past the effective horizon can't change the discounted return by more than epsilon
+		int horizon = ApprenticeshipLearning.getEffectiveHorizon(0.99, ApprenticeshipLearningRequest.DEFAULT_EPSILON);
 		for (int i = 0; i < 1000; i++) {
-			EpisodeAnalysis ep = p.evaluateBehavior(stateGenerator.generateState(), randomReward, 1000);
+			EpisodeAnalysis ep = p.evaluateBehavior(stateGenerator.generateState(), randomReward, horizon);
 			double d = ep.getDiscountedReturn(0.99);
 			if (i > 0) {
 				double average = (rewardHistory.get(rewardHistory.size() - 1) * rewardHistory.size() + d) / (rewardHistory.size() + 1);		
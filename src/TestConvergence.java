@@ -1,31 +1,26 @@
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 
 import burlap.behavior.singleagent.ApprenticeshipLearning;
 import burlap.behavior.singleagent.ApprenticeshipLearningRequest;
+import burlap.behavior.singleagent.BehaviorCloningPolicy;
 import burlap.behavior.singleagent.EpisodeAnalysis;
 import burlap.behavior.singleagent.Policy;
 import burlap.behavior.singleagent.RandomStartStateGenerator;
-import burlap.behavior.singleagent.Policy.ActionProb;
+import burlap.behavior.singleagent.RolloutFeatureExpectationEstimator;
 import burlap.behavior.singleagent.planning.QComputablePlanner;
 import burlap.behavior.singleagent.planning.commonpolicies.GreedyQPolicy;
 import burlap.behavior.singleagent.planning.stochastic.valueiteration.ValueIteration;
-import burlap.behavior.statehashing.NameDependentStateHashFactory;
-import burlap.behavior.statehashing.StateHashTuple;
+import burlap.behavior.statehashing.StateIndexer;
+import burlap.debugtools.ExperimentRunner;
 import burlap.oomdp.auxiliary.StateGenerator;
-import burlap.oomdp.core.Domain;
 import burlap.oomdp.core.PropositionalFunction;
-import burlap.oomdp.core.State;
-import burlap.oomdp.singleagent.Action;
-import burlap.oomdp.singleagent.GroundedAction;
 import burlap.oomdp.singleagent.RewardFunction;
 import burlap.oomdp.singleagent.SADomain;
 
@@ -36,6 +31,24 @@ public class TestConvergence extends IRLGridWorldDemo{
 	final int			N_APPRENTICE_FE_SAMPLES = 100;
 	final int			N_ALGO_ITERATIONS = 20;
 	final int			N_VALUE_ESTIMATION_SAMPLES = 100;
+	int					threadCount = Runtime.getRuntime().availableProcessors();
+	long				seed = new Random().nextLong();
+	
+	/**
+	 * Sets the number of runs performed at once
+	 * @param threadCount
+	 */
+	public void setThreadCount(int threadCount) {
+		this.threadCount = threadCount;
+	}
+	
+	/**
+	 * Sets the seed of the experiments, each run's seed is derived from it
+	 * @param seed
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
 
 	/**
 	 * This determines the distance to an expert's feature distribution
@@ -45,67 +58,87 @@ public class TestConvergence extends IRLGridWorldDemo{
 	 * @param nRuns
 	 * @param outputPath
 	 */
-	public void testAlgorithmIterations(int maxIterations, int nRuns, String outputPath){
+	public void testAlgorithmIterations(final int maxIterations, int nRuns, final String outputPath){
+		Random random = new Random(this.seed);
+		
 		//0 - generate a random reward function on the gridworld
-		PropositionalFunction[] featureFunctions = MacroGridWorld.getPropositionalFunctions(this.domain);
-		Map<String, Double> rewards = MacroGridWorld.generateRandomRewards(featureFunctions);
-		rf = new ApprenticeshipLearning.FeatureBasedRewardFunction(featureFunctions, rewards);
+		final PropositionalFunction[] featureFunctions = MacroGridWorld.getPropositionalFunctions(this.domain);
+		Map<String, Double> rewards = MacroGridWorld.generateRandomRewards(featureFunctions, 0, random);
+		rf = new ApprenticeshipLearning.FeatureBasedRewardFunction(featureFunctions, MacroGridWorld.getFeatureExtractor(), rewards);
 		
 		// 1 - Get Expert Policy, trajectories, and feature expectation estimate (via VI)
 		//create and instance of planner; discount is set to 0.99; the minimum delta threshold is set to 0.001
 		ValueIteration planner = new ValueIteration(domain, rf, tf, GAMMA, hashingFactory, .01, 100);		
 		
 		//run planner from our initial state
-		planner.planFromState(MacroGridWorld.getRandomInitialState(this.domain));
+		planner.planFromState(MacroGridWorld.getRandomInitialState(this.domain, random));
 		
 		//create a Q-greedy policy using the Q-values that the planner computes
 		Policy expertPolicy = new GreedyQPolicy((QComputablePlanner)planner);
 		
-		int trajectoryLength = (int) (Math.log((1 - GAMMA) * ApprenticeshipLearningRequest.DEFAULT_EPSILON) / Math.log(GAMMA));
+		final int trajectoryLength = ApprenticeshipLearning.getEffectiveHorizon(GAMMA, ApprenticeshipLearningRequest.DEFAULT_EPSILON);
 		
 		//run a sample of the computed policy and write its results to the file "VIResult.episode" in the directory outputPath
 		//a '.episode' extension is automatically added by the writeToFileMethod
-		List<EpisodeAnalysis> expertEpisodes = new ArrayList<EpisodeAnalysis>();
+		final List<EpisodeAnalysis> expertEpisodes = new ArrayList<EpisodeAnalysis>();
 		for (int i =0; i < N_EXPERT_FE_SAMPLES; i++) {
-			EpisodeAnalysis episode = expertPolicy.evaluateBehavior(MacroGridWorld.getRandomInitialState(this.domain), rf, tf,trajectoryLength);
+			EpisodeAnalysis episode = RolloutFeatureExpectationEstimator.rollout(
+					expertPolicy, MacroGridWorld.getRandomInitialState(this.domain, random), rf, tf, trajectoryLength, random);
 			expertEpisodes.add(episode);
-			episode.writeToFile(outputPath +"/traj/"+ "Expert_"+i, sp);
 		}
-		
-		double[] expertFExp = ApprenticeshipLearning.estimateFeatureExpectation(expertEpisodes, featureFunctions, GAMMA);
+		writeEpisodes(outputPath +"/traj/"+ "Expert", expertEpisodes);
+		
+		//the runs' requests are copies of one request, so they share its estimate of the expert's feature expectation
+		final ApprenticeshipLearningRequest baseRequest = new ApprenticeshipLearningRequest();
+		baseRequest.setDomain(this.domain);
+		baseRequest.setFeatureFunctions(featureFunctions);
+		baseRequest.setFeatureExtractor(MacroGridWorld.getFeatureExtractor());
+		baseRequest.setExpertEpisodes(expertEpisodes);
+		baseRequest.setGamma(GAMMA);
+		baseRequest.setMaxIterations(maxIterations);
+		baseRequest.setPolicyCount(ApprenticeshipLearning.FEATURE_EXPECTATION_SAMPLES);
+		baseRequest.setUsingMaxMargin(true);
+		baseRequest.getExpertFeatureExpectation();
 		
 		//
-		//	Run experiment
+		//	Run experiment, each run learns with its own planner and request
 		//
-		List<double[]> results = new ArrayList<double[]>();
-		
-		long start = System.currentTimeMillis();
-		
-		ValueIteration apprenticePlanner = new ValueIteration(domain, null, tf, GAMMA, hashingFactory, .01, 100);		
-		StateGenerator startStateGenerator = new RandomStartStateGenerator((SADomain)this.domain, this.initialState);
-		ApprenticeshipLearningRequest request = 
-				new ApprenticeshipLearningRequest(this.domain, apprenticePlanner, featureFunctions, expertEpisodes, startStateGenerator);
-		request.setGamma(GAMMA);
-		request.setMaxIterations(maxIterations);
-		request.setPolicyCount(ApprenticeshipLearning.FEATURE_EXPECTATION_SAMPLES);
-		request.setUsingMaxMargin(true);
-		
-		for (int run = 0; run < nRuns; run++) {			
-			Policy projPolicy = ApprenticeshipLearning.getLearnedPolicy(request);
-			
-			EpisodeAnalysis apprenticeEA = projPolicy.evaluateBehavior(MacroGridWorld.getRandomInitialState(this.domain), rf, trajectoryLength);
-			apprenticeEA.writeToFile(outputPath +"/traj/"+ "ApprenticeSample_run"+run, sp);
-
-			double[] featureWeightScoreHistory = request.getTHistory();
-			for (int i = 0; i < maxIterations; ++i) {
-				featureWeightScoreHistory[i] *= (1-GAMMA);
+		ExperimentRunner runner = new ExperimentRunner(this.threadCount, random.nextLong());
+		for (int run = 0; run < nRuns; run++) {
+			final int runIndex = run;
+			runner.addJob(new ExperimentRunner.Job() {
+				@Override
+				public List<String> run(long seed) {
+					Random random = new Random(seed);
+					ValueIteration apprenticePlanner = new ValueIteration(domain, null, tf, GAMMA, createHashingFactory(), .01, 100);		
+					RandomStartStateGenerator startStateGenerator = new RandomStartStateGenerator((SADomain)domain, initialState);
+					startStateGenerator.setSeed(random.nextLong());
+					ApprenticeshipLearningRequest request = new ApprenticeshipLearningRequest(baseRequest);
+					request.setPlanner(apprenticePlanner);
+					request.setStartStateGenerator(startStateGenerator);
+					request.setSeed(random.nextLong());
+					
+					Policy projPolicy = ApprenticeshipLearning.getLearnedPolicy(request);
+					
+					EpisodeAnalysis apprenticeEA = RolloutFeatureExpectationEstimator.rollout(
+							projPolicy, MacroGridWorld.getRandomInitialState(domain, random), rf, tf, trajectoryLength, random);
+					writeEpisodes(outputPath +"/traj/"+ "ApprenticeSample_run"+runIndex, Collections.singletonList(apprenticeEA));
+					
+					double[] featureWeightScoreHistory = request.getTHistory();
+					StringBuilder line = new StringBuilder().append(runIndex);
+					for (int i = 0; i < maxIterations; ++i) {
+						line.append(", ").append(featureWeightScoreHistory[i] * (1-GAMMA));
+					}
+					System.out.print(runIndex+", ");
+					List<String> lines = new ArrayList<String>();
+					lines.add(line.toString());
+					return lines;
 				}
-			results.add(featureWeightScoreHistory);
-			System.out.print(run+", ");
+			});
 		}
 		
 		//Write results to file
-		writeResultsToFile(results, outputPath, "performanceToIterations.csv");
+		runExperiments(runner, outputPath, "performanceToIterations.csv");
 		
 	}
 	
@@ -189,11 +222,13 @@ public class TestConvergence extends IRLGridWorldDemo{
 		
 	}*/
 	
-	public void performanceToExpertSampleSize(int [] sampleSizes, int nRuns, String outputPath, String algorithm){
+	public void performanceToExpertSampleSize(int [] sampleSizes, int nRuns, final String outputPath, final String algorithm){
+		Random random = new Random(this.seed);
+		
 		//0 - generate a random reward funciton on the gridworld
 		this.featureFunctions = MacroGridWorld.getPropositionalFunctions(this.domain);
-		this.rewardMap = MacroGridWorld.generateRandomRewards(featureFunctions);
-		this.rf = new ApprenticeshipLearning.FeatureBasedRewardFunction(featureFunctions, this.rewardMap);
+		this.rewardMap = MacroGridWorld.generateRandomRewards(featureFunctions, 0, random);
+		this.rf = new ApprenticeshipLearning.FeatureBasedRewardFunction(featureFunctions, MacroGridWorld.getFeatureExtractor(), this.rewardMap);
 		
 		// 1 - Get Expert Policy, trajectories, and feature expectation estimate (via VI)
 		//create an instance of planner; discount is set to 0.99; the minimum delta threshold is set to 0.001
@@ -206,85 +241,64 @@ public class TestConvergence extends IRLGridWorldDemo{
 		//create a Q-greedy policy using the Q-values that the planner computes
 		Policy expertPolicy = new GreedyQPolicy((QComputablePlanner)planner);
 		
-		//run a sample of the computed policy and write its results to the file "VIResult.episode" in the directory outputPath
-		//a '.episode' extension is automatically added by the writeToFileMethod
-		int maxSamples = 0;
-		for (int i = 0; i < sampleSizes.length; i++) {
-			maxSamples = Math.max(sampleSizes[i],maxSamples);
-		}
-		
 		//get the expert's expected value (basically measures how good the policy is)
-		double expertValueEstimate = 0.0;
-		for (int j =0; j < N_VALUE_ESTIMATION_SAMPLES; j++) {
-			EpisodeAnalysis episode = expertPolicy.evaluateBehavior(MacroGridWorld.getRandomInitialState(this.domain), this.rf, tf,100);
-			
-			expertValueEstimate += episode.getDiscountedReturn(GAMMA);
-		}
-		expertValueEstimate /= N_VALUE_ESTIMATION_SAMPLES;
+		final double expertValueEstimate = this.estimateValue(expertPolicy, random);
 		
 		//By Sample Size, do nRun runs
-		List<double[]> results = new ArrayList<double[]>();
-		
-		//apprentice planner
-		//RewardFunction randomReward = new ApprenticeshipLearning.FeatureBasedRewardFunction(featureFunctions, rewards);
-		
-		for (int sampleSize : sampleSizes) {
-			System.out.print("SampleSize: "+sampleSize+ " ");
-			double[] sampleResults = new double[nRuns];
+		//the expert's planner isn't thread safe, so its samples are generated before any run starts
+		ExperimentRunner runner = new ExperimentRunner(this.threadCount, random.nextLong());
+		for (final int sampleSize : sampleSizes) {
+			final List<EpisodeAnalysis> expertEpisodes = this.sampleExpert(expertPolicy, sampleSize, outputPath, random);
 			
-			//generate expert samples
-			List<EpisodeAnalysis> expertEpisodes = new ArrayList<EpisodeAnalysis>();
-			for (int j =0; j < sampleSize; j++) {
-				EpisodeAnalysis episode = expertPolicy.evaluateBehavior(MacroGridWorld.getRandomInitialState(this.domain), this.rf, tf,100);
-				expertEpisodes.add(episode);
-				episode.writeToFile(outputPath +"/traj/"+ "Expert_"+j, sp);
-			}
-			
-			//get expert feature expectation
-			//double[] expertFExp = ApprenticeshipLearning.estimateFeatureExpectation(
-					//expertEpisodes, featureFunctions, GAMMA);
+			//the runs of a sample size share its estimate of the expert's feature expectation
+			final ApprenticeshipLearningRequest baseRequest = new ApprenticeshipLearningRequest();
+			baseRequest.setDomain(this.domain);
+			baseRequest.setFeatureFunctions(featureFunctions);
+			baseRequest.setFeatureExtractor(MacroGridWorld.getFeatureExtractor());
+			baseRequest.setExpertEpisodes(expertEpisodes);
+			baseRequest.getExpertFeatureExpectation();
 			
-			Policy apprenticePolicy = null;
 			//run it under this sample size a bunch of times
 			for (int run = 0 ; run < nRuns; run++) {
-				ValueIteration apprenticePlanner = new ValueIteration(domain, null, tf, GAMMA, hashingFactory, .01, 100);		
-				apprenticePlanner.toggleDebugPrinting(false);
-				
-				System.out.print(run);
-				StateGenerator startStateGenerator = new RandomStartStateGenerator((SADomain)this.domain, this.initialState);
-				ApprenticeshipLearningRequest request = 
-						new ApprenticeshipLearningRequest(this.domain, planner, featureFunctions, expertEpisodes, startStateGenerator);
-				//request.setUsingMaxMargin(true);
-				apprenticePolicy = ApprenticeshipLearning.getLearnedPolicy(request);
-
-				double valueEstimate = 0.0;
-				for (int v = 0 ; v < N_VALUE_ESTIMATION_SAMPLES; v++) {
-					EpisodeAnalysis ea = apprenticePolicy.evaluateBehavior(MacroGridWorld.getRandomInitialState(this.domain), rf, 100);
-					valueEstimate += ea.getDiscountedReturn(GAMMA);
-					ea.writeToFile(outputPath +"/traj/"+ algorithm+"_"+run+"_"+sampleSize + v, sp);
-				}
-				valueEstimate /= N_VALUE_ESTIMATION_SAMPLES;
-				
-				sampleResults[run] = valueEstimate/expertValueEstimate;
-				System.out.println(sampleResults[run]);
+				final int runIndex = run;
+				runner.addJob(new ExperimentRunner.Job() {
+					@Override
+					public List<String> run(long seed) {
+						Random random = new Random(seed);
+						ValueIteration apprenticePlanner = new ValueIteration(domain, null, tf, GAMMA, createHashingFactory(), .01, 100);		
+						apprenticePlanner.toggleDebugPrinting(false);
+						
+						RandomStartStateGenerator startStateGenerator = new RandomStartStateGenerator((SADomain)domain, initialState);
+						startStateGenerator.setSeed(random.nextLong());
+						ApprenticeshipLearningRequest request = new ApprenticeshipLearningRequest(baseRequest);
+						request.setPlanner(apprenticePlanner);
+						request.setStartStateGenerator(startStateGenerator);
+						request.setSeed(random.nextLong());
+						//request.setUsingMaxMargin(true);
+						Policy apprenticePolicy = ApprenticeshipLearning.getLearnedPolicy(request);
+						
+						double valueEstimate = estimateValue(apprenticePolicy, random, outputPath +"/traj/"+ algorithm+"_"+runIndex+"_"+sampleSize);
+						return getSampleSizeResult(sampleSize, runIndex, valueEstimate/expertValueEstimate);
+					}
+				});
 			}
-			System.out.println();
-			results.add(sampleResults);
 		}
 		
 		//Write results to file
-		writeResultsToFile(results, outputPath, "performanceToSamples.csv");
+		runExperiments(runner, outputPath, "performanceToSamples.csv");
 		
 	}
 	
 	
 	
 	
-	public void mimicToExpert(int [] sampleSizes, int nRuns, String outputPath){
+	public void mimicToExpert(int [] sampleSizes, int nRuns, final String outputPath){
+		Random random = new Random(this.seed);
+		
 		//0 - generate a random reward funciton on the gridworld
 		PropositionalFunction[] featureFunctions = MacroGridWorld.getPropositionalFunctions(this.domain);
-		Map<String, Double> rewards = MacroGridWorld.generateRandomRewards(featureFunctions);
-		RewardFunction randomReward = new ApprenticeshipLearning.FeatureBasedRewardFunction(featureFunctions, rewards);
+		Map<String, Double> rewards = MacroGridWorld.generateRandomRewards(featureFunctions, 0, random);
+		RewardFunction randomReward = new ApprenticeshipLearning.FeatureBasedRewardFunction(featureFunctions, MacroGridWorld.getFeatureExtractor(), rewards);
 		rf = randomReward;
 		
 		// 1 - Get Expert Policy, trajectories, and feature expectation estimate (via VI)
@@ -298,156 +312,98 @@ public class TestConvergence extends IRLGridWorldDemo{
 		//create a Q-greedy policy using the Q-values that the planner computes
 		Policy expertPolicy = new GreedyQPolicy((QComputablePlanner)planner);
 		
-		//run a sample of the computed policy and write its results to the file "VIResult.episode" in the directory outputPath
-		//a '.episode' extension is automatically added by the writeToFileMethod
-		int maxSamples = 0;
-		for (int i = 0; i < sampleSizes.length; i++) {
-			maxSamples = Math.max(sampleSizes[i],maxSamples);
-		}
-		
-		double expertValueEstimate = 0.0;
-		for (int j =0; j < N_VALUE_ESTIMATION_SAMPLES; j++) {
-			//MacroGridWorld.setAgent(initialState, (int)(Math.random()*MacroGridWorld.WIDTH), (int)(Math.random()*MacroGridWorld.HEIGHT));
-			EpisodeAnalysis episode = expertPolicy.evaluateBehavior(MacroGridWorld.getRandomInitialState(this.domain), randomReward, tf,100);
-			expertValueEstimate += episode.getDiscountedReturn(GAMMA);
-		}
-		expertValueEstimate /= N_VALUE_ESTIMATION_SAMPLES;
+		final double expertValueEstimate = this.estimateValue(expertPolicy, random);
 		
 		//By Sample Size, do nRun runs
-		List<double[]> results = new ArrayList<double[]>();
-		
-		for (int sampleSize : sampleSizes) {
-			System.out.print("SampleSize: "+sampleSize+ " ");
-			double[] sampleResults = new double[nRuns];
-			
-			//generate expert samples
-			List<EpisodeAnalysis> expertEpisodes = new ArrayList<EpisodeAnalysis>();
-			for (int j =0; j < sampleSize; j++) {
-				//MacroGridWorld.setAgent(initialState, (int)(Math.random()*MacroGridWorld.WIDTH), (int)(Math.random()*MacroGridWorld.HEIGHT));
-				EpisodeAnalysis episode = expertPolicy.evaluateBehavior(MacroGridWorld.getRandomInitialState(this.domain), randomReward, tf,100);
-				expertEpisodes.add(episode);
-				episode.writeToFile(outputPath +"/traj/"+ "Expert_"+j, sp);
-			}
-			
-			//get expert feature expectation
-			double[] expertFExp = ApprenticeshipLearning.estimateFeatureExpectation(expertEpisodes, featureFunctions, GAMMA);
+		final StateIndexer stateIndexer = MacroGridWorld.getStateIndexer(this.domain, this.irlgw);
+		ExperimentRunner runner = new ExperimentRunner(this.threadCount, random.nextLong());
+		for (final int sampleSize : sampleSizes) {
+			final List<EpisodeAnalysis> expertEpisodes = this.sampleExpert(expertPolicy, sampleSize, outputPath, random);
 			
 			//run it under this sample size a bunch of times
 			for (int run = 0 ; run < nRuns; run++) {
-				System.out.print(run);
-				Policy mimicPolicy = new MimicTheExpertPolicy(this.domain, expertEpisodes);
-				
-				
-				double valueEstimate = 0.0;
-				for (int v = 0 ; v < N_VALUE_ESTIMATION_SAMPLES; v++) {
-					EpisodeAnalysis ea = mimicPolicy.evaluateBehavior(MacroGridWorld.getRandomInitialState(this.domain), rf, 100);
-					valueEstimate += ea.getDiscountedReturn(GAMMA);
-					ea.writeToFile(outputPath +"/traj/"+ "Mimic_"+run+"_"+sampleSize, sp);
-				}
-				valueEstimate /= N_VALUE_ESTIMATION_SAMPLES;
-				
-				sampleResults[run] = valueEstimate/expertValueEstimate;
+				final int runIndex = run;
+				runner.addJob(new ExperimentRunner.Job() {
+					@Override
+					public List<String> run(long seed) {
+						Random random = new Random(seed);
+						Policy mimicPolicy = new BehaviorCloningPolicy(domain, stateIndexer, expertEpisodes, random.nextLong());
+						
+						double valueEstimate = estimateValue(mimicPolicy, random, outputPath +"/traj/"+ "Mimic_"+runIndex+"_"+sampleSize);
+						return getSampleSizeResult(sampleSize, runIndex, valueEstimate/expertValueEstimate);
+					}
+				});
 			}
-			System.out.println();
-			results.add(sampleResults);
 		}
 		
 		//Write results to file
-		writeResultsToFile(results, outputPath, "performanceToSamples_mimic.csv");
+		runExperiments(runner, outputPath, "performanceToSamples_mimic.csv");
 		
 	}
 	
-	private static void writeResultsToFile(List<double[]> results, String outputPath, String fname) {
+	/**
+	 * Samples the expert's demonstrations, writing them to the trajectory directory
+	 */
+	private List<EpisodeAnalysis> sampleExpert(Policy expertPolicy, int sampleSize, String outputPath, Random random) {
+		List<EpisodeAnalysis> expertEpisodes = new ArrayList<EpisodeAnalysis>();
+		for (int j =0; j < sampleSize; j++) {
+			EpisodeAnalysis episode = RolloutFeatureExpectationEstimator.rollout(
+					expertPolicy, MacroGridWorld.getRandomInitialState(this.domain, random), this.rf, tf, 100, random);
+			expertEpisodes.add(episode);
+		}
+		this.writeEpisodes(outputPath +"/traj/"+ "Expert", expertEpisodes);
+		return expertEpisodes;
+	}
+	
+	private double estimateValue(Policy policy, Random random) {
+		return this.estimateValue(policy, random, null);
+	}
+	
+	/**
+	 * Estimates a policy's expected discounted return from random start states
+	 * @param trajectoryPath The episode file the sampled episodes are written to, or null if they aren't
+	 */
+	private double estimateValue(Policy policy, Random random, String trajectoryPath) {
+		double valueEstimate = 0.0;
+		List<EpisodeAnalysis> episodes = new ArrayList<EpisodeAnalysis>(N_VALUE_ESTIMATION_SAMPLES);
+		for (int v = 0 ; v < N_VALUE_ESTIMATION_SAMPLES; v++) {
+			EpisodeAnalysis ea = RolloutFeatureExpectationEstimator.rollout(
+					policy, MacroGridWorld.getRandomInitialState(this.domain, random), this.rf, tf, 100, random);
+			valueEstimate += ea.getDiscountedReturn(GAMMA);
+			episodes.add(ea);
+		}
+		if (trajectoryPath != null) {
+			this.writeEpisodes(trajectoryPath, episodes);
+		}
+		return valueEstimate / N_VALUE_ESTIMATION_SAMPLES;
+	}
+	
+	private static List<String> getSampleSizeResult(int sampleSize, int run, double performance) {
+		System.out.println("SampleSize: " + sampleSize + " run: " + run + " " + performance);
+		List<String> lines = new ArrayList<String>();
+		lines.add(sampleSize + ", " + run + ", " + performance);
+		return lines;
+	}
+	
+	/**
+	 * Runs the experiment's jobs, streaming their results to a file in the output directory
+	 */
+	private static void runExperiments(ExperimentRunner runner, String outputPath, String fname) {
 		File f = (new File(outputPath));
 		f.mkdirs();
 		
 		try {
-			
-			BufferedWriter br = new BufferedWriter(new FileWriter(outputPath + "/" + fname));
-			StringBuilder sb = new StringBuilder();
-			
-			for (int i = 0; i < results.size(); i++) {
-				double[] runResults = results.get(i);
-				//sb.append("run_"+(i));
-				for (double iter : runResults) {
-					sb.append(iter);
-					sb.append(", ");
-				}
-				sb.append("\n");
+			FileWriter writer = new FileWriter(outputPath + "/" + fname);
+			int failures = runner.run(writer);
+			writer.close();
+			if (failures > 0) {
+				System.err.println(failures + " of " + runner.getJobCount() + " runs failed");
 			}
-
-			br.write(sb.toString());
-			br.close();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
 	
-	public static class MimicTheExpertPolicy extends Policy {
-
-		private HashMap<StateHashTuple, GroundedAction> stateActionMapping;
-		private HashMap<StateHashTuple, List<ActionProb>> stateActionDistributionMapping;
-		private List<Action> actions;
-		private Random rando;
-		private NameDependentStateHashFactory hashFactory;
-
-		public MimicTheExpertPolicy(Domain d, List<EpisodeAnalysis> eas) {
-			this.stateActionMapping = new HashMap<StateHashTuple, GroundedAction>();
-			this.stateActionDistributionMapping = new HashMap<StateHashTuple, List<ActionProb>>();
-			this.actions = d.getActions();
-			this.rando = new Random();
-			this.hashFactory = new NameDependentStateHashFactory();
-			
-			
-			//generate state-action mapping by looking at all the state-action info in the expert's examples
-			for (EpisodeAnalysis ea :eas) {
-				for (int step = 0; step < ea.numTimeSteps() - 1; step++) {
-					
-					Object statehash = this.hashFactory.hashState(ea.getState(step));
-					if (!this.stateActionMapping.containsKey(statehash)) {
-						try {
-							this.stateActionMapping.put((StateHashTuple) statehash, ea.getAction(step));
-						}
-						catch (IndexOutOfBoundsException e) {
-							System.out.println(e.getMessage());
-						}
-					}
-				}
-			}
-		}
-		
-		@Override
-		public GroundedAction getAction(State s) {
-			// TODO Auto-generated method stub
-			
-			Object statehash = this.hashFactory.hashState(s);
-			//check if its in the dictionary from the expert
-			if(this.stateActionMapping.containsKey(statehash)) {
-				return this.stateActionMapping.get(statehash);
-			}
-			
-			//if not, do a random action
-			List<GroundedAction> allActions = s.getAllGroundedActionsFor(this.actions);
-			return allActions.get(this.rando.nextInt(allActions.size()));
-			
-		}
-
-		@Override
-		public List<ActionProb> getActionDistributionForState(State s) {
-			// TODO Auto-generated method stub
-			return null;
-		}
-
-		@Override
-		public boolean isStochastic() {
-			// TODO Auto-generated method stub
-			return false;
-		}
-		
-	}
-	
-
-
 	public static void main(String [] args) {
 		TestConvergence tester = new TestConvergence();
 		String outputPath = "results"; //directory to record results
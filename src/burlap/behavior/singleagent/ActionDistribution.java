@@ -0,0 +1,128 @@
+package burlap.behavior.singleagent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import burlap.behavior.singleagent.Policy.ActionProb;
+import burlap.oomdp.singleagent.GroundedAction;
+
+/**
+ * A fixed distribution over a state's actions, sampled with Vose's alias method. Slot i is kept with
+ * probability thresholds[i], otherwise its alias is chosen, so sampling takes one random draw and
+ * constant time however many actions there are. Distributions can't be modified, so they can be
+ * sampled from several threads.
+ * @author brawner
+ *
+ */
+class ActionDistribution {
+	private final GroundedAction[] 						actions;
+	private final double[] 								thresholds;
+	private final int[] 								aliases;
+	private final List<ActionProb> 						actionProbs;
+
+	/**
+	 * Constructor for a policy's distribution over a state's actions
+	 * @param actionProbs The actions and their probabilities
+	 */
+	public ActionDistribution(List<ActionProb> actionProbs) {
+		this.actions = new GroundedAction[actionProbs.size()];
+		double[] probabilities = new double[actionProbs.size()];
+		for (int i = 0; i < this.actions.length; ++i) {
+			this.actions[i] = actionProbs.get(i).ga;
+			probabilities[i] = actionProbs.get(i).pSelection;
+		}
+		this.thresholds = new double[this.actions.length];
+		this.aliases = new int[this.actions.length];
+		this.actionProbs = actionProbs;
+		this.buildAliasTable(probabilities);
+	}
+
+	/**
+	 * Constructor
+	 * @param actions The actions of the state
+	 * @param probabilities Probability of each action
+	 */
+	public ActionDistribution(GroundedAction[] actions, double[] probabilities) {
+		int n = actions.length;
+		this.actions = actions;
+		this.thresholds = new double[n];
+		this.aliases = new int[n];
+		List<ActionProb> actionProbs = new ArrayList<ActionProb>(n);
+		for (int i = 0; i < n; ++i) {
+			actionProbs.add(new ActionProb(actions[i], probabilities[i]));
+		}
+		this.actionProbs = Collections.unmodifiableList(actionProbs);
+		this.buildAliasTable(probabilities);
+	}
+
+	/**
+	 * Splits the slots into those under and over the average, then tops up each small slot from a large
+	 * one. Probabilities are scaled by their sum, so rounding in them doesn't skew the table.
+	 * @param probabilities
+	 */
+	private void buildAliasTable(double[] probabilities) {
+		int n = probabilities.length;
+		double sum = 0.0;
+		for (double probability : probabilities) {
+			sum += probability;
+		}
+		double[] scaled = new double[n];
+		int[] small = new int[n];
+		int[] large = new int[n];
+		int smallCount = 0;
+		int largeCount = 0;
+		for (int i = 0; i < n; ++i) {
+			scaled[i] = (sum > 0.0) ? probabilities[i] * n / sum : 1.0;
+			if (scaled[i] < 1.0) {
+				small[smallCount++] = i;
+			}
+			else {
+				large[largeCount++] = i;
+			}
+		}
+		while (smallCount > 0 && largeCount > 0) {
+			int less = small[--smallCount];
+			int more = large[--largeCount];
+			this.thresholds[less] = scaled[less];
+			this.aliases[less] = more;
+			scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+			if (scaled[more] < 1.0) {
+				small[smallCount++] = more;
+			}
+			else {
+				large[largeCount++] = more;
+			}
+		}
+		// Whatever is left is 1 up to rounding
+		while (largeCount > 0) {
+			int i = large[--largeCount];
+			this.thresholds[i] = 1.0;
+			this.aliases[i] = i;
+		}
+		while (smallCount > 0) {
+			int i = small[--smallCount];
+			this.thresholds[i] = 1.0;
+			this.aliases[i] = i;
+		}
+	}
+
+	/**
+	 * Samples an action
+	 * @param random Random generator to draw from
+	 * @return The sampled action, or null if the state has no actions
+	 */
+	public GroundedAction sample(Random random) {
+		if (this.actions.length == 0) {
+			return null;
+		}
+		double roll = random.nextDouble() * this.actions.length;
+		int slot = (int)roll;
+		return (roll - slot < this.thresholds[slot]) ? this.actions[slot] : this.actions[this.aliases[slot]];
+	}
+
+	public List<ActionProb> getActionProbs() {
+		return this.actionProbs;
+	}
+}
@@ -1,5 +1,8 @@
 package burlap.behavior.singleagent;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -12,29 +15,20 @@ import burlap.behavior.singleagent.planning.QComputablePlanner;
 import burlap.behavior.singleagent.planning.commonpolicies.GreedyQPolicy;
 import burlap.behavior.singleagent.planning.deterministic.DDPlannerPolicy;
 import burlap.behavior.singleagent.planning.deterministic.DeterministicPlanner;
+import burlap.behavior.singleagent.planning.stochastic.valueiteration.GridValueIteration;
 import burlap.behavior.singleagent.planning.stochastic.valueiteration.ValueIteration;
+import burlap.behavior.singleagent.planning.stochastic.valueiteration.WarmStartValueIteration;
 import burlap.behavior.statehashing.NameDependentStateHashFactory;
 import burlap.behavior.statehashing.StateHashFactory;
 import burlap.behavior.statehashing.StateHashTuple;
+import burlap.debugtools.MicroBenchmark;
 import burlap.oomdp.auxiliary.StateGenerator;
 import burlap.oomdp.core.Domain;
 import burlap.oomdp.core.PropositionalFunction;
 import burlap.oomdp.core.State;
-import burlap.oomdp.core.TerminalFunction;
 import burlap.oomdp.singleagent.Action;
 import burlap.oomdp.singleagent.GroundedAction;
 import burlap.oomdp.singleagent.RewardFunction;
-import burlap.oomdp.singleagent.common.UniformCostRF;
-
-import com.joptimizer.functions.ConvexMultivariateRealFunction;
-import com.joptimizer.functions.LinearMultivariateRealFunction;
-import com.joptimizer.functions.PDQuadraticMultivariateRealFunction;
-import com.joptimizer.functions.PSDQuadraticMultivariateRealFunction;
-import com.joptimizer.functions.QuadraticMultivariateRealFunction;
-import com.joptimizer.optimizers.JOptimizer;
-import com.joptimizer.optimizers.OptimizationRequest;
-import com.joptimizer.optimizers.OptimizationResponse;
-import com.joptimizer.util.Utils;
 
 /**
  * 
@@ -68,50 +62,52 @@ public class ApprenticeshipLearning {
 	 */
 	public static double[] estimateFeatureExpectation(
 			List<EpisodeAnalysis> episodes, PropositionalFunction[] featureFunctions, Double gamma) {
-		double[] featureExpectations = new double[featureFunctions.length];
-		
-		for (EpisodeAnalysis episodeAnalysis : episodes) {
-			for (int i = 0; i < episodeAnalysis.stateSequence.size(); ++i) {
-				for (int j = 0; j < featureExpectations.length; ++j) {
-					if (featureFunctions[j].isTrue(episodeAnalysis.stateSequence.get(i), new String[]{})) {
-						featureExpectations[j] += Math.pow(gamma, i);
-					}
-				}
-			}
-		}
-		
-		// Normalize the feature expectation values
-		for (int i = 0; i < featureExpectations.length; ++i) {
-			featureExpectations[i] /= episodes.size();
+		FeatureIndicatorCache featureCache = 
+				new FeatureIndicatorCache(featureFunctions, new NameDependentStateHashFactory(), gamma);
+		return featureCache.estimateFeatureExpectation(episodes);
+	}
+	
+	/**
+	 * Returns the epsilon effective horizon of a discount factor, the smallest number of states H for
+	 * which the discounted mass of all later states, gamma^H / (1 - gamma), is at most epsilon. Features
+	 * and rewards no larger than 1 beyond it can't change a discounted sum by more than epsilon, so
+	 * episodes don't need to be sampled or summed any further.
+	 * @param gamma Discount factor gamma
+	 * @param epsilon Largest ignored discounted mass
+	 * @return The horizon, at least 1, or Integer.MAX_VALUE if gamma is 1 or epsilon isn't positive
+	 */
+	public static int getEffectiveHorizon(double gamma, double epsilon) {
+		if (gamma >= 1.0 || epsilon <= 0.0) {
+			return Integer.MAX_VALUE;
 		}
-		return featureExpectations;
+		double horizon = Math.ceil(Math.log((1 - gamma) * epsilon) / Math.log(gamma));
+		return (int)Math.max(1.0, Math.min(horizon, Integer.MAX_VALUE));
 	}
 	
 	/**
-	 * Generates an anonymous instance of a reward function derived from a FeatureMapping 
-	 * and associated feature weights
+	 * Generates a reward function derived from a FeatureMapping and associated feature weights
 	 * Computes (w^(i))T phi from step 4 in section 3
 	 * @param featureMapping The feature mapping of states to features
 	 * @param featureWeights The weights given to each feature
-	 * @return An anonymous instance of RewardFunction
+	 * @return A LinearFeatureRewardFunction
 	 */
 	public static RewardFunction generateRewardFunction(
 			PropositionalFunction[] featureFunctions, FeatureWeights featureWeights) {
-		final PropositionalFunction[] newFeatureFunctions = featureFunctions.clone();
-		final FeatureWeights newFeatureWeights = new FeatureWeights(featureWeights);
-		return new RewardFunction() {
-			@Override
-			public double reward(State state, GroundedAction a, State sprime) {
-				double[] featureWeightValues = newFeatureWeights.getWeights();
-				double sumReward = 0;
-				for (int i = 0; i < newFeatureFunctions.length; ++i) {
-					if (newFeatureFunctions[i].isTrue(state, new String[]{})) {
-						sumReward += featureWeightValues[i];
-					}
-				}
-				return sumReward;
-			}
-		};
+		FeatureIndicatorCache featureCache = 
+				new FeatureIndicatorCache(featureFunctions, new NameDependentStateHashFactory(), 1.0);
+		return ApprenticeshipLearning.generateRewardFunction(featureCache, featureWeights);
+	}
+	
+	/**
+	 * Generates a reward function (w^(i))T phi over the features of a feature cache. Rewards are stored
+	 * per state id, so states shared with the cache's other users are only evaluated once.
+	 * @param featureCache Feature cache which maps states to their true features
+	 * @param featureWeights The weights given to each feature
+	 * @return A LinearFeatureRewardFunction
+	 */
+	public static RewardFunction generateRewardFunction(
+			FeatureIndicatorCache featureCache, FeatureWeights featureWeights) {
+		return new LinearFeatureRewardFunction(featureCache, featureWeights.getWeights());
 	}
 	
 	/**
@@ -168,12 +164,14 @@ public class ApprenticeshipLearning {
 	 * @param epsilon Iteration tolerance
 	 * @param maxIterations Maximum number of iterations to iterate
 	 * @return
+	 * @throws RuntimeException If the weights of an iteration can't be solved
 	 */
 	
 	
 	private static Policy maxMarginMethod(ApprenticeshipLearningRequest request) {
 		
-		// Need to evaluate policies with trajectory lengths equal to that of the demonstrated episodes
+		// Need to evaluate policies with trajectory lengths equal to that of the demonstrated episodes,
+		// but no longer than the effective horizon
 		int maximumExpertEpisodeLength = 0;
 		List<EpisodeAnalysis> expertEpisodes = request.getExpertEpisodes();
 		for (EpisodeAnalysis expertEpisode : expertEpisodes) {
@@ -181,53 +179,68 @@ public class ApprenticeshipLearning {
 					Math.max(maximumExpertEpisodeLength, expertEpisode.numTimeSteps());
 		}
 		
-		OOMDPPlanner planner = request.getPlanner();
-		TerminalFunction terminalFunction = planner.getTF();
+		OOMDPPlanner planner = ApprenticeshipLearning.getIterationPlanner(request);
 		StateHashFactory stateHashingFactory = planner.getHashingFactory();
-		
-		// (1). Randomly generate policy pi^(0)
-		Domain domain = request.getDomain();
-		Policy policy = new RandomPolicy(domain);
-		
-		PropositionalFunction[] featureFunctions = request.getFeatureFunctions();
+		ApprenticeshipLearningCheckpoint checkpoint = ApprenticeshipLearning.loadCheckpoint(request);
+		
+		FeatureIndicatorCache featureCache = 
+				new FeatureIndicatorCache(request.getFeatureExtractor(), stateHashingFactory, request.getGamma());
+		PolicyEvaluator policyEvaluator = new PolicyEvaluator(request, featureCache, 
+				Math.min(maximumExpertEpisodeLength, request.getEffectiveHorizon()));
+		double[] expertExpectations = request.getExpertFeatureExpectation().getMean();
+		MaxMarginSolver weightSolver = ApprenticeshipLearning.getWeightSolver(request, expertExpectations);
 		List<double[]> featureExpectationsHistory = new ArrayList<double[]>();
-		double[] expertExpectations = 
-				ApprenticeshipLearning.estimateFeatureExpectation(expertEpisodes, featureFunctions, request.getGamma());
-		
-		// (1b) Compute u^(0) = u(pi^(0))
-		EpisodeAnalysis episodeAnalysis = 
-				policy.evaluateBehavior(request.getStartStateGenerator().generateState(), new UniformCostRF(), maximumExpertEpisodeLength);
-		double[] featureExpectations = 
-				ApprenticeshipLearning.estimateFeatureExpectation(episodeAnalysis, featureFunctions, request.getGamma());
-		featureExpectationsHistory.add(featureExpectations);
 		
 		int maxIterations = request.getMaxIterations();
 		double[] tHistory = new double[maxIterations];
 		int policyCount = request.getPolicyCount();
-		for (int i = 0; i < maxIterations; ++i) {
-			// (2) Compute t^(i) = max_w min_j (wT (uE - u^(j)))
-			FeatureWeights featureWeights = null;
+		int startIteration = 0;
+		Policy policy;
+		if (checkpoint == null) {
+			// (1). Randomly generate policy pi^(0)
+			policy = new RandomPolicy(request.getDomain(), request.getSeed(), featureCache);
 			
-			int index = 0;
-			while(featureWeights == null) {
-				 featureWeights = featureWeights = solveFeatureWeights(expertExpectations, featureExpectationsHistory);
-				 System.out.println(i + ", " + index++);
-			}
+			// (1b) Compute u^(0) = u(pi^(0))
+			featureExpectationsHistory.add(policyEvaluator.estimateFeatureExpectation(policy, 1, 0));
+		}
+		else {
+			startIteration = ApprenticeshipLearning.resumeHistory(checkpoint, featureExpectationsHistory, tHistory);
+			policy = ApprenticeshipLearning.resumePolicy(planner, request, featureCache, checkpoint);
+		}
+		for (double[] featureExpectations : featureExpectationsHistory) {
+			weightSolver.addFeatureExpectations(featureExpectations);
+		}
+		
+		for (int i = startIteration; i < maxIterations; ++i) {
+			IterationMetrics metrics = new IterationMetrics(i);
+			long startAllocatedBytes = policyEvaluator.getAllocatedBytes();
+			long stepStart = System.nanoTime();
+			
+			// (2) Compute t^(i) = max_w min_j (wT (uE - u^(j)))
+			FeatureWeights featureWeights = weightSolver.solve();
+			metrics.setWeightSolveNanos(System.nanoTime() - stepStart);
 			
 			// (3) if t^(i) <= epsilon, terminate
-			if (featureWeights == null || Math.abs(featureWeights.getScore()) <= request.getEpsilon()) {
+			if (Math.abs(featureWeights.getScore()) <= request.getEpsilon()) {
+				metrics.setScore(featureWeights.getScore());
+				metrics.setConverged(true);
+				ApprenticeshipLearning.removeCheckpoint(request, metrics);
+				ApprenticeshipLearning.completeIteration(request, metrics, policyEvaluator, startAllocatedBytes);
 				request.setTHistory(tHistory);
 				return policy;
 			}
 			tHistory[i] = featureWeights.getScore();
-			System.out.println(tHistory[i]);
+			metrics.setScore(tHistory[i]);
+			
 			// (4a) Calculate R = (w^(i))T * phi 
+			stepStart = System.nanoTime();
 			RewardFunction rewardFunction = 
-					ApprenticeshipLearning.generateRewardFunction(featureFunctions, featureWeights);
+					ApprenticeshipLearning.generateRewardFunction(featureCache, featureWeights);
+			metrics.setRewardNanos(System.nanoTime() - stepStart);
 			
 			// (4b) Compute optimal policy for pi^(i) give R
-			planner.plannerInit(domain, rewardFunction, terminalFunction, request.getGamma(), stateHashingFactory);
-			planner.planFromState(request.getStartStateGenerator().generateState());
+			stepStart = System.nanoTime();
+			ApprenticeshipLearning.planForReward(planner, request, rewardFunction);
 			
 			if (planner instanceof DeterministicPlanner) {
 				policy = new DDPlannerPolicy((DeterministicPlanner)planner);
@@ -235,18 +248,20 @@ public class ApprenticeshipLearning {
 			else if (planner instanceof QComputablePlanner) {
 				policy = new GreedyQPolicy((QComputablePlanner)planner);
 			}
+			metrics.setPlanningNanos(System.nanoTime() - stepStart);
+			ApprenticeshipLearning.recordPlannerStatistics(planner, metrics);
 			
 			// (5) Compute u^(i) = u(pi^(i))
-			
-			List<EpisodeAnalysis> evaluatedEpisodes = new ArrayList<EpisodeAnalysis>();
-			for (int j = 0; j < policyCount; ++j) {
-				evaluatedEpisodes.add(
-						policy.evaluateBehavior(request.getStartStateGenerator().generateState(), rewardFunction, maximumExpertEpisodeLength));
-			}
-			featureExpectations = 
-					ApprenticeshipLearning.estimateFeatureExpectation(evaluatedEpisodes, featureFunctions, request.getGamma());
+			stepStart = System.nanoTime();
+			double[] featureExpectations = 
+					policyEvaluator.estimateFeatureExpectation(policy, policyCount, i + 1);
+			weightSolver.addFeatureExpectations(featureExpectations);
 			featureExpectationsHistory.add(featureExpectations);
+			metrics.setPolicyEvaluationNanos(System.nanoTime() - stepStart);
+			metrics.setRolloutCount(policyEvaluator.getLastRolloutCount());
 			
+			ApprenticeshipLearning.saveCheckpoint(request, planner, i + 1, featureExpectationsHistory, tHistory, featureWeights, null, metrics);
+			ApprenticeshipLearning.completeIteration(request, metrics, policyEvaluator, startAllocatedBytes);
 			// (6) i++, go back to (2).
 		}
 		request.setTHistory(tHistory);
@@ -276,7 +291,7 @@ public class ApprenticeshipLearning {
 	 */
 	private static Policy projectionMethod(ApprenticeshipLearningRequest request) {
 		
-		//Max steps that the apprentice will have to learn
+		//Max steps that the apprentice will have to learn, cut at the effective horizon
 		int maximumExpertEpisodeLength = 0;
 		List<EpisodeAnalysis> expertEpisodes = request.getExpertEpisodes();
 		for (EpisodeAnalysis expertEpisode : expertEpisodes) {
@@ -284,65 +299,86 @@ public class ApprenticeshipLearning {
 		}
 		
 		//Planning objects
-		OOMDPPlanner planner = request.getPlanner();
-		TerminalFunction terminalFunction = planner.getTF();
+		OOMDPPlanner planner = ApprenticeshipLearning.getIterationPlanner(request);
 		StateHashFactory stateHashingFactory = planner.getHashingFactory();
+		ApprenticeshipLearningCheckpoint checkpoint = ApprenticeshipLearning.loadCheckpoint(request);
 		
 		//(0) set up policy array; exper feature expectation
 		List<Policy> policyHistory = new ArrayList<Policy>();
 		List<double[]> featureExpectationsHistory = new ArrayList<double[]>();
 		
-		PropositionalFunction[] featureFunctions = request.getFeatureFunctions();
-		double[] expertExpectations = 
-				ApprenticeshipLearning.estimateFeatureExpectation(expertEpisodes, featureFunctions, request.getGamma());
+		FeatureIndicatorCache featureCache = 
+				new FeatureIndicatorCache(request.getFeatureExtractor(), stateHashingFactory, request.getGamma());
+		PolicyEvaluator policyEvaluator = new PolicyEvaluator(request, featureCache, 
+				Math.min(maximumExpertEpisodeLength, request.getEffectiveHorizon()));
+		double[] expertExpectations = request.getExpertFeatureExpectation().getMean();
+		SparseFeatureVector expertFE = SparseFeatureVector.fromDense(expertExpectations);
 		
-		// (1). Randomly generate policy pi^(0)
-		Domain domain = request.getDomain();
-		Policy policy = new RandomPolicy(domain);
-		policyHistory.add(policy);
-	
-		// (1b) Set up initial Feature Expectation based on policy
-		List<EpisodeAnalysis> sampleEpisodes = new ArrayList<EpisodeAnalysis>();
-		for (int j = 0; j < request.getPolicyCount(); ++j) {
-			sampleEpisodes.add(
-					policy.evaluateBehavior(request.getStartStateGenerator().generateState(), new UniformCostRF(), maximumExpertEpisodeLength)); 
-		}
-		double[] curFE = 
-				ApprenticeshipLearning.estimateFeatureExpectation(sampleEpisodes, featureFunctions, request.getGamma());
-		featureExpectationsHistory.add(curFE);
-		double[] lastProjFE = null;
-		double[] newProjFE = null;
+		SparseFeatureVector lastProjFE = null;
+		SparseFeatureVector newProjFE = null;
 		
 		int maxIterations = request.getMaxIterations();
 		double[] tHistory = new double[maxIterations];
 		int policyCount = request.getPolicyCount();
-		for (int i = 0; i < maxIterations; ++i) {
+		int startIteration = 0;
+		Policy policy;
+		double[] curFE;
+		if (checkpoint == null) {
+			// (1). Randomly generate policy pi^(0)
+			policy = new RandomPolicy(request.getDomain(), request.getSeed(), featureCache);
+		
+			// (1b) Set up initial Feature Expectation based on policy
+			curFE = policyEvaluator.estimateFeatureExpectation(policy, request.getPolicyCount(), 0);
+			featureExpectationsHistory.add(curFE);
+		}
+		else {
+			//policies from before the checkpoint aren't kept, only the last one is planned again
+			startIteration = ApprenticeshipLearning.resumeHistory(checkpoint, featureExpectationsHistory, tHistory);
+			policy = ApprenticeshipLearning.resumePolicy(planner, request, featureCache, checkpoint);
+			curFE = featureExpectationsHistory.get(featureExpectationsHistory.size() - 1).clone();
+			if (checkpoint.getProjection() != null) {
+				lastProjFE = SparseFeatureVector.fromDense(checkpoint.getProjection());
+			}
+		}
+		policyHistory.add(policy);
+		
+		for (int i = startIteration; i < maxIterations; ++i) {
+			IterationMetrics metrics = new IterationMetrics(i);
+			long startAllocatedBytes = policyEvaluator.getAllocatedBytes();
+			long stepStart = System.nanoTime();
+			
 			// (2) Compute weights and score using projection method
 			//THIS IS THE KEY DIFFERENCE BETWEEN THE MAXIMUM MARGIN METHOD AND THE PROJECTION METHOD
 			//On the first iteration, the projection is just set as the current feature expectation
 			if (lastProjFE == null) { 
-				newProjFE = curFE.clone();
+				newProjFE = SparseFeatureVector.fromDense(curFE);
 			}
 			else {
-				newProjFE = projectExpertFE(expertExpectations, curFE, lastProjFE);
+				newProjFE = projectExpertFE(expertFE, SparseFeatureVector.fromDense(curFE), lastProjFE);
 			}
-			FeatureWeights featureWeights = getWeightsProjectionMethod(expertExpectations, newProjFE);
+			FeatureWeights featureWeights = getWeightsProjectionMethod(expertFE, newProjFE, expertExpectations.length);
 			tHistory[i] = featureWeights.getScore();
 			lastProjFE = newProjFE; //don't forget to set the old projection to the new one!
-
+			metrics.setWeightSolveNanos(System.nanoTime() - stepStart);
+			metrics.setScore(tHistory[i]);
 			
 			// (3) if t^(i) <= epsilon, terminate
 			if (featureWeights.getScore() <= request.getEpsilon()) {
+				metrics.setConverged(true);
+				ApprenticeshipLearning.removeCheckpoint(request, metrics);
+				ApprenticeshipLearning.completeIteration(request, metrics, policyEvaluator, startAllocatedBytes);
 				return policy;
 			}
 			
 			// (4a) Calculate R = (w^(i))T * phi 
+			stepStart = System.nanoTime();
 			RewardFunction rewardFunction = 
-					ApprenticeshipLearning.generateRewardFunction(featureFunctions, featureWeights);
+					ApprenticeshipLearning.generateRewardFunction(featureCache, featureWeights);
+			metrics.setRewardNanos(System.nanoTime() - stepStart);
 			
 			// (4b) Compute optimal policy for pi^(i) give R
-			planner.plannerInit(domain, rewardFunction, terminalFunction, request.getGamma(), stateHashingFactory);
-			planner.planFromState(request.getStartStateGenerator().generateState());
+			stepStart = System.nanoTime();
+			ApprenticeshipLearning.planForReward(planner, request, rewardFunction);
 			if (planner instanceof DeterministicPlanner) {
 				policy = new DDPlannerPolicy((DeterministicPlanner)planner);
 			}
@@ -350,16 +386,19 @@ public class ApprenticeshipLearning {
 				policy = new GreedyQPolicy((QComputablePlanner)planner);
 			}
 			policyHistory.add(policy);
+			metrics.setPlanningNanos(System.nanoTime() - stepStart);
+			ApprenticeshipLearning.recordPlannerStatistics(planner, metrics);
 			
 			// (5) Compute u^(i) = u(pi^(i))
-			List<EpisodeAnalysis> evaluatedEpisodes = new ArrayList<EpisodeAnalysis>();
-			for (int j = 0; j < policyCount; ++j) {
-				evaluatedEpisodes.add(
-						policy.evaluateBehavior(request.getStartStateGenerator().generateState(), rewardFunction, maximumExpertEpisodeLength));
-			}
-			curFE = ApprenticeshipLearning.estimateFeatureExpectation(evaluatedEpisodes, featureFunctions, request.getGamma());
+			stepStart = System.nanoTime();
+			curFE = policyEvaluator.estimateFeatureExpectation(policy, policyCount, i + 1);
 			featureExpectationsHistory.add(curFE.clone());
+			metrics.setPolicyEvaluationNanos(System.nanoTime() - stepStart);
+			metrics.setRolloutCount(policyEvaluator.getLastRolloutCount());
 			
+			ApprenticeshipLearning.saveCheckpoint(request, planner, i + 1, featureExpectationsHistory, tHistory, 
+					featureWeights, lastProjFE.toDense(expertExpectations.length), metrics);
+			ApprenticeshipLearning.completeIteration(request, metrics, policyEvaluator, startAllocatedBytes);
 			// (6) i++, go back to (2).
 		}
 		request.setTHistory(tHistory);
@@ -367,73 +406,222 @@ public class ApprenticeshipLearning {
 	}
 	
 	/**
-	 * Static methods for estimating weights and tolerance in feature expectation space
+	 * Loads the request's checkpoint, if it has a checkpoint file that exists. The request takes the
+	 * checkpoint's seed, so the rest of the run samples the same episodes it would have.
+	 * @param request
+	 * @return The checkpoint, or null if learning starts from scratch
+	 * @throws IllegalArgumentException If the checkpoint can't be read or was made by a different request
 	 */
+	private static ApprenticeshipLearningCheckpoint loadCheckpoint(ApprenticeshipLearningRequest request) {
+		File checkpointFile = request.getCheckpointFile();
+		if (checkpointFile == null || !checkpointFile.exists()) {
+			return null;
+		}
+		ApprenticeshipLearningCheckpoint checkpoint;
+		try {
+			checkpoint = ApprenticeshipLearningCheckpoint.read(checkpointFile);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Could not read checkpoint " + checkpointFile, e);
+		}
+		if (checkpoint.getUsingMaxMargin() != request.getUsingMaxMargin() || 
+				checkpoint.getFeatureCount() != request.getFeatureFunctions().length) {
+			throw new IllegalArgumentException("Checkpoint " + checkpointFile + " is from a different learning method or feature set");
+		}
+		if (checkpoint.getRequestFingerprint() != ApprenticeshipLearningCheckpoint.getFingerprint(request)) {
+			throw new IllegalArgumentException("Checkpoint " + checkpointFile + " is from a request with different settings or expert demonstrations");
+		}
+		request.setSeed(checkpoint.getSeed());
+		return checkpoint;
+	}
+	
 	/**
-	 * FeatureWeight factory which solves the best weights given Feature Expectations calculated from
-	 * the expert demonstrations and a history of Feature Expectations.
-	 * @param expertExpectations Feature Expectations calculated from the expert demonstrations
-	 * @param featureExpectations Feature History of feature expectations generated from past policies
-	 * @return
+	 * Copies the checkpoint's feature expectations and t history
+	 * @return The iteration to resume from
 	 */
-	private static FeatureWeights solveFeatureWeights(
-			double[] expertExpectations, List<double[]> featureExpectations) {
-		// We are solving a Quadratic Programming Problem here, yay!
-		// Solve equation of form xT * P * x + qT * x + r
-		// Let x = {w0, w1, ... , wn, t}
-		int weightsSize = expertExpectations.length;
-		
-		// The objective is to maximize t, or minimize -t
-		double[] qObjective = new double[weightsSize + 1];
-		qObjective[weightsSize] = -1;
-		LinearMultivariateRealFunction objectiveFunction = 
-				new LinearMultivariateRealFunction( qObjective, 0);
-		
-		// We set the requirement that all feature expectations generated have to be less than the expert
-		List<ConvexMultivariateRealFunction> expertBasedWeightConstraints = 
-				new ArrayList<ConvexMultivariateRealFunction>();
-		
-		// (1/2)xT * Pi * x + qiT + ri <= 0
-		// Equation (11) wT * uE >= wT * u(j) + t ===>  (u(j) - uE)T * w + t <= 0
-		// Because x = {w0, w1, ... , wn, t}, we can set
-		// qi = {u(j)_1 - uE_1, ... , u(j)_n - uE_n, 1}
-		for (double[] expectations : featureExpectations) {
-			double[] difference = new double[weightsSize + 1];
-			for (int i = 0; i < expectations.length; ++i) {
-				difference[i] = expectations[i] - expertExpectations[i];
-			}
-			difference[weightsSize] = 1;
-			expertBasedWeightConstraints.add(new LinearMultivariateRealFunction(difference, 1));
-		}
-		
-		// L2 norm of weights must be less than or equal to 1. So 
-		// P = Identity, except for the last entry (which cancels t).
-		double[][] identityMatrix = Utils.createConstantDiagonalMatrix(weightsSize + 1, 1);
-		identityMatrix[weightsSize][weightsSize] = 0;
-		expertBasedWeightConstraints.add(new PSDQuadraticMultivariateRealFunction(identityMatrix, null, -0.5));
-		
-		OptimizationRequest optimizationRequest = new OptimizationRequest();
-		optimizationRequest.setF0(objectiveFunction);
-		optimizationRequest.setFi(expertBasedWeightConstraints.toArray(
-				new ConvexMultivariateRealFunction[expertBasedWeightConstraints.size()]));
-		optimizationRequest.setCheckKKTSolutionAccuracy(false);
-		optimizationRequest.setTolerance(1.E-12);
-		optimizationRequest.setToleranceFeas(1.E-12);
-		
-		JOptimizer optimizer = new JOptimizer();
-		optimizer.setOptimizationRequest(optimizationRequest);
+	private static int resumeHistory(ApprenticeshipLearningCheckpoint checkpoint, List<double[]> featureExpectationsHistory, double[] tHistory) {
+		featureExpectationsHistory.addAll(checkpoint.getFeatureExpectationsHistory());
+		double[] checkpointTHistory = checkpoint.getTHistory();
+		System.arraycopy(checkpointTHistory, 0, tHistory, 0, Math.min(checkpointTHistory.length, tHistory.length));
+		return checkpoint.getIteration();
+	}
+	
+	/**
+	 * Recovers the policy of the checkpoint's last iteration from the checkpoint's planner values, or if
+	 * it didn't keep them by planning for its weights again
+	 * @return The last iteration's policy, or the random policy if no iteration had completed
+	 */
+	private static Policy resumePolicy(OOMDPPlanner planner, ApprenticeshipLearningRequest request, 
+			FeatureIndicatorCache featureCache, ApprenticeshipLearningCheckpoint checkpoint) {
+		double[] weights = checkpoint.getWeights();
+		if (weights == null) {
+			return new RandomPolicy(request.getDomain(), request.getSeed(), featureCache);
+		}
+		RewardFunction rewardFunction = 
+				ApprenticeshipLearning.generateRewardFunction(featureCache, new FeatureWeights(weights, 0.0));
+		double[] plannerValues = checkpoint.getPlannerValues();
+		if (plannerValues != null && planner instanceof GridValueIteration) {
+			((GridValueIteration)planner).restoreValues(rewardFunction, plannerValues);
+		}
+		else {
+			ApprenticeshipLearning.planForReward(planner, request, rewardFunction);
+		}
+		if (planner instanceof DeterministicPlanner) {
+			return new DDPlannerPolicy((DeterministicPlanner)planner);
+		}
+		if (planner instanceof QComputablePlanner) {
+			return new GreedyQPolicy((QComputablePlanner)planner);
+		}
+		return new RandomPolicy(request.getDomain(), request.getSeed(), featureCache);
+	}
+	
+	/**
+	 * Writes a checkpoint, if the request has a checkpoint file and a checkpoint is due. After the last
+	 * iteration the run is finished, so the checkpoint is removed instead. A checkpoint that can't be
+	 * written is reported in the iteration's metrics and learning carries on.
+	 * @param request
+	 * @param planner
+	 * @param iteration Number of iterations completed
+	 * @param featureExpectationsHistory
+	 * @param tHistory
+	 * @param featureWeights Weights of the last iteration
+	 * @param projection The projection method's last projection, null for the max margin method
+	 * @param metrics Metrics of the iteration, which any error is reported in
+	 */
+	private static void saveCheckpoint(ApprenticeshipLearningRequest request, OOMDPPlanner planner, int iteration, 
+			List<double[]> featureExpectationsHistory, double[] tHistory, FeatureWeights featureWeights, double[] projection,
+			IterationMetrics metrics) {
+		File checkpointFile = request.getCheckpointFile();
+		if (iteration >= request.getMaxIterations()) {
+			ApprenticeshipLearning.removeCheckpoint(request, metrics);
+			return;
+		}
+		if (checkpointFile == null || iteration % request.getCheckpointInterval() != 0) {
+			return;
+		}
+		double[] plannerValues = null;
+		if (request.getCheckpointingPlannerValues() && planner instanceof GridValueIteration) {
+			plannerValues = ((GridValueIteration)planner).getValues();
+		}
+		ApprenticeshipLearningCheckpoint checkpoint = new ApprenticeshipLearningCheckpoint(
+				request.getUsingMaxMargin(), request.getSeed(), ApprenticeshipLearningCheckpoint.getFingerprint(request), 
+				iteration, featureWeights.getWeights().length, featureExpectationsHistory, Arrays.copyOf(tHistory, iteration), 
+				featureWeights.getWeights(), projection, plannerValues);
 		try {
-			optimizer.optimize();
-		} catch (Exception e) {
-			System.out.println(e);
-			return null;
+			checkpoint.write(checkpointFile);
+		} catch (IOException e) {
+			metrics.setCheckpointError(e);
 		}
-		OptimizationResponse optimizationResponse = optimizer.getOptimizationResponse();
-		
-		double[] solution = optimizationResponse.getSolution();
-		double[] weights = Arrays.copyOfRange(solution, 0, weightsSize);
-		double score = solution[weightsSize];
-		return new FeatureWeights(weights, score);
+	}
+	
+	/**
+	 * Removes the request's checkpoint once learning has finished, so a finished run isn't resumed. A
+	 * checkpoint that can't be removed is reported in the last iteration's metrics.
+	 * @param request
+	 * @param metrics Metrics of the last iteration
+	 */
+	private static void removeCheckpoint(ApprenticeshipLearningRequest request, IterationMetrics metrics) {
+		File checkpointFile = request.getCheckpointFile();
+		if (checkpointFile == null) {
+			return;
+		}
+		try {
+			Files.deleteIfExists(checkpointFile.toPath());
+		} catch (IOException e) {
+			metrics.setCheckpointError(e);
+		}
+	}
+	
+	/**
+	 * Returns the planner used to compute pi^(i). With warm start planning, a value iteration planner is
+	 * replaced by one that keeps its state graph and values between iterations. A grid planner is given
+	 * the request's planning pool, if it has one.
+	 * @param request
+	 * @return The planner to use in step (4b)
+	 */
+	private static OOMDPPlanner getIterationPlanner(ApprenticeshipLearningRequest request) {
+		OOMDPPlanner planner = request.getPlanner();
+		if (request.getUsingWarmStartPlanning() && 
+				planner instanceof ValueIteration && !(planner instanceof WarmStartValueIteration)) {
+			return WarmStartValueIteration.fromValueIteration(
+					(ValueIteration)planner, request.getDomain(), planner.getRF(), request.getGamma());
+		}
+		if (request.getPlanningPool() != null && planner instanceof GridValueIteration) {
+			((GridValueIteration)planner).setSweepPool(request.getPlanningPool());
+		}
+		return planner;
+	}
+	
+	/**
+	 * Records the sweeps and enumerated states of the last plan, for planners that report them
+	 * @param planner
+	 * @param metrics
+	 */
+	private static void recordPlannerStatistics(OOMDPPlanner planner, IterationMetrics metrics) {
+		if (planner instanceof WarmStartValueIteration) {
+			WarmStartValueIteration warmStartPlanner = (WarmStartValueIteration)planner;
+			metrics.setSweepCount(warmStartPlanner.getLastSweepCount());
+			metrics.setStateCount(warmStartPlanner.getStateCount());
+		}
+		else if (planner instanceof GridValueIteration) {
+			GridValueIteration gridPlanner = (GridValueIteration)planner;
+			metrics.setSweepCount(gridPlanner.getLastSweepCount());
+			metrics.setStateCount(gridPlanner.getStateCount());
+		}
+	}
+	
+	/**
+	 * Finishes an iteration's metrics, prints them if the request is verbose and passes them to the
+	 * request's listeners
+	 * @param request
+	 * @param metrics
+	 * @param policyEvaluator Evaluator of the run, whose rollouts' allocations are counted
+	 * @param startAllocatedBytes Bytes the evaluator reported allocated when the iteration started
+	 */
+	private static void completeIteration(ApprenticeshipLearningRequest request, IterationMetrics metrics, 
+			PolicyEvaluator policyEvaluator, long startAllocatedBytes) {
+		long allocatedBytes = policyEvaluator.getAllocatedBytes();
+		if (startAllocatedBytes >= 0 && allocatedBytes >= 0) {
+			metrics.setAllocatedBytes(allocatedBytes - startAllocatedBytes);
+		}
+		if (request.getVerbose()) {
+			System.out.println(metrics);
+		}
+		for (ApprenticeshipLearningListener listener : request.getListeners()) {
+			listener.iterationCompleted(metrics);
+		}
+	}
+	
+	/**
+	 * Plans for a new reward function. Warm starting planners only swap the reward function so the
+	 * previous values seed the new plan, other planners are reinitialized.
+	 * @param planner
+	 * @param request
+	 * @param rewardFunction
+	 */
+	private static void planForReward(OOMDPPlanner planner, ApprenticeshipLearningRequest request, RewardFunction rewardFunction) {
+		if (request.getUsingWarmStartPlanning() && planner instanceof WarmStartValueIteration) {
+			((WarmStartValueIteration)planner).setRewardFunction(rewardFunction);
+		}
+		else if (request.getUsingWarmStartPlanning() && planner instanceof GridValueIteration) {
+			((GridValueIteration)planner).setRewardFunction(rewardFunction);
+		}
+		else {
+			planner.plannerInit(request.getDomain(), rewardFunction, planner.getTF(), request.getGamma(), planner.getHashingFactory());
+		}
+		planner.planFromState(request.getStartStateGenerator().generateState());
+	}
+	
+	/**
+	 * Creates the solver for step 2 of the max margin method that the request asks for
+	 * @param request The request being learned
+	 * @param expertExpectations Feature Expectations calculated from the expert demonstrations
+	 * @return A solver with no policy feature expectations added
+	 */
+	private static MaxMarginSolver getWeightSolver(ApprenticeshipLearningRequest request, double[] expertExpectations) {
+		MaxMarginSolver weightSolver = request.getUsingMinNormPointSolver() ?
+				new MinNormPointSolver(expertExpectations) : new MaxMarginQPSolver(expertExpectations);
+		weightSolver.setTolerance(request.getSolverTolerance());
+		return weightSolver;
 	}
 	
 	/**
@@ -447,7 +635,7 @@ public class ApprenticeshipLearning {
 	 * @param lastProjFE - The last (i-2)th projection of the expert's Feature Expectations
 	 * @return A new projection of the Expert's feature Expectation
 	 */
-	private static double[] projectExpertFE(double[] expertFE,
+	public static double[] projectExpertFE(double[] expertFE,
 											double[] lastFE,
 											double[] lastProjFE) {
 
@@ -473,6 +661,23 @@ public class ApprenticeshipLearning {
 		return newProjExp;
 	}
 	
+	/**
+	 * Sparse version of projectExpertFE, which only touches the features that are non zero in one of the
+	 * vectors.
+	 * 
+	 * @param expertFE - The Expert's Feature Expectations (or estimate of)
+	 * @param lastFE - The last (i-1)th estimate of the optimal feature expectations
+	 * @param lastProjFE - The last (i-2)th projection of the expert's Feature Expectations
+	 * @return A new projection of the Expert's feature Expectation
+	 */
+	public static SparseFeatureVector projectExpertFE(SparseFeatureVector expertFE,
+											SparseFeatureVector lastFE,
+											SparseFeatureVector lastProjFE) {
+		SparseFeatureVector direction = lastFE.minus(lastProjFE);
+		double newProjExpCoefficient = direction.dot(expertFE.minus(lastProjFE)) / direction.normSquared();
+		return lastProjFE.plus(direction, newProjExpCoefficient);
+	}
+	
 	
 	
 	/**
@@ -482,20 +687,32 @@ public class ApprenticeshipLearning {
 	 *
 	 */
 	public static class FeatureBasedRewardFunction implements RewardFunction {
-		private Map<String, Double> rewards;
-		private PropositionalFunction[] propositionalFunctions;
+		private StateFeatureExtractor featureExtractor;
+		private double[] featureRewards;
 		
 		public FeatureBasedRewardFunction(PropositionalFunction[] functions, Map<String, Double> rewards) {
-			this.propositionalFunctions = functions.clone();
-			this.rewards = new HashMap<String, Double>(rewards);
+			this(functions, new PropositionalFeatureExtractor(functions), rewards);
+		}
+		
+		/**
+		 * Constructor for features which are computed by an extractor instead of the functions themselves
+		 * @param functions Feature functions, only their names are used to look up rewards
+		 * @param featureExtractor Extractor whose feature i is true when functions[i] is
+		 * @param rewards Reward of each function by name, missing functions give no reward
+		 */
+		public FeatureBasedRewardFunction(PropositionalFunction[] functions, StateFeatureExtractor featureExtractor, Map<String, Double> rewards) {
+			this.featureExtractor = featureExtractor;
+			this.featureRewards = new double[functions.length];
+			for (int i = 0; i < functions.length; ++i) {
+				Double reward = rewards.get(functions[i].getName());
+				this.featureRewards[i] = (reward == null) ? 0.0 : reward;
+			}
 		}
 		@Override
 		public double reward(State s, GroundedAction a, State sprime) {
 			double reward = 0;
-			for (PropositionalFunction function : this.propositionalFunctions) {
-				if (function.isTrue(s, "")) {
-					reward += this.rewards.get(function.getName());
-				}
+			for (int index : this.featureExtractor.getActiveFeatures(s)) {
+				reward += this.featureRewards[index];
 			}
 			return reward;
 		}
@@ -509,7 +726,7 @@ public class ApprenticeshipLearning {
 	 * @param newProjFE
 	 * @return
 	 */
-	private static FeatureWeights getWeightsProjectionMethod(double[] expertFE, double[] newProjFE){
+	public static FeatureWeights getWeightsProjectionMethod(double[] expertFE, double[] newProjFE){
 		
 		//set the weight as the expert's feature expectation minus the new projection
 		double[] weights = new double[newProjFE.length];
@@ -527,16 +744,124 @@ public class ApprenticeshipLearning {
 		return new FeatureWeights(weights, score);
 	}
 	
+	/**
+	 * Sparse version of getWeightsProjectionMethod. The weights are returned densely, since the reward
+	 * function looks them up by feature index.
+	 * 
+	 * @param expertFE
+	 * @param newProjFE
+	 * @param featureCount Number of features
+	 * @return
+	 */
+	public static FeatureWeights getWeightsProjectionMethod(SparseFeatureVector expertFE, SparseFeatureVector newProjFE, int featureCount){
+		SparseFeatureVector weights = expertFE.minus(newProjFE);
+		return new FeatureWeights(weights.toDense(featureCount), Math.sqrt(weights.normSquared()));
+	}
+	
+	/**
+	 * Computes u(pi) for the policies of one apprenticeship learning run. If the request asks for exact
+	 * feature expectations they are solved from the domain's transition dynamics, otherwise they are
+	 * averaged over sampled episodes run on the request's rollout executor.
+	 * @author brawner
+	 *
+	 */
+	private static class PolicyEvaluator {
+		private ApprenticeshipLearningRequest 			request;
+		private int 									episodeLength;
+		private ExactFeatureExpectationEvaluator 		exactEvaluator;
+		private RolloutFeatureExpectationEstimator 		rolloutEstimator;
+		private int 									lastRolloutCount;
+		
+		/**
+		 * Constructor
+		 * @param request The request being learned
+		 * @param featureCache Feature cache of the current run
+		 * @param episodeLength Number of states in each episode, the length of the longest expert episode
+		 */
+		private PolicyEvaluator(ApprenticeshipLearningRequest request, FeatureIndicatorCache featureCache, int episodeLength) {
+			this.request = request;
+			this.episodeLength = episodeLength;
+			if (request.getUsingExactFeatureExpectations()) {
+				OOMDPPlanner planner = request.getPlanner();
+				this.exactEvaluator = new ExactFeatureExpectationEvaluator(
+						request.getDomain(), planner.getTF(), planner.getHashingFactory(), featureCache);
+			}
+			this.rolloutEstimator = new RolloutFeatureExpectationEstimator(
+					featureCache, request.getRolloutExecutor(), request.getSeed(), request.getPlanner().getTF());
+		}
+		
+		/**
+		 * Computes u(pi) for a policy
+		 * @param policy Policy to evaluate
+		 * @param episodeCount Number of episodes to sample, unless the request adapts the number
+		 * @param iteration Apprenticeship learning iteration, which seeds the sampled episodes
+		 * @return The estimated feature expectations
+		 */
+		private double[] estimateFeatureExpectation(Policy policy, int episodeCount, int iteration) {
+			StateGenerator startStateGenerator = this.request.getStartStateGenerator();
+			if (this.exactEvaluator != null && startStateGenerator instanceof RandomStartStateGenerator) {
+				List<State> initialStates = ((RandomStartStateGenerator)startStateGenerator).getReachableStates();
+				this.lastRolloutCount = 0;
+				return this.exactEvaluator.estimateFeatureExpectation(policy, initialStates, this.episodeLength);
+			}
+			
+			// Start states are drawn here, generators aren't expected to be thread safe. Seeding them by
+			// iteration means a run resumed from a checkpoint draws the same start states.
+			if (startStateGenerator instanceof RandomStartStateGenerator) {
+				((RandomStartStateGenerator)startStateGenerator).setSeed(
+						RolloutFeatureExpectationEstimator.episodeSeed(this.request.getSeed(), iteration, -1));
+			}
+			if (this.exactEvaluator == null && this.request.getUsingAdaptivePolicyCount()) {
+				FeatureExpectationEstimate estimate = this.rolloutEstimator.estimateFeatureExpectation(
+						policy, startStateGenerator, this.request.getMinPolicyCount(), this.request.getMaxPolicyCount(), 
+						this.request.getEpsilon(), this.request.getRolloutConfidenceScore(), this.episodeLength, iteration);
+				this.lastRolloutCount = estimate.getSampleCount();
+				return estimate.getMean();
+			}
+			List<State> initialStates = new ArrayList<State>(episodeCount);
+			for (int j = 0; j < episodeCount; ++j) {
+				initialStates.add(startStateGenerator.generateState());
+			}
+			if (this.exactEvaluator != null) {
+				this.lastRolloutCount = 0;
+				return this.exactEvaluator.estimateFeatureExpectation(policy, initialStates, this.episodeLength);
+			}
+			this.lastRolloutCount = episodeCount;
+			return this.rolloutEstimator.estimateFeatureExpectation(policy, initialStates, this.episodeLength, iteration);
+		}
+		
+		/**
+		 * Returns the number of episodes sampled by the last estimate, 0 if it was exact
+		 * @return
+		 */
+		private int getLastRolloutCount() {
+			return this.lastRolloutCount;
+		}
+		
+		/**
+		 * Returns the bytes allocated so far by the calling thread and by episodes sampled on the rollout
+		 * executor's threads, or -1 if the JVM doesn't count them
+		 * @return
+		 */
+		private long getAllocatedBytes() {
+			long allocatedBytes = MicroBenchmark.getCurrentThreadAllocatedBytes();
+			if (allocatedBytes < 0) {
+				return -1;
+			}
+			return allocatedBytes + this.rolloutEstimator.getExecutorAllocatedBytes();
+		}
+	}
+	
 	/**
 	 * Class of feature weights which contain the weight values and the associated score given to them
 	 * @author brawner
 	 *
 	 */
-	private static class FeatureWeights {
+	public static class FeatureWeights {
 		private double[] weights;
 		private double score;
 		
-		private FeatureWeights(double[] weights, double score) {
+		public FeatureWeights(double[] weights, double score) {
 			this.weights = weights.clone();
 			this.score = score;
 		}
@@ -559,95 +884,124 @@ public class ApprenticeshipLearning {
 	 * This class extends Policy, and all it does is create a randomly generated distribution of
 	 * actions over all possible states. It lazily initializes because I have no idea what sorts 
 	 * of states you are passing it.
+	 * 
+	 * Each state is mapped to a compact id, from the run's FeatureIndicatorCache if the policy is given
+	 * one and from the policy's own hash map otherwise. Its distribution is kept in an array indexed by
+	 * that id, with an alias table, so sampling an action takes constant time and allocates nothing. A
+	 * state's distribution is generated from the policy's seed and the state's hash, so it doesn't
+	 * depend on the order states are visited in, and policies with the same seed are the same.
 	 * @author brawner
 	 *
 	 */
 	public static class RandomPolicy extends Policy {
-		Map<StateHashTuple, GroundedAction> stateActionMapping;
-		List<Action> actions;
-		Map<StateHashTuple, List<ActionProb>> stateActionDistributionMapping;
-		StateHashFactory hashFactory;
-		Random rando;
+		private List<Action> 								actions;
+		private StateHashFactory 							hashFactory;
+		private FeatureIndicatorCache 						featureCache;
+		private Map<StateHashTuple, Integer> 				stateIds;
+		private ActionDistribution[] 						distributions;
+		private long 										seed;
+		private Random 										rando;
+		
+		/**
+		 * Constructor initializes the policy, doesn't compute anything here.
+		 * @param domain Domain object for which we need to plan
+		 */
+		protected RandomPolicy(Domain domain) {
+			this(domain, new Random().nextLong());
+		}
 		
 		/**
 		 * Constructor initializes the policy, doesn't compute anything here.
 		 * @param domain Domain object for which we need to plan
+		 * @param seed Seed the action distributions and sampled actions are generated from
 		 */
-		private RandomPolicy(Domain domain) {
-			this.stateActionMapping = new HashMap<StateHashTuple, GroundedAction>();
-			this.stateActionDistributionMapping = new HashMap<StateHashTuple, List<ActionProb>>();
+		protected RandomPolicy(Domain domain, long seed) {
+			this(domain, seed, null);
+		}
+		
+		/**
+		 * Constructor for a policy which identifies states by their id in a feature cache
+		 * @param domain Domain object for which we need to plan
+		 * @param seed Seed the action distributions and sampled actions are generated from
+		 * @param featureCache Feature cache whose state ids index the distributions, or null to keep
+		 * the policy's own ids
+		 */
+		protected RandomPolicy(Domain domain, long seed, FeatureIndicatorCache featureCache) {
 			this.actions = domain.getActions();
-			this.rando = new Random();
 			this.hashFactory = new NameDependentStateHashFactory();
+			this.featureCache = featureCache;
+			this.stateIds = (featureCache == null) ? new HashMap<StateHashTuple, Integer>() : null;
+			this.distributions = new ActionDistribution[16];
+			this.seed = seed;
+			this.rando = new Random(seed);
 		}
 
 		public static Policy generateRandomPolicy(Domain domain) {
 			return new RandomPolicy(domain);
 		}
 		
+		public static Policy generateRandomPolicy(Domain domain, long seed) {
+			return new RandomPolicy(domain, seed);
+		}
+		
 		/**
-		 * For states which we have not yet visited, this policy needs a randomly generated distribution
-		 * of actions. It queries all the grounded actions possible from this state and assigns a random
-		 * probability to it. The probabilities are all normalized for happiness.
-		 * @param state State for which to generate actions.
+		 * Returns the distribution of this state, generating one the first time the state is seen
+		 * @param state
+		 * @return
 		 */
-		private void addNewDistributionForState(State state) {
-			StateHashTuple stateHashTuple = this.hashFactory.hashState(state);
+		private ActionDistribution getDistribution(State state) {
+			StateHashTuple stateHashTuple = null;
+			int stateId;
+			if (this.featureCache != null) {
+				stateId = this.featureCache.getStateId(state);
+			}
+			else {
+				stateHashTuple = this.hashFactory.hashState(state);
+				Integer id = this.stateIds.get(stateHashTuple);
+				if (id == null) {
+					id = this.stateIds.size();
+					this.stateIds.put(stateHashTuple, id);
+				}
+				stateId = id;
+			}
+			if (stateId >= this.distributions.length) {
+				this.distributions = Arrays.copyOf(this.distributions, Math.max(stateId + 1, 2 * this.distributions.length));
+			}
+			ActionDistribution distribution = this.distributions[stateId];
+			if (distribution != null) {
+				return distribution;
+			}
+			if (stateHashTuple == null) {
+				stateHashTuple = this.hashFactory.hashState(state);
+			}
 			
-			// Get all possible actions from this state
+			// Get all possible actions from this state, and draw their weights from this state's own
+			// generator so the distribution doesn't depend on which states were seen first
 			List<GroundedAction> groundedActions = state.getAllGroundedActionsFor(this.actions);
-			Double[] probabilities = new Double[groundedActions.size()];
-			Double sum = 0.0;
-			
-			// Create a random distribution of doubles
+			Random stateRandom = new Random(this.seed ^ (0x9E3779B97F4A7C15L * (stateHashTuple.hashCode() + 1L)));
+			double[] probabilities = new double[groundedActions.size()];
+			double sum = 0.0;
 			for (int i = 0; i < probabilities.length; ++i) {
-				probabilities[i] = this.rando.nextDouble();
+				probabilities[i] = stateRandom.nextDouble();
 				sum += probabilities[i];
 			}
-			
-			List<ActionProb> newActionDistribution = new ArrayList<ActionProb>(groundedActions.size());
-			// Normalize distribution and add a new ActionProb to our list.
 			for (int i = 0; i < probabilities.length; ++i) {
-				ActionProb actionProb = new  ActionProb(groundedActions.get(i), probabilities[i] / sum);
-				newActionDistribution.add(actionProb);
+				probabilities[i] /= sum;
 			}
 			
-			this.stateActionDistributionMapping.put(stateHashTuple, newActionDistribution);
+			distribution = new ActionDistribution(groundedActions.toArray(new GroundedAction[groundedActions.size()]), probabilities);
+			this.distributions[stateId] = distribution;
+			return distribution;
 		}
 		
 		@Override
 		public GroundedAction getAction(State s) {
-			StateHashTuple stateHashTuple = this.hashFactory.hashState(s);
-			
-			// If this state has not yet been visited, we need to compute a new distribution of actions
-			if (!this.stateActionDistributionMapping.containsKey(stateHashTuple)) {
-				this.addNewDistributionForState(s);
-			}
-			
-			// Get the action probability distribution for this state
-			List<ActionProb> actionDistribution = this.stateActionDistributionMapping.get(stateHashTuple);
-			Double roll = this.rando.nextDouble();
-			Double probabilitySum = 0.0;
-			
-			// Choose an action randomly from this distribution
-			for (ActionProb actionProb : actionDistribution) {
-				probabilitySum += actionProb.pSelection;
-				if (probabilitySum >= roll) {
-					return actionProb.ga;
-				}
-			}
-			return null;
+			return this.getDistribution(s).sample(this.rando);
 		}
 
 		@Override
 		public List<ActionProb> getActionDistributionForState(State s) {
-			StateHashTuple stateHashTuple = this.hashFactory.hashState(s);
-			
-			// If this state has not yet been visited, we need to compute a new distribution of actions
-			if (!this.stateActionDistributionMapping.containsKey(stateHashTuple)) {
-				this.addNewDistributionForState(s);
-			}
-			return new ArrayList<ActionProb>(this.stateActionDistributionMapping.get(stateHashTuple));
+			return this.getDistribution(s).getActionProbs();
 		}
 
 		@Override
@@ -0,0 +1,235 @@
+package burlap.behavior.singleagent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The state of an apprenticeship learning run after some number of iterations, from which the run can
+ * be resumed. Holds the policies' feature expectations, the t history, the last weights and the
+ * projection method's last projection. The episodes sampled in an iteration are seeded by the request's
+ * seed and the iteration, so with the seed these also fix the random state of the rest of the run.
+ * Planner values can be included, so a warm starting planner continues from them instead of planning
+ * the last weights from scratch.
+ *
+ * A checkpoint keeps a fingerprint of the request's settings and expert feature expectation, so a run
+ * is only resumed by a request that would have made the same checkpoint. The seed isn't part of it,
+ * since the resumed request takes the checkpoint's seed.
+ *
+ * Checkpoints are stored as a compact binary file of doubles, written to a temporary file which then
+ * replaces the checkpoint, so a run stopped while writing keeps its previous checkpoint.
+ * @author brawner
+ *
+ */
+public class ApprenticeshipLearningCheckpoint {
+	private static final int 					MAGIC = 0x414C4350;
+	private static final int 					VERSION = 2;
+
+	private boolean 							usingMaxMargin;
+	private long 								seed;
+	private long 								requestFingerprint;
+	private int 								iteration;
+	private int 								featureCount;
+	private List<double[]> 						featureExpectationsHistory;
+	private double[] 							tHistory;
+	private double[] 							weights;
+	private double[] 							projection;
+	private double[] 							plannerValues;
+
+	/**
+	 * Constructor
+	 * @param usingMaxMargin Whether the run uses the max margin method rather than the projection method
+	 * @param seed The request's seed
+	 * @param requestFingerprint Fingerprint of the request, from getFingerprint
+	 * @param iteration Number of iterations completed
+	 * @param featureCount Number of features
+	 * @param featureExpectationsHistory Feature expectations of every policy so far, starting with the random policy
+	 * @param tHistory Scores of the completed iterations
+	 * @param weights Weights of the last completed iteration, null if none has completed
+	 * @param projection Last projection of the projection method, null for the max margin method
+	 * @param plannerValues Planner values for the last weights, null if they aren't kept
+	 */
+	public ApprenticeshipLearningCheckpoint(boolean usingMaxMargin, long seed, long requestFingerprint, int iteration, int featureCount,
+			List<double[]> featureExpectationsHistory, double[] tHistory, double[] weights, double[] projection, double[] plannerValues) {
+		this.usingMaxMargin = usingMaxMargin;
+		this.seed = seed;
+		this.requestFingerprint = requestFingerprint;
+		this.iteration = iteration;
+		this.featureCount = featureCount;
+		this.featureExpectationsHistory = new ArrayList<double[]>(featureExpectationsHistory);
+		this.tHistory = tHistory.clone();
+		this.weights = weights;
+		this.projection = projection;
+		this.plannerValues = plannerValues;
+	}
+
+	/**
+	 * Reads a checkpoint written by write
+	 * @param file
+	 * @return
+	 * @throws IOException If the file can't be read or isn't a checkpoint
+	 */
+	public static ApprenticeshipLearningCheckpoint read(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Not an apprenticeship learning checkpoint: " + file);
+			}
+			boolean usingMaxMargin = in.readBoolean();
+			long seed = in.readLong();
+			long requestFingerprint = in.readLong();
+			int iteration = in.readInt();
+			int featureCount = in.readInt();
+			int historyCount = in.readInt();
+			List<double[]> featureExpectationsHistory = new ArrayList<double[]>(historyCount);
+			for (int i = 0; i < historyCount; ++i) {
+				featureExpectationsHistory.add(ApprenticeshipLearningCheckpoint.readArray(in));
+			}
+			double[] tHistory = ApprenticeshipLearningCheckpoint.readArray(in);
+			double[] weights = ApprenticeshipLearningCheckpoint.readArray(in);
+			double[] projection = ApprenticeshipLearningCheckpoint.readArray(in);
+			double[] plannerValues = ApprenticeshipLearningCheckpoint.readArray(in);
+			return new ApprenticeshipLearningCheckpoint(usingMaxMargin, seed, requestFingerprint, iteration, featureCount,
+					featureExpectationsHistory, tHistory, weights, projection, plannerValues);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes the checkpoint, replacing the file only once it is completely written
+	 * @param file
+	 * @throws IOException
+	 */
+	public void write(File file) throws IOException {
+		File temporary = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeBoolean(this.usingMaxMargin);
+			out.writeLong(this.seed);
+			out.writeLong(this.requestFingerprint);
+			out.writeInt(this.iteration);
+			out.writeInt(this.featureCount);
+			out.writeInt(this.featureExpectationsHistory.size());
+			for (double[] featureExpectations : this.featureExpectationsHistory) {
+				ApprenticeshipLearningCheckpoint.writeArray(out, featureExpectations);
+			}
+			ApprenticeshipLearningCheckpoint.writeArray(out, this.tHistory);
+			ApprenticeshipLearningCheckpoint.writeArray(out, this.weights);
+			ApprenticeshipLearningCheckpoint.writeArray(out, this.projection);
+			ApprenticeshipLearningCheckpoint.writeArray(out, this.plannerValues);
+		} finally {
+			out.close();
+		}
+		Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Returns a fingerprint of everything in a request which changes the checkpoints it makes, apart
+	 * from the seed: the learning method and its settings, and the expert feature expectation, which
+	 * stands in for the expert episodes and features. The planner and start state generator can't be
+	 * compared, so they are left out, and so is the iteration limit, so a stopped run can be resumed
+	 * with a higher one.
+	 * @param request
+	 * @return
+	 */
+	public static long getFingerprint(ApprenticeshipLearningRequest request) {
+		long fingerprint = ApprenticeshipLearningCheckpoint.mix(VERSION, request.getUsingMaxMargin() ? 1 : 0);
+		fingerprint = ApprenticeshipLearningCheckpoint.mix(fingerprint, request.getUsingMinNormPointSolver() ? 1 : 0);
+		fingerprint = ApprenticeshipLearningCheckpoint.mix(fingerprint, request.getUsingExactFeatureExpectations() ? 1 : 0);
+		fingerprint = ApprenticeshipLearningCheckpoint.mix(fingerprint, request.getUsingAdaptivePolicyCount() ? 1 : 0);
+		fingerprint = ApprenticeshipLearningCheckpoint.mix(fingerprint, request.getPolicyCount());
+		fingerprint = ApprenticeshipLearningCheckpoint.mix(fingerprint, request.getMinPolicyCount());
+		fingerprint = ApprenticeshipLearningCheckpoint.mix(fingerprint, request.getMaxPolicyCount());
+		fingerprint = ApprenticeshipLearningCheckpoint.mix(fingerprint, Double.doubleToLongBits(request.getRolloutConfidenceScore()));
+		fingerprint = ApprenticeshipLearningCheckpoint.mix(fingerprint, Double.doubleToLongBits(request.getGamma()));
+		fingerprint = ApprenticeshipLearningCheckpoint.mix(fingerprint, Double.doubleToLongBits(request.getEpsilon()));
+		fingerprint = ApprenticeshipLearningCheckpoint.mix(fingerprint, Double.doubleToLongBits(request.getSolverTolerance()));
+		double[] expertExpectations = request.getExpertFeatureExpectation().getMean();
+		fingerprint = ApprenticeshipLearningCheckpoint.mix(fingerprint, expertExpectations.length);
+		for (double expertExpectation : expertExpectations) {
+			fingerprint = ApprenticeshipLearningCheckpoint.mix(fingerprint, Double.doubleToLongBits(expertExpectation));
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * Folds a value into a fingerprint with the SplitMix64 finalizer
+	 */
+	private static long mix(long fingerprint, long value) {
+		long z = fingerprint + 0x9E3779B97F4A7C15L + value;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Arrays are written as their length followed by their values, null as a length of -1
+	 */
+	private static void writeArray(DataOutputStream out, double[] array) throws IOException {
+		if (array == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(array.length);
+		for (double value : array) {
+			out.writeDouble(value);
+		}
+	}
+
+	private static double[] readArray(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		double[] array = new double[length];
+		for (int i = 0; i < length; ++i) {
+			array[i] = in.readDouble();
+		}
+		return array;
+	}
+
+	public boolean getUsingMaxMargin() {return this.usingMaxMargin;}
+
+	public long getSeed() {return this.seed;}
+
+	public long getRequestFingerprint() {return this.requestFingerprint;}
+
+	public int getIteration() {return this.iteration;}
+
+	public int getFeatureCount() {return this.featureCount;}
+
+	public List<double[]> getFeatureExpectationsHistory() {return Collections.unmodifiableList(this.featureExpectationsHistory);}
+
+	public double[] getTHistory() {return this.tHistory.clone();}
+
+	/**
+	 * Returns the weights of the last completed iteration, or null if none has completed
+	 * @return
+	 */
+	public double[] getWeights() {return (this.weights == null) ? null : this.weights.clone();}
+
+	/**
+	 * Returns the projection method's last projection, or null for the max margin method
+	 * @return
+	 */
+	public double[] getProjection() {return (this.projection == null) ? null : this.projection.clone();}
+
+	/**
+	 * Returns the planner's values for the last weights, or null if they weren't kept
+	 * @return
+	 */
+	public double[] getPlannerValues() {return (this.plannerValues == null) ? null : this.plannerValues.clone();}
+}
@@ -0,0 +1,16 @@
+package burlap.behavior.singleagent;
+
+/**
+ * Receives the metrics of every apprenticeship learning iteration as it finishes. Listeners are called
+ * on the thread running the learner, so they should return quickly.
+ * @author brawner
+ *
+ */
+public interface ApprenticeshipLearningListener {
+
+	/**
+	 * Called after each iteration, including the last one in which the score fell below epsilon
+	 * @param metrics Timings and counts of the iteration
+	 */
+	void iterationCompleted(IterationMetrics metrics);
+}
@@ -1,9 +1,17 @@
 package burlap.behavior.singleagent;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 import burlap.behavior.singleagent.planning.OOMDPPlanner;
+import burlap.behavior.statehashing.NameDependentStateHashFactory;
+import burlap.behavior.statehashing.StateHashFactory;
 import burlap.oomdp.auxiliary.StateGenerator;
 import burlap.oomdp.core.Domain;
 import burlap.oomdp.core.PropositionalFunction;
@@ -12,21 +20,50 @@ public class ApprenticeshipLearningRequest {
 	private Domain 						domain;
 	private OOMDPPlanner 				planner;
 	private PropositionalFunction[] 	featureFunctions;
+	private StateFeatureExtractor 		featureExtractor;
 	private List<EpisodeAnalysis> 		expertEpisodes;
 	private StateGenerator 				startStateGenerator;
 	private double 						gamma;
 	private double 						epsilon;
 	private int 						maxIterations;
 	private int 						policyCount;
+	private boolean 					useAdaptivePolicyCount;
+	private int 						minPolicyCount;
+	private int 						maxPolicyCount;
+	private double 						rolloutConfidenceScore;
 	private double[] 					tHistory;
 	private boolean 					useMaxMargin;
+	private boolean 					useExactFeatureExpectations;
+	private boolean 					useWarmStartPlanning;
+	private ExecutorService 			rolloutExecutor;
+	private ForkJoinPool 				planningPool;
+	private long 						seed;
+	private double 						solverTolerance;
+	private boolean 					useMinNormPointSolver;
+	private boolean 					verbose;
+	private File 						checkpointFile;
+	private int 						checkpointInterval;
+	private boolean 					checkpointingPlannerValues;
+	private List<ApprenticeshipLearningListener> listeners;
+	private FeatureExpectationEstimate 	expertFeatureExpectation;
 	
 	
 	public static final double 			DEFAULT_GAMMA = 0.99;
 	public static final double 			DEFAULT_EPSILON = 0.01;
 	public static final int 			DEFAULT_MAXITERATIONS = 100;
 	public static final int 			DEFAULT_POLICYCOUNT = 5;
+	public static final boolean 		DEFAULT_USEADAPTIVEPOLICYCOUNT = false;
+	public static final int 			DEFAULT_MINPOLICYCOUNT = 5;
+	public static final int 			DEFAULT_MAXPOLICYCOUNT = 100;
+	public static final double 			DEFAULT_ROLLOUTCONFIDENCESCORE = 1.96;
 	public static final boolean 		DEFAULT_USEMAXMARGIN = false;
+	public static final boolean 		DEFAULT_USEEXACTFEATUREEXPECTATIONS = false;
+	public static final boolean 		DEFAULT_USEWARMSTARTPLANNING = false;
+	public static final double 			DEFAULT_SOLVERTOLERANCE = 1.E-8;
+	public static final boolean 		DEFAULT_USEMINNORMPOINTSOLVER = false;
+	public static final boolean 		DEFAULT_VERBOSE = true;
+	public static final int 			DEFAULT_CHECKPOINTINTERVAL = 1;
+	public static final boolean 		DEFAULT_CHECKPOINTINGPLANNERVALUES = false;
 
 	public ApprenticeshipLearningRequest() {
 		this.initDefaults();
@@ -41,12 +78,67 @@ public class ApprenticeshipLearningRequest {
 		this.setStartStateGenerator(startStateGenerator);
 	}
 	
+	/**
+	 * Copies a request. The copy shares the other's expert demonstrations and their cached feature
+	 * expectation, so requests for several runs on the same demonstrations estimate it only once.
+	 * @param request
+	 */
+	public ApprenticeshipLearningRequest(ApprenticeshipLearningRequest request) {
+		this.domain = request.domain;
+		this.planner = request.planner;
+		this.featureFunctions = request.featureFunctions;
+		this.featureExtractor = request.featureExtractor;
+		this.expertEpisodes = request.expertEpisodes;
+		this.startStateGenerator = request.startStateGenerator;
+		this.gamma = request.gamma;
+		this.epsilon = request.epsilon;
+		this.maxIterations = request.maxIterations;
+		this.policyCount = request.policyCount;
+		this.useAdaptivePolicyCount = request.useAdaptivePolicyCount;
+		this.minPolicyCount = request.minPolicyCount;
+		this.maxPolicyCount = request.maxPolicyCount;
+		this.rolloutConfidenceScore = request.rolloutConfidenceScore;
+		this.useMaxMargin = request.useMaxMargin;
+		this.useExactFeatureExpectations = request.useExactFeatureExpectations;
+		this.useWarmStartPlanning = request.useWarmStartPlanning;
+		this.rolloutExecutor = request.rolloutExecutor;
+		this.planningPool = request.planningPool;
+		this.seed = request.seed;
+		this.solverTolerance = request.solverTolerance;
+		this.useMinNormPointSolver = request.useMinNormPointSolver;
+		this.verbose = request.verbose;
+		this.checkpointFile = request.checkpointFile;
+		this.checkpointInterval = request.checkpointInterval;
+		this.checkpointingPlannerValues = request.checkpointingPlannerValues;
+		this.listeners = new ArrayList<ApprenticeshipLearningListener>(request.listeners);
+		synchronized (request) {
+			this.expertFeatureExpectation = request.expertFeatureExpectation;
+		}
+	}
+	
 	private void initDefaults() {
 		this.gamma = ApprenticeshipLearningRequest.DEFAULT_GAMMA;
 		this.epsilon = ApprenticeshipLearningRequest.DEFAULT_EPSILON;
 		this.maxIterations = ApprenticeshipLearningRequest.DEFAULT_MAXITERATIONS;
 		this.policyCount = ApprenticeshipLearningRequest.DEFAULT_POLICYCOUNT;
+		this.useAdaptivePolicyCount = ApprenticeshipLearningRequest.DEFAULT_USEADAPTIVEPOLICYCOUNT;
+		this.minPolicyCount = ApprenticeshipLearningRequest.DEFAULT_MINPOLICYCOUNT;
+		this.maxPolicyCount = ApprenticeshipLearningRequest.DEFAULT_MAXPOLICYCOUNT;
+		this.rolloutConfidenceScore = ApprenticeshipLearningRequest.DEFAULT_ROLLOUTCONFIDENCESCORE;
 		this.useMaxMargin = ApprenticeshipLearningRequest.DEFAULT_USEMAXMARGIN;
+		this.useExactFeatureExpectations = ApprenticeshipLearningRequest.DEFAULT_USEEXACTFEATUREEXPECTATIONS;
+		this.useWarmStartPlanning = ApprenticeshipLearningRequest.DEFAULT_USEWARMSTARTPLANNING;
+		this.rolloutExecutor = null;
+		this.planningPool = null;
+		this.seed = new Random().nextLong();
+		this.solverTolerance = ApprenticeshipLearningRequest.DEFAULT_SOLVERTOLERANCE;
+		this.useMinNormPointSolver = ApprenticeshipLearningRequest.DEFAULT_USEMINNORMPOINTSOLVER;
+		this.verbose = ApprenticeshipLearningRequest.DEFAULT_VERBOSE;
+		this.checkpointFile = null;
+		this.checkpointInterval = ApprenticeshipLearningRequest.DEFAULT_CHECKPOINTINTERVAL;
+		this.checkpointingPlannerValues = ApprenticeshipLearningRequest.DEFAULT_CHECKPOINTINGPLANNERVALUES;
+		this.listeners = new ArrayList<ApprenticeshipLearningListener>();
+		this.expertFeatureExpectation = null;
 	}
 	
 	public boolean isValid() {
@@ -59,6 +151,9 @@ public class ApprenticeshipLearningRequest {
 		if (this.featureFunctions == null || this.featureFunctions.length == 0) {
 			return false;
 		}
+		if (this.featureExtractor != null && this.featureExtractor.getFeatureCount() != this.featureFunctions.length) {
+			return false;
+		}
 		if (this.expertEpisodes.size() == 0) {
 			return false;
 		}
@@ -77,6 +172,18 @@ public class ApprenticeshipLearningRequest {
 		if (this.policyCount <= 0) {
 			return false;
 		}
+		if (this.minPolicyCount <= 0 || this.maxPolicyCount < this.minPolicyCount) {
+			return false;
+		}
+		if (this.rolloutConfidenceScore < 0 || Double.isNaN(this.rolloutConfidenceScore)) {
+			return false;
+		}
+		if (this.solverTolerance <= 0 || Double.isNaN(this.solverTolerance)) {
+			return false;
+		}
+		if (this.checkpointInterval <= 0) {
+			return false;
+		}
 		return true;
 	}
 	
@@ -89,48 +196,261 @@ public class ApprenticeshipLearningRequest {
 		this.planner = p;
 	}
 	
-	public void setFeatureFunctions(PropositionalFunction[] functions) {
+	public synchronized void setFeatureFunctions(PropositionalFunction[] functions) {
+		if (!Arrays.equals(this.featureFunctions, functions)) {
+			this.expertFeatureExpectation = null;
+		}
 		this.featureFunctions= functions.clone();
 	}
 	
-	public void setExpertEpisodes(List<EpisodeAnalysis> episodeList) {
-		this.expertEpisodes = new ArrayList<EpisodeAnalysis>(episodeList);
+	/**
+	 * Sets an extractor which computes the feature functions' values directly. Its feature i must be
+	 * true exactly when feature function i is. If none is set, the feature functions are tested.
+	 * @param featureExtractor
+	 */
+	public synchronized void setFeatureExtractor(StateFeatureExtractor featureExtractor) {
+		if (this.featureExtractor != featureExtractor) {
+			this.expertFeatureExpectation = null;
+		}
+		this.featureExtractor = featureExtractor;
+	}
+	
+	/**
+	 * Sets the expert's demonstrations. A MappedEpisodeStore is kept as it is, so its episodes stay on
+	 * disk, and other lists are copied.
+	 * @param episodeList
+	 */
+	public synchronized void setExpertEpisodes(List<EpisodeAnalysis> episodeList) {
+		this.expertFeatureExpectation = null;
+		if (episodeList instanceof MappedEpisodeStore) {
+			this.expertEpisodes = episodeList;
+		}
+		else {
+			this.expertEpisodes = new ArrayList<EpisodeAnalysis>(episodeList);
+		}
 	}
 
 	public void setStartStateGenerator(StateGenerator startStateGenerator) { this.startStateGenerator = startStateGenerator;}
 	
-	public void setGamma(double gamma) { this.gamma = gamma;}
+	public synchronized void setGamma(double gamma) {
+		if (this.gamma != gamma) {
+			this.expertFeatureExpectation = null;
+		}
+		this.gamma = gamma;
+	}
 	
-	public void setEpsilon(double epsilon) {this.epsilon = epsilon;}
+	public synchronized void setEpsilon(double epsilon) {
+		if (this.epsilon != epsilon) {
+			this.expertFeatureExpectation = null;
+		}
+		this.epsilon = epsilon;
+	}
 
 	public void setMaxIterations(int maxIterations) {this.maxIterations = maxIterations;}
 	
 	public void setPolicyCount(int policyCount) {this.policyCount = policyCount;}
 	
+	/**
+	 * Sets whether the number of episodes sampled for each policy adapts to how much they vary. Episodes
+	 * are then sampled in batches of the minimum policy count until the confidence interval around the
+	 * policy's feature expectation is within epsilon, or the maximum policy count is reached, in place
+	 * of always sampling the policy count.
+	 * @param useAdaptive
+	 */
+	public void setUsingAdaptivePolicyCount(boolean useAdaptive) {this.useAdaptivePolicyCount = useAdaptive;}
+	
+	/**
+	 * Sets the fewest episodes sampled for a policy when the policy count is adaptive, which is also the
+	 * size of each batch
+	 * @param minPolicyCount
+	 */
+	public void setMinPolicyCount(int minPolicyCount) {this.minPolicyCount = minPolicyCount;}
+	
+	/**
+	 * Sets the most episodes sampled for a policy when the policy count is adaptive
+	 * @param maxPolicyCount
+	 */
+	public void setMaxPolicyCount(int maxPolicyCount) {this.maxPolicyCount = maxPolicyCount;}
+	
+	/**
+	 * Sets the number of standard errors the confidence interval of an adaptive policy count spans on
+	 * each side, 1.96 for a 95% interval
+	 * @param rolloutConfidenceScore
+	 */
+	public void setRolloutConfidenceScore(double rolloutConfidenceScore) {this.rolloutConfidenceScore = rolloutConfidenceScore;}
+	
 	public void setTHistory(double[] tHistory) {this.tHistory = tHistory.clone();}
 
 	public void setUsingMaxMargin(boolean useMaxMargin) {this.useMaxMargin = useMaxMargin;}
+	
+	public void setUsingExactFeatureExpectations(boolean useExact) {this.useExactFeatureExpectations = useExact;}
+	
+	public void setUsingWarmStartPlanning(boolean useWarmStart) {this.useWarmStartPlanning = useWarmStart;}
+	
+	/**
+	 * Sets the executor sampled episodes are run on, for instance a ForkJoinPool. The executor is not
+	 * shut down by the learner. If null, episodes are run on the calling thread.
+	 * @param rolloutExecutor
+	 */
+	public void setRolloutExecutor(ExecutorService rolloutExecutor) {this.rolloutExecutor = rolloutExecutor;}
+	
+	/**
+	 * Sets the pool the planner's value iteration sweeps are run on, for planners that sweep in parallel
+	 * like GridValueIteration. The pool is not shut down by the learner. If null, the planner's own
+	 * setting is kept.
+	 * @param planningPool
+	 */
+	public void setPlanningPool(ForkJoinPool planningPool) {this.planningPool = planningPool;}
+	
+	/**
+	 * Sets the seed every sampled episode's random generator is derived from. Runs with the same seed
+	 * sample the same episodes, regardless of the executor.
+	 * @param seed
+	 */
+	public void setSeed(long seed) {this.seed = seed;}
+	
+	/**
+	 * Sets the tolerance of the max margin method's weight solver
+	 * @param solverTolerance
+	 */
+	public void setSolverTolerance(double solverTolerance) {this.solverTolerance = solverTolerance;}
+	
+	/**
+	 * Solves the max margin method's weights through the min norm point of the feature expectation
+	 * differences, instead of as a quadratic program
+	 * @param useMinNormPoint
+	 */
+	public void setUsingMinNormPointSolver(boolean useMinNormPoint) {this.useMinNormPointSolver = useMinNormPoint;}
+	
+	/**
+	 * Sets whether each iteration's metrics are printed to standard out. Listeners are called either way.
+	 * @param verbose
+	 */
+	public void setVerbose(boolean verbose) {this.verbose = verbose;}
+	
+	/**
+	 * Sets the file learning is checkpointed to. If the file already holds a checkpoint of this request,
+	 * learning resumes from it, and a checkpoint of a request with other settings or expert episodes is
+	 * rejected. The checkpoint is removed once learning finishes. If null, which is the default, no
+	 * checkpoints are kept.
+	 * @param checkpointFile
+	 */
+	public void setCheckpointFile(File checkpointFile) {this.checkpointFile = checkpointFile;}
+	
+	/**
+	 * Sets the number of iterations between checkpoints
+	 * @param checkpointInterval
+	 */
+	public void setCheckpointInterval(int checkpointInterval) {this.checkpointInterval = checkpointInterval;}
+	
+	/**
+	 * Sets whether checkpoints include the planner's values, so a warm starting planner resumes from them.
+	 * Only GridValueIteration's values can be kept.
+	 * @param checkpointingPlannerValues
+	 */
+	public void setCheckpointingPlannerValues(boolean checkpointingPlannerValues) {this.checkpointingPlannerValues = checkpointingPlannerValues;}
+	
+	/**
+	 * Adds a listener which receives the metrics of every iteration
+	 * @param listener
+	 */
+	public void addListener(ApprenticeshipLearningListener listener) {this.listeners.add(listener);}
+	
+	public void removeListener(ApprenticeshipLearningListener listener) {this.listeners.remove(listener);}
 
 	public Domain getDomain() {return this.domain;}
 	
 	public OOMDPPlanner getPlanner() {return this.planner;}
 	
 	public PropositionalFunction[] getFeatureFunctions() {return this.featureFunctions.clone();}	
+	
+	/**
+	 * Returns the extractor used to compute features, which tests the feature functions if none was set
+	 * @return
+	 */
+	public StateFeatureExtractor getFeatureExtractor() {
+		if (this.featureExtractor == null) {
+			return new PropositionalFeatureExtractor(this.featureFunctions);
+		}
+		return this.featureExtractor;
+	}
 
-	public List<EpisodeAnalysis> getExpertEpisodes() { return new ArrayList<EpisodeAnalysis>(this.expertEpisodes);}
+	/**
+	 * Returns an unmodifiable view of the expert's demonstrations, rather than a copy of them
+	 * @return
+	 */
+	public List<EpisodeAnalysis> getExpertEpisodes() { return Collections.unmodifiableList(this.expertEpisodes);}
+	
+	/**
+	 * Returns the feature expectation of the expert's demonstrations and its variance. It is estimated
+	 * the first time it is needed and kept until the demonstrations, the feature functions or extractor,
+	 * gamma or epsilon are changed, so learning repeatedly from the same request doesn't estimate it
+	 * again. Only the states within the effective horizon are summed.
+	 * @return
+	 */
+	public synchronized FeatureExpectationEstimate getExpertFeatureExpectation() {
+		if (this.expertFeatureExpectation == null) {
+			StateHashFactory hashFactory = (this.planner == null) ? 
+					new NameDependentStateHashFactory() : this.planner.getHashingFactory();
+			FeatureIndicatorCache featureCache = 
+					new FeatureIndicatorCache(this.getFeatureExtractor(), hashFactory, this.gamma);
+			this.expertFeatureExpectation = 
+					FeatureExpectationEstimate.estimate(featureCache, this.expertEpisodes, this.getEffectiveHorizon());
+		}
+		return this.expertFeatureExpectation;
+	}
 	
 	public StateGenerator getStartStateGenerator() {return this.startStateGenerator;}
 	
 	public double getGamma() {return this.gamma;}
 	
 	public double getEpsilon() {return this.epsilon;}
+	
+	/**
+	 * Returns the epsilon effective horizon of gamma, the number of states of an episode after which
+	 * the discounted features of all later states add up to at most epsilon
+	 * @return
+	 */
+	public int getEffectiveHorizon() {return ApprenticeshipLearning.getEffectiveHorizon(this.gamma, this.epsilon);}
 
 	public int getMaxIterations() {return this.maxIterations;}
 	
 	public int getPolicyCount() {return this.policyCount;}
 	
+	public boolean getUsingAdaptivePolicyCount() {return this.useAdaptivePolicyCount;}
+	
+	public int getMinPolicyCount() {return this.minPolicyCount;}
+	
+	public int getMaxPolicyCount() {return this.maxPolicyCount;}
+	
+	public double getRolloutConfidenceScore() {return this.rolloutConfidenceScore;}
+	
 	public double[] getTHistory() {return this.tHistory.clone();}
 	
 	public boolean getUsingMaxMargin() {return this.useMaxMargin;}
 	
+	public boolean getUsingExactFeatureExpectations() {return this.useExactFeatureExpectations;}
+	
+	public boolean getUsingWarmStartPlanning() {return this.useWarmStartPlanning;}
+	
+	public ExecutorService getRolloutExecutor() {return this.rolloutExecutor;}
+	
+	public ForkJoinPool getPlanningPool() {return this.planningPool;}
+	
+	public long getSeed() {return this.seed;}
+	
+	public double getSolverTolerance() {return this.solverTolerance;}
+	
+	public boolean getUsingMinNormPointSolver() {return this.useMinNormPointSolver;}
+	
+	public boolean getVerbose() {return this.verbose;}
+	
+	public File getCheckpointFile() {return this.checkpointFile;}
+	
+	public int getCheckpointInterval() {return this.checkpointInterval;}
+	
+	public boolean getCheckpointingPlannerValues() {return this.checkpointingPlannerValues;}
+	
+	public List<ApprenticeshipLearningListener> getListeners() {return new ArrayList<ApprenticeshipLearningListener>(this.listeners);}
+	
 }
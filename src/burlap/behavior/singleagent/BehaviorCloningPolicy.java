@@ -0,0 +1,152 @@
+package burlap.behavior.singleagent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import burlap.behavior.statehashing.StateIndexer;
+import burlap.oomdp.core.Domain;
+import burlap.oomdp.core.State;
+import burlap.oomdp.singleagent.Action;
+import burlap.oomdp.singleagent.GroundedAction;
+
+/**
+ * A behavior cloning baseline which takes each action in a state as often as the expert took it
+ * there. The expert's actions are counted per state index in one int array, so looking up or sampling
+ * a state's action is an index computation and a short scan, with nothing hashed or allocated. The
+ * distributions of the visited states are built once, and in states the expert never visited every
+ * action is equally likely. Once constructed it is only read, apart from the sampling generator.
+ *
+ * Actions are identified by their position in the domain's action list, so this suits domains whose
+ * actions take no parameters, like the grid worlds.
+ * @author brawner
+ *
+ */
+public class BehaviorCloningPolicy extends Policy {
+	private StateIndexer 								indexer;
+	private GroundedAction[] 							groundedActions;
+	private int[] 										actionCounts;
+	private int[] 										stateCounts;
+	private List<List<ActionProb>> 						actionDistributions;
+	private List<ActionProb> 							uniformDistribution;
+	private Random 										random;
+
+	/**
+	 * Constructor
+	 * @param domain Domain the expert acted in
+	 * @param indexer Indexer over the domain's states
+	 * @param expertEpisodes Demonstrations to copy
+	 */
+	public BehaviorCloningPolicy(Domain domain, StateIndexer indexer, List<EpisodeAnalysis> expertEpisodes) {
+		this(domain, indexer, expertEpisodes, new Random().nextLong());
+	}
+
+	/**
+	 * Constructor
+	 * @param domain Domain the expert acted in
+	 * @param indexer Indexer over the domain's states
+	 * @param expertEpisodes Demonstrations to copy
+	 * @param seed Seed for sampling actions
+	 */
+	public BehaviorCloningPolicy(Domain domain, StateIndexer indexer, List<EpisodeAnalysis> expertEpisodes, long seed) {
+		this.indexer = indexer;
+		List<Action> actions = domain.getActions();
+		this.groundedActions = new GroundedAction[actions.size()];
+		List<ActionProb> uniformDistribution = new ArrayList<ActionProb>(actions.size());
+		for (int a = 0; a < actions.size(); ++a) {
+			this.groundedActions[a] = new GroundedAction(actions.get(a), new String[]{});
+			uniformDistribution.add(new ActionProb(this.groundedActions[a], 1.0 / actions.size()));
+		}
+		this.uniformDistribution = Collections.unmodifiableList(uniformDistribution);
+		this.actionCounts = new int[indexer.getStateCount() * this.groundedActions.length];
+		this.stateCounts = new int[indexer.getStateCount()];
+		this.actionDistributions = new ArrayList<List<ActionProb>>(indexer.getStateCount());
+		this.random = new Random(seed);
+
+		for (EpisodeAnalysis episode : expertEpisodes) {
+			for (int step = 0; step < episode.numTimeSteps() - 1; ++step) {
+				this.addDemonstration(episode.getState(step), episode.getAction(step));
+			}
+		}
+		for (int stateIndex = 0; stateIndex < this.stateCounts.length; ++stateIndex) {
+			this.actionDistributions.add((this.stateCounts[stateIndex] > 0) ? this.buildActionDistribution(stateIndex) : null);
+		}
+	}
+
+	private void addDemonstration(State state, GroundedAction groundedAction) {
+		int stateIndex = this.indexer.getIndex(state);
+		int actionIndex = this.getActionIndex(groundedAction);
+		if (stateIndex < 0 || actionIndex < 0) {
+			return;
+		}
+		++this.actionCounts[stateIndex * this.groundedActions.length + actionIndex];
+		++this.stateCounts[stateIndex];
+	}
+
+	private List<ActionProb> buildActionDistribution(int stateIndex) {
+		int offset = stateIndex * this.groundedActions.length;
+		List<ActionProb> actionDistribution = new ArrayList<ActionProb>();
+		for (int a = 0; a < this.groundedActions.length; ++a) {
+			int count = this.actionCounts[offset + a];
+			if (count > 0) {
+				actionDistribution.add(new ActionProb(this.groundedActions[a], (double)count / this.stateCounts[stateIndex]));
+			}
+		}
+		return Collections.unmodifiableList(actionDistribution);
+	}
+
+	private int getActionIndex(GroundedAction groundedAction) {
+		for (int a = 0; a < this.groundedActions.length; ++a) {
+			if (this.groundedActions[a].action.getName().equals(groundedAction.action.getName())) {
+				return a;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the number of times the expert was seen in a state
+	 * @param state
+	 * @return
+	 */
+	public int getDemonstrationCount(State state) {
+		int stateIndex = this.indexer.getIndex(state);
+		return (stateIndex < 0) ? 0 : this.stateCounts[stateIndex];
+	}
+
+	@Override
+	public GroundedAction getAction(State s) {
+		int stateIndex = this.indexer.getIndex(s);
+		if (stateIndex < 0 || this.stateCounts[stateIndex] == 0) {
+			return this.groundedActions[this.random.nextInt(this.groundedActions.length)];
+		}
+		int roll = this.random.nextInt(this.stateCounts[stateIndex]);
+		int offset = stateIndex * this.groundedActions.length;
+		for (int a = 0; a < this.groundedActions.length; ++a) {
+			roll -= this.actionCounts[offset + a];
+			if (roll < 0) {
+				return this.groundedActions[a];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the expert's action frequencies in this state. The lists are shared, so they must not be
+	 * modified.
+	 */
+	@Override
+	public List<ActionProb> getActionDistributionForState(State s) {
+		int stateIndex = this.indexer.getIndex(s);
+		if (stateIndex < 0 || this.stateCounts[stateIndex] == 0) {
+			return this.uniformDistribution;
+		}
+		return this.actionDistributions.get(stateIndex);
+	}
+
+	@Override
+	public boolean isStochastic() {
+		return true;
+	}
+}
@@ -0,0 +1,118 @@
+package burlap.behavior.singleagent;
+
+import java.util.Arrays;
+
+import burlap.oomdp.core.State;
+
+/**
+ * Running sum of the discounted features of the states visited in an episode. States are added one at
+ * a time as they are visited and aren't kept, so an episode of any length only needs one array of
+ * feature sums. The features an episode touches are tracked, so the sums can be read out as a sparse
+ * vector and cleared in time proportional to the features touched rather than the feature count. Not
+ * safe to share between threads, each rollout thread should use its own accumulator.
+ * @author brawner
+ *
+ */
+public class DiscountedFeatureAccumulator {
+	private FeatureIndicatorCache 				featureCache;
+	private double[] 							featureSums;
+	private int[] 								touchedFeatures;
+	private int 								touchedCount;
+	private int 								step;
+
+	/**
+	 * Constructor
+	 * @param featureCache Feature cache which maps states to their true features
+	 */
+	public DiscountedFeatureAccumulator(FeatureIndicatorCache featureCache) {
+		this.featureCache = featureCache;
+		this.featureSums = new double[featureCache.getFeatureCount()];
+		this.touchedFeatures = new int[Math.min(16, this.featureSums.length)];
+		this.touchedCount = 0;
+		this.step = 0;
+	}
+
+	/**
+	 * Adds the features of the next state of the episode, discounted by gamma^t.
+	 * @param state The state visited at the current time step
+	 */
+	public void add(State state) {
+		double discount = this.featureCache.getDiscount(this.step);
+		++this.step;
+		if (discount == 0.0) {
+			return;
+		}
+		for (int index : this.featureCache.getActiveFeatures(state)) {
+			if (this.featureSums[index] == 0.0) {
+				this.touch(index);
+			}
+			this.featureSums[index] += discount;
+		}
+	}
+
+	/**
+	 * Starts a new episode, the feature sums are kept.
+	 */
+	public void startEpisode() {
+		this.step = 0;
+	}
+
+	/**
+	 * Clears the feature sums and starts a new episode.
+	 */
+	public void reset() {
+		for (int i = 0; i < this.touchedCount; ++i) {
+			this.featureSums[this.touchedFeatures[i]] = 0.0;
+		}
+		this.touchedCount = 0;
+		this.step = 0;
+	}
+
+	/**
+	 * Returns the number of states added since the episode started
+	 * @return
+	 */
+	public int getStep() {
+		return this.step;
+	}
+
+	/**
+	 * Returns a copy of the discounted feature sums
+	 * @return
+	 */
+	public double[] getFeatureSums() {
+		return this.featureSums.clone();
+	}
+
+	/**
+	 * Returns the discounted feature sums of the touched features
+	 * @return
+	 */
+	public SparseFeatureVector getFeatureVector() {
+		int[] indices = Arrays.copyOf(this.touchedFeatures, this.touchedCount);
+		Arrays.sort(indices);
+		double[] values = new double[indices.length];
+		for (int k = 0; k < indices.length; ++k) {
+			values[k] = this.featureSums[indices[k]];
+		}
+		return new SparseFeatureVector(indices, values);
+	}
+
+	/**
+	 * Adds the discounted feature sums to another array
+	 * @param sums Array to add the feature sums to
+	 */
+	public void addTo(double[] sums) {
+		for (int i = 0; i < this.touchedCount; ++i) {
+			int index = this.touchedFeatures[i];
+			sums[index] += this.featureSums[index];
+		}
+	}
+
+	private void touch(int index) {
+		if (this.touchedCount == this.touchedFeatures.length) {
+			this.touchedFeatures = Arrays.copyOf(this.touchedFeatures, Math.max(1, 2 * this.touchedCount));
+		}
+		this.touchedFeatures[this.touchedCount++] = index;
+	}
+}
@@ -0,0 +1,216 @@
+package burlap.behavior.singleagent;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import burlap.oomdp.auxiliary.StateParser;
+import burlap.oomdp.core.Domain;
+import burlap.oomdp.singleagent.Action;
+import burlap.oomdp.singleagent.GroundedAction;
+
+/**
+ * Reads episodes from a file written by EpisodeFileWriter. The header and index are read when the
+ * file is opened, and each episode is then read with one positional read of its bytes, so episodes
+ * can be read in any order. Actions are matched to the domain's actions by name.
+ * @author brawner
+ *
+ */
+public class EpisodeFileReader implements Closeable {
+	private RandomAccessFile 					file;
+	private FileChannel 						channel;
+	private StateRecordCodec 					codec;
+	private GroundedAction[] 					groundedActions;
+	private long[] 								offsets;
+
+	/**
+	 * Opens a file of episodes
+	 * @param file
+	 * @param domain Domain of the episodes
+	 * @param codec Codec the file's states were written with
+	 * @throws IOException If the file can't be read or wasn't written with a codec of the same size
+	 */
+	public EpisodeFileReader(File file, Domain domain, StateRecordCodec codec) throws IOException {
+		this.codec = codec;
+		this.file = new RandomAccessFile(file, "r");
+		this.channel = this.file.getChannel();
+		try {
+			ByteBuffer header = this.read(0, 26);
+			if (header.getInt() != EpisodeFileWriter.MAGIC || header.getInt() != EpisodeFileWriter.VERSION) {
+				throw new IOException("Not an episode file: " + file);
+			}
+			if (header.getInt() != codec.getRecordSize()) {
+				throw new IOException("Episode file " + file + " wasn't written with a codec of this record size");
+			}
+			int episodeCount = header.getInt();
+			long indexOffset = header.getLong();
+			int actionCount = header.getShort();
+
+			this.groundedActions = new GroundedAction[actionCount];
+			long position = 26;
+			for (int a = 0; a < actionCount; ++a) {
+				int length = this.read(position, 2).getShort();
+				ByteBuffer name = this.read(position + 2, length);
+				position += 2 + length;
+				String actionName = new String(name.array(), 0, length, EpisodeFileWriter.CHARSET);
+				Action action = domain.getAction(actionName);
+				if (action == null) {
+					throw new IOException("Episode file " + file + " has an action the domain doesn't: " + actionName);
+				}
+				this.groundedActions[a] = new GroundedAction(action, new String[]{});
+			}
+
+			// the index ends with the index's own offset, so every episode's length is a difference of offsets
+			this.offsets = new long[episodeCount + 1];
+			ByteBuffer index = this.read(indexOffset, 8 * episodeCount);
+			for (int i = 0; i < episodeCount; ++i) {
+				this.offsets[i] = index.getLong();
+			}
+			this.offsets[episodeCount] = indexOffset;
+		} catch (IOException e) {
+			this.file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the number of episodes in the file
+	 * @return
+	 */
+	public int getEpisodeCount() {
+		return this.offsets.length - 1;
+	}
+
+	/**
+	 * Reads one episode
+	 * @param episode Index of the episode, in the order they were written
+	 * @return
+	 * @throws IOException
+	 */
+	public EpisodeAnalysis readEpisode(int episode) throws IOException {
+		ByteBuffer buffer = this.read(this.offsets[episode], (int)(this.offsets[episode + 1] - this.offsets[episode]));
+		return EpisodeFileReader.decodeEpisode(buffer, this.codec, this.groundedActions);
+	}
+
+	/**
+	 * Reads every episode in the file
+	 * @return
+	 * @throws IOException
+	 */
+	public List<EpisodeAnalysis> readEpisodes() throws IOException {
+		List<EpisodeAnalysis> episodes = new ArrayList<EpisodeAnalysis>(this.getEpisodeCount());
+		for (int i = 0; i < this.getEpisodeCount(); ++i) {
+			episodes.add(this.readEpisode(i));
+		}
+		return episodes;
+	}
+
+	/**
+	 * Returns the position in the file at which an episode starts. The position of episode
+	 * getEpisodeCount() is the index's, where the last episode ends.
+	 */
+	long getOffset(int episode) {
+		return this.offsets[episode];
+	}
+
+	GroundedAction[] getGroundedActions() {
+		return this.groundedActions;
+	}
+
+	FileChannel getChannel() {
+		return this.channel;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.file.close();
+	}
+
+	/**
+	 * Reads every episode of one file
+	 * @param file
+	 * @param domain Domain of the episodes
+	 * @param codec Codec the file's states were written with
+	 * @return
+	 * @throws IOException
+	 */
+	public static List<EpisodeAnalysis> readEpisodes(File file, Domain domain, StateRecordCodec codec) throws IOException {
+		EpisodeFileReader reader = new EpisodeFileReader(file, domain, codec);
+		try {
+			return reader.readEpisodes();
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Writes the episodes of every episode file in a directory as text .episode files beside it, named
+	 * after the file and the episode's index, so they can be viewed with EpisodeSequenceVisualizer.
+	 * @param directory
+	 * @param domain Domain of the episodes
+	 * @param codec Codec the files' states were written with
+	 * @param stateParser Parser the text files are written with
+	 * @return The number of episodes written
+	 * @throws IOException
+	 */
+	public static int exportTextEpisodes(String directory, Domain domain, StateRecordCodec codec, StateParser stateParser) throws IOException {
+		File[] files = new File(directory).listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.endsWith(EpisodeFileWriter.EXTENSION);
+			}
+		});
+		if (files == null) {
+			return 0;
+		}
+		int count = 0;
+		for (File file : files) {
+			String name = file.getPath().substring(0, file.getPath().length() - EpisodeFileWriter.EXTENSION.length());
+			List<EpisodeAnalysis> episodes = EpisodeFileReader.readEpisodes(file, domain, codec);
+			for (int i = 0; i < episodes.size(); ++i) {
+				episodes.get(i).writeToFile(name + "_" + i, stateParser);
+			}
+			count += episodes.size();
+		}
+		return count;
+	}
+
+	/**
+	 * Decodes an episode's bytes, from its step count to its last reward
+	 * @param buffer Buffer positioned at the episode
+	 * @param codec Codec the states were written with
+	 * @param groundedActions The file's actions, by index
+	 * @return
+	 */
+	static EpisodeAnalysis decodeEpisode(ByteBuffer buffer, StateRecordCodec codec, GroundedAction[] groundedActions) {
+		int stepCount = buffer.getInt();
+		EpisodeAnalysis episode = new EpisodeAnalysis();
+		for (int t = 0; t < stepCount; ++t) {
+			episode.addState(codec.decode(buffer));
+		}
+		for (int t = 0; t < stepCount - 1; ++t) {
+			episode.addAction(groundedActions[buffer.getShort()]);
+		}
+		for (int t = 0; t < stepCount - 1; ++t) {
+			episode.addReward(buffer.getDouble());
+		}
+		return episode;
+	}
+
+	private ByteBuffer read(long position, int size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		while (buffer.hasRemaining()) {
+			if (this.channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Episode file ends early");
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+}
@@ -0,0 +1,219 @@
+package burlap.behavior.singleagent;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import burlap.oomdp.core.Domain;
+import burlap.oomdp.singleagent.Action;
+import burlap.oomdp.singleagent.GroundedAction;
+
+/**
+ * Writes many episodes to one binary file, in place of a text .episode file per episode. States are
+ * stored as the fixed width records of a StateRecordCodec and actions as their index in the domain's
+ * action list, so a grid world step takes a dozen or so bytes. Episodes are packed into a buffer and
+ * written through a file channel, and when the writer is closed an index of where each episode
+ * starts is appended and the header is filled in, so EpisodeFileReader can read any episode directly.
+ *
+ * The file starts with a header of the format version, the record size, the episode count, the
+ * offset of the index and the names of the domain's actions. Each episode is its number of steps,
+ * followed by its state records, its action indices as shorts and its rewards as doubles. Only actions
+ * without parameters can be stored, like those of the grid worlds.
+ * @author brawner
+ *
+ */
+public class EpisodeFileWriter implements Closeable {
+	public static final String 					EXTENSION = ".episodes";
+	static final int 							MAGIC = 0x45504953;
+	static final int 							VERSION = 1;
+	static final Charset 						CHARSET = Charset.forName("UTF-8");
+	static final int 							EPISODECOUNTPOSITION = 12;
+	private static final int 					BUFFERSIZE = 1 << 16;
+
+	private RandomAccessFile 					file;
+	private FileChannel 						channel;
+	private StateRecordCodec 					codec;
+	private Map<String, Integer> 				actionIndices;
+	private ByteBuffer 							buffer;
+	private long 								bufferPosition;
+	private long[] 								offsets;
+	private int 								episodeCount;
+
+	/**
+	 * Creates the file, replacing any file already there. The extension is added if the path doesn't
+	 * have it.
+	 * @param path Path of the file
+	 * @param domain Domain of the episodes
+	 * @param codec Codec for the domain's states
+	 * @throws IOException
+	 */
+	public EpisodeFileWriter(String path, Domain domain, StateRecordCodec codec) throws IOException {
+		this(new File(path.endsWith(EXTENSION) ? path : path + EXTENSION), domain, codec);
+	}
+
+	/**
+	 * Creates the file, replacing any file already there
+	 * @param file
+	 * @param domain Domain of the episodes
+	 * @param codec Codec for the domain's states
+	 * @throws IOException
+	 */
+	public EpisodeFileWriter(File file, Domain domain, StateRecordCodec codec) throws IOException {
+		this.codec = codec;
+		this.actionIndices = new HashMap<String, Integer>();
+		this.buffer = ByteBuffer.allocate(BUFFERSIZE);
+		this.offsets = new long[16];
+		this.episodeCount = 0;
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+		this.file = new RandomAccessFile(file, "rw");
+		this.file.setLength(0);
+		this.channel = this.file.getChannel();
+		this.bufferPosition = 0;
+
+		List<Action> actions = domain.getActions();
+		this.buffer.putInt(MAGIC);
+		this.buffer.putInt(VERSION);
+		this.buffer.putInt(codec.getRecordSize());
+		this.buffer.putInt(0);
+		this.buffer.putLong(0);
+		this.buffer.putShort((short)actions.size());
+		for (int a = 0; a < actions.size(); ++a) {
+			byte[] name = actions.get(a).getName().getBytes(CHARSET);
+			this.ensureRemaining(2 + name.length);
+			this.buffer.putShort((short)name.length);
+			this.buffer.put(name);
+			this.actionIndices.put(actions.get(a).getName(), a);
+		}
+	}
+
+	/**
+	 * Appends an episode
+	 * @param episode
+	 * @throws IOException
+	 */
+	public void write(EpisodeAnalysis episode) throws IOException {
+		int stepCount = episode.numTimeSteps();
+		int transitionCount = Math.max(0, stepCount - 1);
+		if (episode.actionSequence.size() != transitionCount || episode.rewardSequence.size() != transitionCount) {
+			throw new IllegalArgumentException("Episode must have one action and reward per transition");
+		}
+		this.ensureRemaining(4 + stepCount * this.codec.getRecordSize() + transitionCount * (2 + 8));
+		if (this.episodeCount == this.offsets.length) {
+			this.offsets = Arrays.copyOf(this.offsets, 2 * this.offsets.length);
+		}
+		this.offsets[this.episodeCount++] = this.bufferPosition + this.buffer.position();
+
+		this.buffer.putInt(stepCount);
+		for (int t = 0; t < stepCount; ++t) {
+			this.codec.encode(episode.getState(t), this.buffer);
+		}
+		for (int t = 0; t < transitionCount; ++t) {
+			this.buffer.putShort(this.getActionIndex(episode.getAction(t)));
+		}
+		for (int t = 0; t < transitionCount; ++t) {
+			this.buffer.putDouble(episode.getReward(t));
+		}
+	}
+
+	/**
+	 * Appends several episodes
+	 * @param episodes
+	 * @throws IOException
+	 */
+	public void write(List<EpisodeAnalysis> episodes) throws IOException {
+		for (EpisodeAnalysis episode : episodes) {
+			this.write(episode);
+		}
+	}
+
+	/**
+	 * Returns the number of episodes written so far
+	 * @return
+	 */
+	public int getEpisodeCount() {
+		return this.episodeCount;
+	}
+
+	/**
+	 * Writes the index and header and closes the file
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			long indexOffset = this.bufferPosition + this.buffer.position();
+			for (int i = 0; i < this.episodeCount; ++i) {
+				this.ensureRemaining(8);
+				this.buffer.putLong(this.offsets[i]);
+			}
+			this.flush();
+
+			ByteBuffer header = ByteBuffer.allocate(12);
+			header.putInt(this.episodeCount);
+			header.putLong(indexOffset);
+			header.flip();
+			this.channel.write(header, EPISODECOUNTPOSITION);
+		} finally {
+			this.file.close();
+		}
+	}
+
+	/**
+	 * Writes one file of episodes
+	 * @param path Path of the file, the extension is added if it doesn't have it
+	 * @param domain Domain of the episodes
+	 * @param codec Codec for the domain's states
+	 * @param episodes
+	 * @throws IOException
+	 */
+	public static void writeEpisodes(String path, Domain domain, StateRecordCodec codec, List<EpisodeAnalysis> episodes) throws IOException {
+		EpisodeFileWriter writer = new EpisodeFileWriter(path, domain, codec);
+		try {
+			writer.write(episodes);
+		} finally {
+			writer.close();
+		}
+	}
+
+	private short getActionIndex(GroundedAction groundedAction) {
+		if (groundedAction.params != null && groundedAction.params.length > 0) {
+			throw new IllegalArgumentException("Only actions without parameters can be stored: " + groundedAction.toString());
+		}
+		Integer index = this.actionIndices.get(groundedAction.action.getName());
+		if (index == null) {
+			throw new IllegalArgumentException("Action isn't in the domain: " + groundedAction.action.getName());
+		}
+		return index.shortValue();
+	}
+
+	/**
+	 * Makes room in the buffer, flushing it and growing it for records larger than the buffer
+	 */
+	private void ensureRemaining(int size) throws IOException {
+		if (this.buffer.remaining() >= size) {
+			return;
+		}
+		this.flush();
+		if (this.buffer.capacity() < size) {
+			this.buffer = ByteBuffer.allocate(size);
+		}
+	}
+
+	private void flush() throws IOException {
+		this.buffer.flip();
+		while (this.buffer.hasRemaining()) {
+			this.bufferPosition += this.channel.write(this.buffer, this.bufferPosition);
+		}
+		this.buffer.clear();
+	}
+}
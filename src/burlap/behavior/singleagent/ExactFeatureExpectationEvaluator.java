@@ -0,0 +1,282 @@
+package burlap.behavior.singleagent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import burlap.behavior.singleagent.Policy.ActionProb;
+import burlap.behavior.singleagent.planning.ActionTransitions;
+import burlap.behavior.singleagent.planning.HashedTransitionProbability;
+import burlap.behavior.statehashing.StateHashFactory;
+import burlap.behavior.statehashing.StateHashTuple;
+import burlap.oomdp.core.Domain;
+import burlap.oomdp.core.State;
+import burlap.oomdp.core.TerminalFunction;
+import burlap.oomdp.singleagent.Action;
+import burlap.oomdp.singleagent.GroundedAction;
+
+/**
+ * Computes the feature expectations of a policy exactly for tabular domains, instead of estimating
+ * them from sampled episodes. The reachable states and their transition dynamics are enumerated once,
+ * and for every policy the discounted state occupancy rho = d0 + gamma * P^T * rho is solved by
+ * fixed point iteration over the policy induced transition matrix P. The feature expectation is then
+ * u(pi) = sum_s rho(s) phi(s), which is the same quantity as solving mu = phi + gamma * P * mu for
+ * every state and averaging over the start distribution, but only needs one vector the size of the
+ * state space rather than one per feature.
+ *
+ * Episodes end in terminal states. Their features are counted when they are reached but no mass
+ * leaves them, the same as RolloutFeatureExpectationEstimator stopping a sampled episode there, so
+ * both estimate the same quantity.
+ * @author brawner
+ *
+ */
+public class ExactFeatureExpectationEvaluator {
+	public static final double 						DEFAULT_TOLERANCE = 1.E-8;
+
+	private List<Action> 							actions;
+	private TerminalFunction 						terminalFunction;
+	private StateHashFactory 						hashFactory;
+	private FeatureIndicatorCache 					featureCache;
+	private double 									tolerance;
+
+	private Map<StateHashTuple, Integer> 			stateIds;
+	private List<StateHashTuple> 					states;
+	private List<GroundedAction[]> 					stateActions;
+	private List<int[][]> 							stateSuccessors;
+	private List<double[][]> 						stateProbabilities;
+
+	/**
+	 * Constructor sets up the evaluator, the state space is enumerated lazily from the initial states
+	 * given to each evaluation.
+	 * @param domain Domain whose transition dynamics are used
+	 * @param terminalFunction Terminal function, episodes end when they reach a terminal state
+	 * @param hashFactory Hashing factory used to identify states
+	 * @param featureCache Feature cache which maps states to their true features
+	 */
+	public ExactFeatureExpectationEvaluator(Domain domain, TerminalFunction terminalFunction,
+			StateHashFactory hashFactory, FeatureIndicatorCache featureCache) {
+		this.actions = domain.getActions();
+		this.terminalFunction = terminalFunction;
+		this.hashFactory = hashFactory;
+		this.featureCache = featureCache;
+		this.tolerance = DEFAULT_TOLERANCE;
+		this.stateIds = new HashMap<StateHashTuple, Integer>();
+		this.states = new ArrayList<StateHashTuple>();
+		this.stateActions = new ArrayList<GroundedAction[]>();
+		this.stateSuccessors = new ArrayList<int[][]>();
+		this.stateProbabilities = new ArrayList<double[][]>();
+	}
+
+	/**
+	 * Sets the probability mass below which the remaining discounted occupancy is ignored
+	 * @param tolerance
+	 */
+	public void setTolerance(double tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	public int getStateCount() {
+		return this.states.size();
+	}
+
+	/**
+	 * Calculates the feature expectations of a policy whose start state is chosen uniformly from
+	 * a list of initial states.
+	 * @param policy Policy to evaluate, must return a distribution for every reachable state
+	 * @param initialStates States from which episodes start, each with equal probability
+	 * @param horizon Number of states in an episode, counting the initial state, or 0 to sum over an
+	 * infinite horizon
+	 * @return The Feature Expectations (double array that matches the number of features)
+	 */
+	public double[] estimateFeatureExpectation(Policy policy, List<State> initialStates, int horizon) {
+		if (horizon <= 0 && this.featureCache.getGamma() >= 1.0) {
+			throw new IllegalArgumentException("An infinite horizon requires a discount factor less than 1");
+		}
+
+		// Initial distribution d0
+		List<Integer> initialIds = new ArrayList<Integer>(initialStates.size());
+		for (State state : initialStates) {
+			initialIds.add(this.enumerateFrom(state));
+		}
+		double[] initialDistribution = new double[this.states.size()];
+		for (int id : initialIds) {
+			initialDistribution[id] += 1.0 / initialIds.size();
+		}
+
+		// Build the policy induced transition matrix as compressed rows
+		int stateCount = this.states.size();
+		int[] rowStarts = new int[stateCount + 1];
+		List<int[]> rowColumns = new ArrayList<int[]>(stateCount);
+		List<double[]> rowValues = new ArrayList<double[]>(stateCount);
+		int nonZeros = 0;
+		for (int i = 0; i < stateCount; ++i) {
+			Map<Integer, Double> row = this.getPolicyTransitions(policy, i);
+			int[] columns = new int[row.size()];
+			double[] values = new double[row.size()];
+			int index = 0;
+			for (Map.Entry<Integer, Double> entry : row.entrySet()) {
+				columns[index] = entry.getKey();
+				values[index] = entry.getValue();
+				index++;
+			}
+			rowColumns.add(columns);
+			rowValues.add(values);
+			rowStarts[i] = nonZeros;
+			nonZeros += columns.length;
+		}
+		rowStarts[stateCount] = nonZeros;
+		int[] columns = new int[nonZeros];
+		double[] values = new double[nonZeros];
+		for (int i = 0; i < stateCount; ++i) {
+			System.arraycopy(rowColumns.get(i), 0, columns, rowStarts[i], rowColumns.get(i).length);
+			System.arraycopy(rowValues.get(i), 0, values, rowStarts[i], rowValues.get(i).length);
+		}
+
+		// Solve rho = d0 + gamma * P^T * rho by summing the discounted state distributions d_t
+		double gamma = this.featureCache.getGamma();
+		double[] occupancy = initialDistribution.clone();
+		double[] distribution = initialDistribution;
+		double[] nextDistribution = new double[stateCount];
+		double discount = 1.0;
+		for (int t = 1; horizon <= 0 || t < horizon; ++t) {
+			Arrays.fill(nextDistribution, 0.0);
+			for (int i = 0; i < stateCount; ++i) {
+				double mass = distribution[i];
+				if (mass == 0.0) {
+					continue;
+				}
+				for (int k = rowStarts[i]; k < rowStarts[i + 1]; ++k) {
+					nextDistribution[columns[k]] += mass * values[k];
+				}
+			}
+			discount *= gamma;
+			double remainingMass = 0.0;
+			for (int i = 0; i < stateCount; ++i) {
+				occupancy[i] += discount * nextDistribution[i];
+				remainingMass += nextDistribution[i];
+			}
+			double[] swap = distribution;
+			distribution = nextDistribution;
+			nextDistribution = swap;
+
+			// Whatever is left can only add this much to any feature expectation
+			if (gamma < 1.0 && remainingMass * discount / (1.0 - gamma) < this.tolerance) {
+				break;
+			}
+		}
+
+		// u(pi) = sum_s rho(s) phi(s)
+		double[] featureExpectations = new double[this.featureCache.getFeatureCount()];
+		for (int i = 0; i < stateCount; ++i) {
+			if (occupancy[i] == 0.0) {
+				continue;
+			}
+			for (int index : this.featureCache.getActiveFeatures(this.states.get(i).s)) {
+				featureExpectations[index] += occupancy[i];
+			}
+		}
+		return featureExpectations;
+	}
+
+	/**
+	 * Combines the policy's action distribution in a state with the transition dynamics of each action
+	 * @param policy
+	 * @param stateId
+	 * @return Map from successor state id to the probability of reaching it
+	 */
+	private Map<Integer, Double> getPolicyTransitions(Policy policy, int stateId) {
+		Map<Integer, Double> row = new HashMap<Integer, Double>();
+		GroundedAction[] groundedActions = this.stateActions.get(stateId);
+		if (groundedActions == null) {
+			// Episodes end in terminal states, so no probability mass leaves them
+			return row;
+		}
+		int[][] successors = this.stateSuccessors.get(stateId);
+		double[][] probabilities = this.stateProbabilities.get(stateId);
+		List<ActionProb> actionDistribution = policy.getActionDistributionForState(this.states.get(stateId).s);
+		for (ActionProb actionProb : actionDistribution) {
+			if (actionProb.pSelection == 0.0) {
+				continue;
+			}
+			int actionIndex = -1;
+			for (int a = 0; a < groundedActions.length; ++a) {
+				if (groundedActions[a].equals(actionProb.ga)) {
+					actionIndex = a;
+					break;
+				}
+			}
+			if (actionIndex == -1) {
+				throw new RuntimeException("Policy selected an action that is not applicable in the enumerated state: " + actionProb.ga);
+			}
+			for (int k = 0; k < successors[actionIndex].length; ++k) {
+				Integer successor = successors[actionIndex][k];
+				Double current = row.get(successor);
+				double p = actionProb.pSelection * probabilities[actionIndex][k];
+				row.put(successor, (current == null) ? p : current + p);
+			}
+		}
+		return row;
+	}
+
+	/**
+	 * Enumerates every state reachable from this state that hasn't been seen yet, and records their
+	 * transition dynamics.
+	 * @param state
+	 * @return The id of the given state
+	 */
+	private int enumerateFrom(State state) {
+		StateHashTuple initialHash = this.hashFactory.hashState(state);
+		Integer initialId = this.stateIds.get(initialHash);
+		if (initialId != null) {
+			return initialId;
+		}
+		initialId = this.addState(initialHash);
+
+		LinkedList<StateHashTuple> openList = new LinkedList<StateHashTuple>();
+		openList.offer(initialHash);
+		while (!openList.isEmpty()) {
+			StateHashTuple stateHashTuple = openList.poll();
+			int stateId = this.stateIds.get(stateHashTuple);
+			if (this.terminalFunction.isTerminal(stateHashTuple.s)) {
+				continue;
+			}
+
+			List<GroundedAction> groundedActions = stateHashTuple.s.getAllGroundedActionsFor(this.actions);
+			int[][] successors = new int[groundedActions.size()][];
+			double[][] probabilities = new double[groundedActions.size()][];
+			for (int a = 0; a < groundedActions.size(); ++a) {
+				ActionTransitions actionTransitions =
+						new ActionTransitions(stateHashTuple.s, groundedActions.get(a), this.hashFactory);
+				successors[a] = new int[actionTransitions.transitions.size()];
+				probabilities[a] = new double[actionTransitions.transitions.size()];
+				for (int k = 0; k < actionTransitions.transitions.size(); ++k) {
+					HashedTransitionProbability transition = actionTransitions.transitions.get(k);
+					Integer successorId = this.stateIds.get(transition.sh);
+					if (successorId == null) {
+						successorId = this.addState(transition.sh);
+						openList.offer(transition.sh);
+					}
+					successors[a][k] = successorId;
+					probabilities[a][k] = transition.p;
+				}
+			}
+			this.stateActions.set(stateId, groundedActions.toArray(new GroundedAction[groundedActions.size()]));
+			this.stateSuccessors.set(stateId, successors);
+			this.stateProbabilities.set(stateId, probabilities);
+		}
+		return initialId;
+	}
+
+	private int addState(StateHashTuple stateHashTuple) {
+		int id = this.states.size();
+		this.stateIds.put(stateHashTuple, id);
+		this.states.add(stateHashTuple);
+		this.stateActions.add(null);
+		this.stateSuccessors.add(null);
+		this.stateProbabilities.add(null);
+		return id;
+	}
+}
@@ -0,0 +1,148 @@
+package burlap.behavior.singleagent;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A feature expectation estimated from sampled episodes, with the sample variance of each feature's
+ * discounted sum over the episodes. The variance of the estimate itself is this divided by the sample
+ * count. Estimates can't be modified, so they can be shared between requests and threads.
+ * @author brawner
+ *
+ */
+public class FeatureExpectationEstimate {
+	private double[] 							mean;
+	private double[] 							variance;
+	private int 								sampleCount;
+
+	/**
+	 * Constructor
+	 * @param mean The feature expectation
+	 * @param variance Sample variance of each feature's discounted sum
+	 * @param sampleCount Number of episodes the estimate is made from
+	 */
+	public FeatureExpectationEstimate(double[] mean, double[] variance, int sampleCount) {
+		this.mean = mean.clone();
+		this.variance = variance.clone();
+		this.sampleCount = sampleCount;
+	}
+
+	/**
+	 * Estimates the feature expectation of episodes in one pass over them, so episodes can be streamed
+	 * from a MappedEpisodeStore.
+	 * @param featureCache Feature cache which maps the episodes' states to their features
+	 * @param episodes Episodes to estimate from
+	 * @return
+	 */
+	public static FeatureExpectationEstimate estimate(FeatureIndicatorCache featureCache, List<EpisodeAnalysis> episodes) {
+		return FeatureExpectationEstimate.estimate(featureCache, episodes, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Estimates the feature expectation of episodes from at most their first horizon states
+	 * @param featureCache Feature cache which maps the episodes' states to their features
+	 * @param episodes Episodes to estimate from
+	 * @param horizon Most states of each episode to sum
+	 * @return
+	 */
+	public static FeatureExpectationEstimate estimate(FeatureIndicatorCache featureCache, List<EpisodeAnalysis> episodes, int horizon) {
+		RunningEstimate runningEstimate = new RunningEstimate(featureCache.getFeatureCount());
+		double[] featureSums = new double[featureCache.getFeatureCount()];
+		for (EpisodeAnalysis episode : episodes) {
+			Arrays.fill(featureSums, 0.0);
+			featureCache.addDiscountedFeatures(episode.stateSequence, featureSums, horizon);
+			runningEstimate.add(featureSums);
+		}
+		return runningEstimate.getEstimate();
+	}
+
+	/**
+	 * Returns the feature expectation
+	 * @return
+	 */
+	public double[] getMean() {return this.mean.clone();}
+
+	/**
+	 * Returns the sample variance of each feature's discounted sum over the episodes
+	 * @return
+	 */
+	public double[] getVariance() {return this.variance.clone();}
+
+	/**
+	 * Returns the standard error of each feature's expectation, the square root of its variance over
+	 * the sample count
+	 * @return
+	 */
+	public double[] getStandardError() {
+		double[] standardError = new double[this.variance.length];
+		if (this.sampleCount > 0) {
+			for (int i = 0; i < standardError.length; ++i) {
+				standardError[i] = Math.sqrt(this.variance[i] / this.sampleCount);
+			}
+		}
+		return standardError;
+	}
+
+	public int getSampleCount() {return this.sampleCount;}
+
+	/**
+	 * Keeps a running mean and sum of squared differences of each feature as episodes' discounted
+	 * feature sums are added (Welford's method), so an estimate can be checked at any time without
+	 * keeping the sums.
+	 */
+	public static class RunningEstimate {
+		private double[] 						mean;
+		private double[] 						squaredDifferences;
+		private int 							sampleCount;
+
+		public RunningEstimate(int featureCount) {
+			this.mean = new double[featureCount];
+			this.squaredDifferences = new double[featureCount];
+			this.sampleCount = 0;
+		}
+
+		/**
+		 * Adds one episode's discounted feature sums
+		 * @param featureSums
+		 */
+		public void add(double[] featureSums) {
+			++this.sampleCount;
+			for (int i = 0; i < this.mean.length; ++i) {
+				double difference = featureSums[i] - this.mean[i];
+				this.mean[i] += difference / this.sampleCount;
+				this.squaredDifferences[i] += difference * (featureSums[i] - this.mean[i]);
+			}
+		}
+
+		public int getSampleCount() {return this.sampleCount;}
+
+		/**
+		 * Returns the half width of the confidence interval around the feature expectation, measured as
+		 * the euclidean norm of the features' standard errors times a confidence score, like 1.96 for 95%.
+		 * It is infinite until two episodes have been added.
+		 * @param confidenceScore Number of standard errors the interval spans on each side
+		 * @return
+		 */
+		public double getConfidenceHalfWidth(double confidenceScore) {
+			if (this.sampleCount < 2) {
+				return Double.POSITIVE_INFINITY;
+			}
+			double varianceSum = 0.0;
+			for (double squaredDifference : this.squaredDifferences) {
+				varianceSum += squaredDifference;
+			}
+			varianceSum /= this.sampleCount - 1;
+			return confidenceScore * Math.sqrt(varianceSum / this.sampleCount);
+		}
+
+		public FeatureExpectationEstimate getEstimate() {
+			double[] variance = new double[this.mean.length];
+			if (this.sampleCount > 1) {
+				for (int i = 0; i < variance.length; ++i) {
+					variance[i] = this.squaredDifferences[i] / (this.sampleCount - 1);
+				}
+			}
+			return new FeatureExpectationEstimate(this.mean, variance, this.sampleCount);
+		}
+	}
+}
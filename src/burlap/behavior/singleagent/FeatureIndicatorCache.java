@@ -0,0 +1,203 @@
+package burlap.behavior.singleagent;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import burlap.behavior.statehashing.StateHashFactory;
+import burlap.behavior.statehashing.StateHashTuple;
+import burlap.oomdp.core.PropositionalFunction;
+import burlap.oomdp.core.State;
+
+/**
+ * Evaluates the features of states and remembers, for every hashed state, the indices of the
+ * features that were true. Revisiting a state then only costs a hash lookup instead of extracting its
+ * features again. It also keeps a table of discount factors, so summing discounted
+ * features along an episode does not need Math.pow at every step.
+ * 
+ * Lookups are safe to make from several threads at once, new states are added under a lock.
+ * @author brawner
+ *
+ */
+public class FeatureIndicatorCache {
+	private StateFeatureExtractor 				featureExtractor;
+	private StateHashFactory 					hashFactory;
+	private Map<StateHashTuple, Integer> 		stateIds;
+	private volatile int[][] 					activeFeatures;
+	private int 								stateCount;
+	private double 								gamma;
+	private volatile double[] 					discounts;
+
+	/**
+	 * Constructor doesn't evaluate anything, states are added as they are visited.
+	 * @param featureFunctions Feature functions which map states to features
+	 * @param hashFactory Hashing factory used to identify repeated states
+	 * @param gamma Discount factor gamma
+	 */
+	public FeatureIndicatorCache(PropositionalFunction[] featureFunctions, StateHashFactory hashFactory, double gamma) {
+		this(new PropositionalFeatureExtractor(featureFunctions), hashFactory, gamma);
+	}
+
+	/**
+	 * Constructor doesn't evaluate anything, states are added as they are visited.
+	 * @param featureExtractor Extractor which maps states to features
+	 * @param hashFactory Hashing factory used to identify repeated states
+	 * @param gamma Discount factor gamma
+	 */
+	public FeatureIndicatorCache(StateFeatureExtractor featureExtractor, StateHashFactory hashFactory, double gamma) {
+		this.featureExtractor = featureExtractor;
+		this.hashFactory = hashFactory;
+		this.stateIds = new ConcurrentHashMap<StateHashTuple, Integer>();
+		this.activeFeatures = new int[16][];
+		this.stateCount = 0;
+		this.gamma = gamma;
+		this.discounts = new double[]{1.0};
+	}
+
+	public int getFeatureCount() {
+		return this.featureExtractor.getFeatureCount();
+	}
+
+	public double getGamma() {
+		return this.gamma;
+	}
+
+	/**
+	 * Returns the number of distinct states that have been evaluated
+	 * @return
+	 */
+	public int getStateCount() {
+		return this.stateIds.size();
+	}
+
+	/**
+	 * Returns a dense id for this state. Ids are handed out in the order states are first seen, so they
+	 * can index arrays of per state values.
+	 * @param state State to identify
+	 * @return The id of the state
+	 */
+	public int getStateId(State state) {
+		StateHashTuple stateHashTuple = this.hashFactory.hashState(state);
+		Integer id = this.stateIds.get(stateHashTuple);
+		if (id == null) {
+			id = this.addState(stateHashTuple);
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the indices of the features which are true in this state. The returned array is shared
+	 * with the cache, so it must not be modified.
+	 * @param state State to evaluate
+	 * @return Sorted indices of the true features
+	 */
+	public int[] getActiveFeatures(State state) {
+		return this.getActiveFeatures(this.getStateId(state));
+	}
+
+	/**
+	 * Returns the indices of the features which are true in the state with this id.
+	 * @param stateId An id returned by getStateId
+	 * @return Sorted indices of the true features
+	 */
+	public int[] getActiveFeatures(int stateId) {
+		return this.activeFeatures[stateId];
+	}
+
+	/**
+	 * Returns gamma^step, extending the discount table if needed.
+	 * @param step Time step of the episode
+	 * @return The discount applied at this step
+	 */
+	public double getDiscount(int step) {
+		double[] discounts = this.discounts;
+		if (step >= discounts.length) {
+			discounts = this.extendDiscounts(step + 1);
+		}
+		return discounts[step];
+	}
+
+	/**
+	 * Adds the discounted features of a state sequence to a running sum.
+	 * @param states The states visited in an episode
+	 * @param featureSums Sums to add the discounted features to
+	 */
+	public void addDiscountedFeatures(List<State> states, double[] featureSums) {
+		this.addDiscountedFeatures(states, featureSums, states.size());
+	}
+
+	/**
+	 * Adds the discounted features of at most the first horizon states of a state sequence to a running
+	 * sum. States past the horizon aren't read, so lazily decoded episodes are only decoded up to it.
+	 * @param states The states visited in an episode
+	 * @param featureSums Sums to add the discounted features to
+	 * @param horizon Most states to add
+	 */
+	public void addDiscountedFeatures(List<State> states, double[] featureSums, int horizon) {
+		int stateCount = Math.min(states.size(), horizon);
+		double[] discounts = this.discounts;
+		if (stateCount > discounts.length) {
+			discounts = this.extendDiscounts(stateCount);
+		}
+		for (int i = 0; i < stateCount; ++i) {
+			double discount = discounts[i];
+			for (int index : this.getActiveFeatures(states.get(i))) {
+				featureSums[index] += discount;
+			}
+		}
+	}
+
+	/**
+	 * Calculates the Feature Expectations of a list of demonstrations
+	 * @param episodes List of demonstrations as EpisodeAnalysis objects
+	 * @return The Feature Expectations generated (double array that matches the number of features)
+	 */
+	public double[] estimateFeatureExpectation(List<EpisodeAnalysis> episodes) {
+		double[] featureExpectations = new double[this.featureExtractor.getFeatureCount()];
+		for (EpisodeAnalysis episodeAnalysis : episodes) {
+			this.addDiscountedFeatures(episodeAnalysis.stateSequence, featureExpectations);
+		}
+
+		// Normalize the feature expectation values
+		for (int i = 0; i < featureExpectations.length; ++i) {
+			featureExpectations[i] /= episodes.size();
+		}
+		return featureExpectations;
+	}
+
+	/**
+	 * Evaluates the features of a new state and gives it the next id. The features are stored before
+	 * the id is published, so any thread that finds the id can read them.
+	 * @param stateHashTuple
+	 * @return The id of the state
+	 */
+	private synchronized int addState(StateHashTuple stateHashTuple) {
+		Integer id = this.stateIds.get(stateHashTuple);
+		if (id != null) {
+			return id;
+		}
+		int[][] activeFeatures = this.activeFeatures;
+		if (this.stateCount == activeFeatures.length) {
+			activeFeatures = Arrays.copyOf(activeFeatures, 2 * activeFeatures.length);
+		}
+		activeFeatures[this.stateCount] = this.featureExtractor.getActiveFeatures(stateHashTuple.s);
+		this.activeFeatures = activeFeatures;
+		this.stateIds.put(stateHashTuple, this.stateCount);
+		return this.stateCount++;
+	}
+
+	private synchronized double[] extendDiscounts(int length) {
+		double[] discounts = this.discounts;
+		if (length <= discounts.length) {
+			return discounts;
+		}
+		int newLength = Math.max(length, 2 * discounts.length);
+		double[] newDiscounts = Arrays.copyOf(discounts, newLength);
+		for (int i = discounts.length; i < newLength; ++i) {
+			newDiscounts[i] = newDiscounts[i - 1] * this.gamma;
+		}
+		this.discounts = newDiscounts;
+		return newDiscounts;
+	}
+}
@@ -0,0 +1,147 @@
+package burlap.behavior.singleagent;
+
+import java.io.IOException;
+
+/**
+ * Timings and counts of a single apprenticeship learning iteration. Times are wall clock nanoseconds
+ * of each step. Counts the learner can't know, such as the sweeps of a planner that doesn't report
+ * them, are -1.
+ * @author brawner
+ *
+ */
+public class IterationMetrics {
+	private int 						iteration;
+	private double 						score;
+	private boolean 					converged;
+	private long 						weightSolveNanos;
+	private long 						rewardNanos;
+	private long 						planningNanos;
+	private long 						policyEvaluationNanos;
+	private int 						sweepCount;
+	private int 						stateCount;
+	private int 						rolloutCount;
+	private long 						allocatedBytes;
+	private IOException 				checkpointError;
+
+	/**
+	 * Constructor, counts start unknown and times start at 0
+	 * @param iteration Index of the iteration, starting at 0
+	 */
+	public IterationMetrics(int iteration) {
+		this.iteration = iteration;
+		this.score = Double.NaN;
+		this.converged = false;
+		this.sweepCount = -1;
+		this.stateCount = -1;
+		this.rolloutCount = -1;
+		this.allocatedBytes = -1;
+	}
+
+	public void setScore(double score) {this.score = score;}
+
+	public void setConverged(boolean converged) {this.converged = converged;}
+
+	public void setWeightSolveNanos(long nanos) {this.weightSolveNanos = nanos;}
+
+	public void setRewardNanos(long nanos) {this.rewardNanos = nanos;}
+
+	public void setPlanningNanos(long nanos) {this.planningNanos = nanos;}
+
+	public void setPolicyEvaluationNanos(long nanos) {this.policyEvaluationNanos = nanos;}
+
+	public void setSweepCount(int sweepCount) {this.sweepCount = sweepCount;}
+
+	public void setStateCount(int stateCount) {this.stateCount = stateCount;}
+
+	public void setRolloutCount(int rolloutCount) {this.rolloutCount = rolloutCount;}
+
+	public void setAllocatedBytes(long allocatedBytes) {this.allocatedBytes = allocatedBytes;}
+
+	public void setCheckpointError(IOException checkpointError) {this.checkpointError = checkpointError;}
+
+	public int getIteration() {return this.iteration;}
+
+	/**
+	 * The score t of the iteration's weights, the margin for the max margin method and the distance to
+	 * the projection for the projection method
+	 * @return
+	 */
+	public double getScore() {return this.score;}
+
+	/**
+	 * Whether the score fell below epsilon, in which case the iteration stopped after solving the weights
+	 * @return
+	 */
+	public boolean getConverged() {return this.converged;}
+
+	/**
+	 * Time spent solving the max margin QP or computing the projection
+	 * @return
+	 */
+	public long getWeightSolveNanos() {return this.weightSolveNanos;}
+
+	/**
+	 * Time spent building the reward function from the weights
+	 * @return
+	 */
+	public long getRewardNanos() {return this.rewardNanos;}
+
+	/**
+	 * Time spent planning for the new reward function
+	 * @return
+	 */
+	public long getPlanningNanos() {return this.planningNanos;}
+
+	/**
+	 * Time spent estimating the new policy's feature expectations. Sampled episodes are reduced to
+	 * features as they run, so this covers both the rollouts and the feature sums.
+	 * @return
+	 */
+	public long getPolicyEvaluationNanos() {return this.policyEvaluationNanos;}
+
+	/**
+	 * Value iteration sweeps taken by the planner, -1 if the planner doesn't report them
+	 * @return
+	 */
+	public int getSweepCount() {return this.sweepCount;}
+
+	/**
+	 * States enumerated by the planner, -1 if the planner doesn't report them
+	 * @return
+	 */
+	public int getStateCount() {return this.stateCount;}
+
+	/**
+	 * Episodes sampled to evaluate the policy, 0 if its feature expectations were solved exactly
+	 * @return
+	 */
+	public int getRolloutCount() {return this.rolloutCount;}
+
+	/**
+	 * Bytes allocated during the iteration by the learner's thread and by episodes sampled on a rollout
+	 * executor's threads, -1 if the JVM doesn't count them. Allocations made by a planning pool's sweeps
+	 * aren't included.
+	 * @return
+	 */
+	public long getAllocatedBytes() {return this.allocatedBytes;}
+
+	/**
+	 * The error writing or removing the request's checkpoint at the end of the iteration, null if it
+	 * succeeded or no checkpoint was due. Learning carries on from a failed checkpoint.
+	 * @return
+	 */
+	public IOException getCheckpointError() {return this.checkpointError;}
+
+	public long getTotalNanos() {
+		return this.weightSolveNanos + this.rewardNanos + this.planningNanos + this.policyEvaluationNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "iteration " + this.iteration + ", t " + this.score + ", solve " + this.weightSolveNanos / 1000000 +
+				"ms, reward " + this.rewardNanos / 1000000 + "ms, plan " + this.planningNanos / 1000000 +
+				"ms, evaluate " + this.policyEvaluationNanos / 1000000 + "ms, sweeps " + this.sweepCount +
+				", states " + this.stateCount + ", rollouts " + this.rolloutCount + ", allocated " + this.allocatedBytes +
+				((this.checkpointError == null) ? "" : ", checkpoint failed: " + this.checkpointError.getMessage());
+	}
+}
@@ -0,0 +1,75 @@
+package burlap.behavior.singleagent;
+
+import java.util.Arrays;
+
+import burlap.oomdp.core.State;
+import burlap.oomdp.singleagent.GroundedAction;
+import burlap.oomdp.singleagent.RewardFunction;
+
+/**
+ * Reward function R(s) = w^T phi(s) over the features of a FeatureIndicatorCache. The reward of a
+ * state is computed the first time it is asked for and stored in an array indexed by the cache's
+ * state ids, so planners and rollouts which revisit states only pay for the state lookup. Rewards
+ * may be read from several threads, a state evaluated by two threads at once just gets the same value
+ * written twice.
+ * @author brawner
+ *
+ */
+public class LinearFeatureRewardFunction implements RewardFunction {
+	private FeatureIndicatorCache 			featureCache;
+	private double[] 						weights;
+	private volatile double[] 				stateRewards;
+
+	/**
+	 * Constructor
+	 * @param featureCache Feature cache which maps states to their true features
+	 * @param weights The weight given to each feature
+	 */
+	public LinearFeatureRewardFunction(FeatureIndicatorCache featureCache, double[] weights) {
+		this.featureCache = featureCache;
+		this.weights = weights.clone();
+		this.stateRewards = new double[0];
+	}
+
+	public double[] getWeights() {
+		return this.weights.clone();
+	}
+
+	@Override
+	public double reward(State s, GroundedAction a, State sprime) {
+		return this.reward(this.featureCache.getStateId(s));
+	}
+
+	/**
+	 * Returns the reward of a state given its id in the feature cache
+	 * @param stateId
+	 * @return w^T phi(s)
+	 */
+	public double reward(int stateId) {
+		double[] stateRewards = this.stateRewards;
+		if (stateId >= stateRewards.length) {
+			stateRewards = this.extendRewards(Math.max(stateId + 1, this.featureCache.getStateCount()));
+		}
+		double reward = stateRewards[stateId];
+		if (Double.isNaN(reward)) {
+			reward = 0;
+			for (int index : this.featureCache.getActiveFeatures(stateId)) {
+				reward += this.weights[index];
+			}
+			stateRewards[stateId] = reward;
+		}
+		return reward;
+	}
+
+	private synchronized double[] extendRewards(int length) {
+		double[] stateRewards = this.stateRewards;
+		if (length <= stateRewards.length) {
+			return stateRewards;
+		}
+		int newLength = Math.max(length, 2 * stateRewards.length);
+		double[] newRewards = Arrays.copyOf(stateRewards, newLength);
+		Arrays.fill(newRewards, stateRewards.length, newLength, Double.NaN);
+		this.stateRewards = newRewards;
+		return newRewards;
+	}
+}
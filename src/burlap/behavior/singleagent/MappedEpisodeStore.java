@@ -0,0 +1,185 @@
+package burlap.behavior.singleagent;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import burlap.oomdp.core.Domain;
+import burlap.oomdp.core.State;
+import burlap.oomdp.singleagent.GroundedAction;
+
+/**
+ * The episodes of a file written by EpisodeFileWriter, read through a memory mapping of the file.
+ * Episodes are views of the mapped bytes whose states, actions and rewards are decoded each time
+ * they are read, so a set of demonstrations much larger than the heap can be passed to an
+ * ApprenticeshipLearningRequest and streamed through when computing its feature expectation. The
+ * request keeps the store as it is rather than copying it.
+ *
+ * The store and its episodes can't be modified, and can be read from several threads. Files larger
+ * than one mapping can address are mapped in several segments, split between episodes.
+ * @author brawner
+ *
+ */
+public class MappedEpisodeStore extends AbstractList<EpisodeAnalysis> implements RandomAccess {
+	private static final long 					MAXSEGMENTSIZE = 1L << 30;
+
+	private StateRecordCodec 					codec;
+	private GroundedAction[] 					groundedActions;
+	private MappedByteBuffer[] 					segments;
+	private int[] 								episodeSegments;
+	private int[] 								episodePositions;
+
+	/**
+	 * Maps a file of episodes
+	 * @param file
+	 * @param domain Domain of the episodes
+	 * @param codec Codec the file's states were written with
+	 * @throws IOException If the file can't be mapped or isn't an episode file written with a codec of
+	 * this size
+	 */
+	public MappedEpisodeStore(File file, Domain domain, StateRecordCodec codec) throws IOException {
+		this.codec = codec;
+		EpisodeFileReader reader = new EpisodeFileReader(file, domain, codec);
+		try {
+			int episodeCount = reader.getEpisodeCount();
+			this.groundedActions = reader.getGroundedActions();
+			this.episodeSegments = new int[episodeCount];
+			this.episodePositions = new int[episodeCount];
+
+			// segments start at an episode and take as many whole episodes as fit
+			List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+			FileChannel channel = reader.getChannel();
+			int first = 0;
+			while (first < episodeCount) {
+				long start = reader.getOffset(first);
+				int end = first;
+				while (end < episodeCount && reader.getOffset(end + 1) - start <= MAXSEGMENTSIZE) {
+					this.episodeSegments[end] = segments.size();
+					this.episodePositions[end] = (int)(reader.getOffset(end) - start);
+					++end;
+				}
+				if (end == first) {
+					throw new IOException("Episode " + first + " of " + file + " is too large to map");
+				}
+				segments.add(channel.map(FileChannel.MapMode.READ_ONLY, start, reader.getOffset(end) - start));
+				first = end;
+			}
+			this.segments = segments.toArray(new MappedByteBuffer[segments.size()]);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Returns a view of an episode, which decodes its states as they are read
+	 */
+	@Override
+	public EpisodeAnalysis get(int episode) {
+		ByteBuffer segment = this.segments[this.episodeSegments[episode]];
+		return new MappedEpisode(segment, this.episodePositions[episode]);
+	}
+
+	@Override
+	public int size() {
+		return this.episodePositions.length;
+	}
+
+	/**
+	 * Returns the number of states in an episode, without creating a view of it
+	 * @param episode
+	 * @return
+	 */
+	public int getStepCount(int episode) {
+		return this.segments[this.episodeSegments[episode]].getInt(this.episodePositions[episode]);
+	}
+
+	/**
+	 * An episode whose sequences are read only lists over the mapped bytes. Adding to it or recording
+	 * transitions throws an UnsupportedOperationException.
+	 */
+	private class MappedEpisode extends EpisodeAnalysis {
+		private final ByteBuffer 				segment;
+		private final int 						stepCount;
+		private final int 						statesPosition;
+		private final int 						actionsPosition;
+		private final int 						rewardsPosition;
+
+		public MappedEpisode(ByteBuffer segment, int position) {
+			this.segment = segment;
+			this.stepCount = segment.getInt(position);
+			int transitionCount = Math.max(0, this.stepCount - 1);
+			this.statesPosition = position + 4;
+			this.actionsPosition = this.statesPosition + this.stepCount * MappedEpisodeStore.this.codec.getRecordSize();
+			this.rewardsPosition = this.actionsPosition + 2 * transitionCount;
+			this.stateSequence = new StateList();
+			this.actionSequence = new ActionList(transitionCount);
+			this.rewardSequence = new RewardList(transitionCount);
+		}
+
+		private class StateList extends AbstractList<State> implements RandomAccess {
+			@Override
+			public State get(int t) {
+				if (t < 0 || t >= MappedEpisode.this.stepCount) {
+					throw new IndexOutOfBoundsException("State " + t + " of " + MappedEpisode.this.stepCount);
+				}
+				// each read has its own position, so views can be read from several threads
+				ByteBuffer record = MappedEpisode.this.segment.duplicate();
+				record.position(MappedEpisode.this.statesPosition + t * MappedEpisodeStore.this.codec.getRecordSize());
+				return MappedEpisodeStore.this.codec.decode(record);
+			}
+
+			@Override
+			public int size() {
+				return MappedEpisode.this.stepCount;
+			}
+		}
+
+		private class ActionList extends AbstractList<GroundedAction> implements RandomAccess {
+			private final int 					size;
+
+			public ActionList(int size) {
+				this.size = size;
+			}
+
+			@Override
+			public GroundedAction get(int t) {
+				if (t < 0 || t >= this.size) {
+					throw new IndexOutOfBoundsException("Action " + t + " of " + this.size);
+				}
+				return MappedEpisodeStore.this.groundedActions[MappedEpisode.this.segment.getShort(MappedEpisode.this.actionsPosition + 2 * t)];
+			}
+
+			@Override
+			public int size() {
+				return this.size;
+			}
+		}
+
+		private class RewardList extends AbstractList<Double> implements RandomAccess {
+			private final int 					size;
+
+			public RewardList(int size) {
+				this.size = size;
+			}
+
+			@Override
+			public Double get(int t) {
+				if (t < 0 || t >= this.size) {
+					throw new IndexOutOfBoundsException("Reward " + t + " of " + this.size);
+				}
+				return MappedEpisode.this.segment.getDouble(MappedEpisode.this.rewardsPosition + 8 * t);
+			}
+
+			@Override
+			public int size() {
+				return this.size;
+			}
+		}
+	}
+}
@@ -0,0 +1,168 @@
+package burlap.behavior.singleagent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import burlap.behavior.singleagent.ApprenticeshipLearning.FeatureWeights;
+
+import com.joptimizer.functions.ConvexMultivariateRealFunction;
+import com.joptimizer.functions.LinearMultivariateRealFunction;
+import com.joptimizer.functions.PSDQuadraticMultivariateRealFunction;
+import com.joptimizer.optimizers.JOptimizer;
+import com.joptimizer.optimizers.OptimizationRequest;
+import com.joptimizer.optimizers.OptimizationResponse;
+import com.joptimizer.util.Utils;
+
+/**
+ * Solves step 2 of the max margin method, t = max_w min_j (wT (uE - u^(j))) with ||w||_2 <= 1, as a
+ * quadratically constrained program over x = {w0, w1, ... , wn, t}.
+ *
+ * The solver lives for a whole apprenticeship learning run. Each new policy's feature expectations
+ * add one constraint to the set kept from earlier iterations, and each solve starts from a strictly
+ * feasible point built from the previous solution. Because that point is feasible, JOptimizer skips its
+ * phase I search, and a few Newton steps are usually enough.
+ * @author brawner
+ *
+ */
+public class MaxMarginQPSolver implements MaxMarginSolver {
+	// Shrinks the previous weights so the starting point is strictly inside the norm constraint
+	private static final double 							WARM_START_SHRINK = 0.99;
+
+	private double[] 										expertExpectations;
+	private List<double[]> 									expertDifferences;
+	private List<ConvexMultivariateRealFunction> 			constraints;
+	private LinearMultivariateRealFunction 					objectiveFunction;
+	private double[] 										lastWeights;
+	private double 											tolerance;
+
+	/**
+	 * Constructor sets up the objective and the norm constraint, feature expectations are added as
+	 * policies are evaluated.
+	 * @param expertExpectations Feature Expectations calculated from the expert demonstrations
+	 */
+	public MaxMarginQPSolver(double[] expertExpectations) {
+		this.expertExpectations = expertExpectations.clone();
+		this.expertDifferences = new ArrayList<double[]>();
+		this.constraints = new ArrayList<ConvexMultivariateRealFunction>();
+		this.tolerance = ApprenticeshipLearningRequest.DEFAULT_SOLVERTOLERANCE;
+		int weightsSize = expertExpectations.length;
+
+		// The objective is to maximize t, or minimize -t
+		double[] qObjective = new double[weightsSize + 1];
+		qObjective[weightsSize] = -1;
+		this.objectiveFunction = new LinearMultivariateRealFunction(qObjective, 0);
+
+		// L2 norm of weights must be less than or equal to 1. So
+		// P = Identity, except for the last entry (which cancels t).
+		double[][] identityMatrix = Utils.createConstantDiagonalMatrix(weightsSize + 1, 1);
+		identityMatrix[weightsSize][weightsSize] = 0;
+		this.constraints.add(new PSDQuadraticMultivariateRealFunction(identityMatrix, null, -0.5));
+	}
+
+	/**
+	 * Sets the tolerance and feasibility tolerance given to JOptimizer
+	 */
+	@Override
+	public void setTolerance(double tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	public double getTolerance() {
+		return this.tolerance;
+	}
+
+	/**
+	 * Returns the number of policy feature expectations constraining the weights
+	 * @return
+	 */
+	public int getConstraintCount() {
+		return this.expertDifferences.size();
+	}
+
+	/**
+	 * Adds the constraint wT * uE >= wT * u(j) + t for a new policy's feature expectations
+	 */
+	@Override
+	public void addFeatureExpectations(double[] featureExpectations) {
+		int weightsSize = this.expertExpectations.length;
+
+		// (1/2)xT * Pi * x + qiT + ri <= 0
+		// Equation (11) wT * uE >= wT * u(j) + t ===>  (u(j) - uE)T * w + t <= 0
+		// Because x = {w0, w1, ... , wn, t}, we can set
+		// qi = {u(j)_1 - uE_1, ... , u(j)_n - uE_n, 1}
+		double[] difference = new double[weightsSize + 1];
+		double[] expertDifference = new double[weightsSize];
+		for (int i = 0; i < weightsSize; ++i) {
+			difference[i] = featureExpectations[i] - this.expertExpectations[i];
+			expertDifference[i] = -difference[i];
+		}
+		difference[weightsSize] = 1;
+		this.constraints.add(new LinearMultivariateRealFunction(difference, 0));
+		this.expertDifferences.add(expertDifference);
+	}
+
+	@Override
+	public FeatureWeights solve() {
+		if (this.expertDifferences.isEmpty()) {
+			throw new IllegalStateException("No policy feature expectations have been added");
+		}
+		int weightsSize = this.expertExpectations.length;
+
+		OptimizationRequest optimizationRequest = new OptimizationRequest();
+		optimizationRequest.setF0(this.objectiveFunction);
+		optimizationRequest.setFi(this.constraints.toArray(
+				new ConvexMultivariateRealFunction[this.constraints.size()]));
+		optimizationRequest.setInitialPoint(this.getInitialPoint());
+		optimizationRequest.setCheckKKTSolutionAccuracy(false);
+		optimizationRequest.setTolerance(this.tolerance);
+		optimizationRequest.setToleranceFeas(this.tolerance);
+
+		JOptimizer optimizer = new JOptimizer();
+		optimizer.setOptimizationRequest(optimizationRequest);
+		try {
+			optimizer.optimize();
+		} catch (Exception e) {
+			throw new RuntimeException("Solving the max margin QP failed", e);
+		}
+		OptimizationResponse optimizationResponse = optimizer.getOptimizationResponse();
+		double[] solution = optimizationResponse.getSolution();
+		if (optimizationResponse.getReturnCode() == OptimizationResponse.FAILED || solution == null) {
+			throw new RuntimeException("Solving the max margin QP failed, the optimizer found no solution");
+		}
+
+		double[] weights = Arrays.copyOfRange(solution, 0, weightsSize);
+		double score = solution[weightsSize];
+		this.lastWeights = weights;
+		return new FeatureWeights(weights, score);
+	}
+
+	/**
+	 * Builds a strictly feasible starting point from the last solution. The weights are shrunk inside
+	 * the unit ball, and t is set one below the smallest margin those weights achieve.
+	 * @return x = {w0, w1, ... , wn, t}
+	 */
+	private double[] getInitialPoint() {
+		int weightsSize = this.expertExpectations.length;
+		double[] initialPoint = new double[weightsSize + 1];
+		if (this.lastWeights != null) {
+			for (int i = 0; i < weightsSize; ++i) {
+				initialPoint[i] = WARM_START_SHRINK * this.lastWeights[i];
+			}
+		}
+
+		double minMargin = 0.0;
+		for (int j = 0; j < this.expertDifferences.size(); ++j) {
+			double[] expertDifference = this.expertDifferences.get(j);
+			double margin = 0.0;
+			for (int i = 0; i < weightsSize; ++i) {
+				margin += initialPoint[i] * expertDifference[i];
+			}
+			minMargin = (j == 0) ? margin : Math.min(minMargin, margin);
+		}
+
+		// Constraints are (u(j) - uE)T * w + t <= 0, so t must sit strictly below minMargin
+		initialPoint[weightsSize] = minMargin - 1.0;
+		return initialPoint;
+	}
+}
@@ -0,0 +1,33 @@
+package burlap.behavior.singleagent;
+
+import burlap.behavior.singleagent.ApprenticeshipLearning.FeatureWeights;
+
+/**
+ * Solves step 2 of the max margin method, t = max_w min_j (wT (uE - u^(j))) with ||w||_2 <= 1. A solver
+ * is kept for a whole apprenticeship learning run, and the feature expectations of each new policy are
+ * added to it as they are evaluated.
+ * @author brawner
+ *
+ */
+public interface MaxMarginSolver {
+
+	/**
+	 * Sets the tolerance the weights are solved to
+	 * @param tolerance
+	 */
+	void setTolerance(double tolerance);
+
+	/**
+	 * Adds the feature expectations of a newly evaluated policy
+	 * @param featureExpectations Feature Expectations of the policy
+	 */
+	void addFeatureExpectations(double[] featureExpectations);
+
+	/**
+	 * Solves for the weights that maximize the margin over all feature expectations added so far.
+	 * @return The weights and their score t
+	 * @throws IllegalStateException If no feature expectations have been added
+	 * @throws RuntimeException If the solver fails to find the weights
+	 */
+	FeatureWeights solve();
+}
@@ -0,0 +1,302 @@
+package burlap.behavior.singleagent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import burlap.behavior.singleagent.ApprenticeshipLearning.FeatureWeights;
+
+/**
+ * Solves the max margin step through its dual. With d^(j) = uE - u^(j), the best margin
+ * max_w min_j (wT d^(j)) over ||w||_2 <= 1 is the norm of p, the point of the convex hull of the
+ * d^(j) closest to the origin, and the best weights are w = p / ||p||. When the origin is inside the
+ * hull no weights separate the expert and the margin is 0.
+ *
+ * p is found with pairwise Frank-Wolfe, which shifts weight from the hull vertex p leans on most to
+ * the vertex it leans on least. Every step only reads a row of the Gram matrix of the d^(j), and
+ * doesn't depend on the number of features. The hull weights are kept between solves. A new policy's
+ * point starts with no weight, so the previous p is still a valid start and only a few steps are
+ * needed to account for it. The d^(j) are stored as sparse vectors, so with many mostly inactive
+ * features the Gram products and p only cost the entries that are non zero.
+ *
+ * Only an active set of at most maxActivePoints points is kept. When a converged solve leaves more,
+ * points with no weight that p doesn't lean toward, pT d^(j) >= pT p, don't move p and are dropped
+ * along with their Gram rows, those p leans away from most first. Points with weight are never
+ * dropped, but p needs at most one more of them than there are features and pairwise steps take
+ * points' weight to zero as they go, so the cost of adding a point and of each step stays bounded
+ * however many policies have been evaluated. A dropped point's
+ * constraint isn't checked again, and can matter again once later points move p, so after the first
+ * drop the score is the margin over the active points. It is never below the margin over every
+ * policy, so learning never stops early because of it.
+ * @author brawner
+ *
+ */
+public class MinNormPointSolver implements MaxMarginSolver {
+	public static final int 				DEFAULT_MAXSTEPS = 10000;
+	public static final int 				DEFAULT_MAXACTIVEPOINTS = 64;
+
+	private double[] 						expertExpectations;
+	private SparseFeatureVector[] 			points;
+	private double[][] 						gram;
+	private double[] 						hullWeights;
+	private double[] 						pointProducts;
+	private int 							pointCount;
+	private int 							addedCount;
+	private double 							tolerance;
+	private int 							maxSteps;
+	private int 							maxActivePoints;
+	private int 							lastStepCount;
+
+	/**
+	 * Constructor, feature expectations are added as policies are evaluated.
+	 * @param expertExpectations Feature Expectations calculated from the expert demonstrations
+	 */
+	public MinNormPointSolver(double[] expertExpectations) {
+		this.expertExpectations = expertExpectations.clone();
+		this.points = new SparseFeatureVector[8];
+		this.gram = new double[8][8];
+		this.hullWeights = new double[8];
+		this.pointProducts = new double[8];
+		this.pointCount = 0;
+		this.addedCount = 0;
+		this.tolerance = ApprenticeshipLearningRequest.DEFAULT_SOLVERTOLERANCE;
+		this.maxSteps = MinNormPointSolver.DEFAULT_MAXSTEPS;
+		this.maxActivePoints = MinNormPointSolver.DEFAULT_MAXACTIVEPOINTS;
+		this.lastStepCount = 0;
+	}
+
+	/**
+	 * Sets the Frank-Wolfe duality gap, pT (p - d^(j)) for the least leaned on vertex, at which solving
+	 * stops
+	 */
+	@Override
+	public void setTolerance(double tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Sets the maximum number of Frank-Wolfe steps a solve may take
+	 * @param maxSteps
+	 */
+	public void setMaxSteps(int maxSteps) {
+		this.maxSteps = maxSteps;
+	}
+
+	/**
+	 * Sets the number of points kept in the active set before points that don't move p are dropped
+	 * @param maxActivePoints
+	 */
+	public void setMaxActivePoints(int maxActivePoints) {
+		this.maxActivePoints = maxActivePoints;
+	}
+
+	/**
+	 * Returns the number of Frank-Wolfe steps the last solve took
+	 * @return
+	 */
+	public int getLastStepCount() {
+		return this.lastStepCount;
+	}
+
+	/**
+	 * Returns the number of points in the active set
+	 * @return
+	 */
+	public int getActivePointCount() {
+		return this.pointCount;
+	}
+
+	/**
+	 * Returns the number of feature expectations added, including the points which have been dropped
+	 * from the active set
+	 * @return
+	 */
+	public int getAddedCount() {
+		return this.addedCount;
+	}
+
+	@Override
+	public void addFeatureExpectations(double[] featureExpectations) {
+		if (this.pointCount == this.points.length) {
+			this.grow();
+		}
+		int newIndex = this.pointCount;
+		double[] difference = new double[this.expertExpectations.length];
+		for (int i = 0; i < difference.length; ++i) {
+			difference[i] = this.expertExpectations[i] - featureExpectations[i];
+		}
+		SparseFeatureVector point = SparseFeatureVector.fromDense(difference);
+		this.points[newIndex] = point;
+
+		// p doesn't move when a point joins with no weight, so only the new point's product is needed
+		this.hullWeights[newIndex] = 0.0;
+		double product = 0.0;
+		for (int j = 0; j <= newIndex; ++j) {
+			double gramProduct = this.points[j].dot(point);
+			this.gram[j][newIndex] = gramProduct;
+			this.gram[newIndex][j] = gramProduct;
+			product += this.hullWeights[j] * gramProduct;
+		}
+
+		// The first point is the whole hull, later points join with no weight
+		if (newIndex == 0) {
+			this.hullWeights[newIndex] = 1.0;
+			product = this.gram[newIndex][newIndex];
+		}
+		this.pointProducts[newIndex] = product;
+		++this.pointCount;
+		++this.addedCount;
+	}
+
+	@Override
+	public FeatureWeights solve() {
+		if (this.pointCount == 0) {
+			throw new IllegalStateException("No policy feature expectations have been added");
+		}
+		double[] lambda = this.hullWeights;
+		double[] products = this.pointProducts;
+
+		int step = 0;
+		for (step = 0; step < this.maxSteps; ++step) {
+			// products[j] = pT d^(j), so pT p = sum_j lambda_j * products[j]
+			double normSquared = 0.0;
+			int toward = 0;
+			int away = -1;
+			for (int j = 0; j < this.pointCount; ++j) {
+				normSquared += lambda[j] * products[j];
+				if (products[j] < products[toward]) {
+					toward = j;
+				}
+				if (lambda[j] > 0 && (away == -1 || products[j] > products[away])) {
+					away = j;
+				}
+			}
+			if (normSquared - products[toward] <= this.tolerance || toward == away) {
+				break;
+			}
+
+			// Move weight from the away vertex to the toward vertex, minimizing ||p||^2 along that line
+			double[] towardRow = this.gram[toward];
+			double[] awayRow = this.gram[away];
+			double curvature = towardRow[toward] - 2 * towardRow[away] + awayRow[away];
+			if (curvature <= 0) {
+				break;
+			}
+			double stepSize = Math.min((products[away] - products[toward]) / curvature, lambda[away]);
+			lambda[toward] += stepSize;
+			lambda[away] -= stepSize;
+			if (lambda[away] < 1e-15) {
+				lambda[away] = 0.0;
+			}
+			for (int j = 0; j < this.pointCount; ++j) {
+				products[j] += stepSize * (towardRow[j] - awayRow[j]);
+			}
+		}
+		this.lastStepCount = step;
+		if (step < this.maxSteps && this.pointCount > this.maxActivePoints) {
+			this.dropInactivePoints();
+		}
+
+		double[] minNormPoint = new double[this.expertExpectations.length];
+		for (int j = 0; j < this.pointCount; ++j) {
+			if (lambda[j] > 0) {
+				this.points[j].addTo(minNormPoint, lambda[j]);
+			}
+		}
+		double norm = 0.0;
+		for (double value : minNormPoint) {
+			norm += value * value;
+		}
+		norm = Math.sqrt(norm);
+		if (Double.isNaN(norm)) {
+			throw new RuntimeException("Solving for the min norm point failed, its norm is not a number");
+		}
+		if (norm * norm <= this.tolerance) {
+			return new FeatureWeights(new double[minNormPoint.length], 0.0);
+		}
+
+		// The score is the margin these weights actually achieve, which is ||p|| once converged
+		double[] weights = new double[minNormPoint.length];
+		for (int i = 0; i < weights.length; ++i) {
+			weights[i] = minNormPoint[i] / norm;
+		}
+		double minProduct = products[0];
+		for (int j = 1; j < this.pointCount; ++j) {
+			minProduct = Math.min(minProduct, products[j]);
+		}
+		return new FeatureWeights(weights, minProduct / norm);
+	}
+
+	/**
+	 * Drops points with no weight whose product with p is at least pT p, largest product first, until
+	 * the active set is back down to maxActivePoints or no such points are left. The active set and its
+	 * Gram matrix are compacted in place.
+	 */
+	private void dropInactivePoints() {
+		final double[] lambda = this.hullWeights;
+		final double[] products = this.pointProducts;
+		double normSquared = 0.0;
+		for (int j = 0; j < this.pointCount; ++j) {
+			normSquared += lambda[j] * products[j];
+		}
+
+		List<Integer> droppable = new ArrayList<Integer>();
+		for (int j = 0; j < this.pointCount; ++j) {
+			if (lambda[j] <= 0 && products[j] >= normSquared) {
+				droppable.add(j);
+			}
+		}
+		if (droppable.isEmpty()) {
+			return;
+		}
+		Collections.sort(droppable, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer first, Integer second) {
+				return Double.compare(products[second], products[first]);
+			}
+		});
+		boolean[] dropped = new boolean[this.pointCount];
+		int dropCount = Math.min(droppable.size(), this.pointCount - this.maxActivePoints);
+		for (int i = 0; i < dropCount; ++i) {
+			dropped[droppable.get(i)] = true;
+		}
+
+		int[] kept = new int[this.pointCount];
+		int keptCount = 0;
+		for (int j = 0; j < this.pointCount; ++j) {
+			if (!dropped[j]) {
+				kept[keptCount++] = j;
+			}
+		}
+
+		for (int j = 0; j < keptCount; ++j) {
+			int from = kept[j];
+			this.points[j] = this.points[from];
+			lambda[j] = lambda[from];
+			products[j] = products[from];
+			double[] fromRow = this.gram[from];
+			double[] row = this.gram[j];
+			for (int k = 0; k < keptCount; ++k) {
+				row[k] = fromRow[kept[k]];
+			}
+		}
+		for (int j = keptCount; j < this.pointCount; ++j) {
+			this.points[j] = null;
+		}
+		this.pointCount = keptCount;
+	}
+
+	private void grow() {
+		int capacity = 2 * this.points.length;
+		this.points = Arrays.copyOf(this.points, capacity);
+		this.hullWeights = Arrays.copyOf(this.hullWeights, capacity);
+		this.pointProducts = Arrays.copyOf(this.pointProducts, capacity);
+		double[][] gram = new double[capacity][];
+		for (int j = 0; j < capacity; ++j) {
+			gram[j] = (j < this.gram.length) ? Arrays.copyOf(this.gram[j], capacity) : new double[capacity];
+		}
+		this.gram = gram;
+	}
+}
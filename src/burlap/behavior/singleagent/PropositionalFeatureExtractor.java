@@ -0,0 +1,39 @@
+package burlap.behavior.singleagent;
+
+import burlap.oomdp.core.PropositionalFunction;
+import burlap.oomdp.core.State;
+
+/**
+ * Feature extractor over an array of parameterless PropositionalFunctions, feature i is true when
+ * function i is. Every function is tested for every state.
+ * @author brawner
+ *
+ */
+public class PropositionalFeatureExtractor implements StateFeatureExtractor {
+	private static final String[]				NO_PARAMETERS = new String[]{};
+
+	private PropositionalFunction[] 			featureFunctions;
+
+	public PropositionalFeatureExtractor(PropositionalFunction[] featureFunctions) {
+		this.featureFunctions = featureFunctions.clone();
+	}
+
+	@Override
+	public int getFeatureCount() {
+		return this.featureFunctions.length;
+	}
+
+	@Override
+	public int[] getActiveFeatures(State state) {
+		int count = 0;
+		int[] trueFeatures = new int[this.featureFunctions.length];
+		for (int i = 0; i < this.featureFunctions.length; ++i) {
+			if (this.featureFunctions[i].isTrue(state, NO_PARAMETERS)) {
+				trueFeatures[count++] = i;
+			}
+		}
+		int[] indices = new int[count];
+		System.arraycopy(trueFeatures, 0, indices, 0, count);
+		return indices;
+	}
+}
@@ -1,28 +1,96 @@
 package burlap.behavior.singleagent;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
-import burlap.behavior.singleagent.auxiliary.StateReachability;
-import burlap.behavior.statehashing.NameDependentStateHashFactory;
-import burlap.behavior.statehashing.StateHashFactory;
+import burlap.behavior.statehashing.StateIndexer;
 import burlap.oomdp.auxiliary.StateGenerator;
-import burlap.oomdp.core.Domain;
 import burlap.oomdp.core.State;
 import burlap.oomdp.singleagent.SADomain;
 
-
+/**
+ * Generates states uniformly from those reachable from a seed state. The reachable states are found
+ * the first time a state is generated, and come from the shared ReachableStateCache, so generators
+ * made for the same domain and seed state only search the domain once. With a StateIndexer the
+ * generator samples a state index and creates the state from it, instead of holding every state.
+ * @author brawner
+ *
+ */
 public class RandomStartStateGenerator implements StateGenerator {
-	private List<State> reachableStates;
-	private Random 		random;
+	private SADomain 					domain;
+	private State 						seedState;
+	private StateIndexer 				indexer;
+	private List<State> 				reachableStates;
+	private int[] 						reachableIndices;
+	private Random 						random;
 	
 	public RandomStartStateGenerator(SADomain domain, State seedState) {
-		StateHashFactory hashFactory = new NameDependentStateHashFactory();
-		this.reachableStates = StateReachability.getReachableStates(seedState, domain, hashFactory);
+		this(domain, seedState, null);
+	}
+	
+	/**
+	 * Constructor for domains whose states can be indexed
+	 * @param domain
+	 * @param seedState
+	 * @param indexer Indexer which can index every state reachable from the seed state, or null to
+	 * keep the reachable states themselves
+	 */
+	public RandomStartStateGenerator(SADomain domain, State seedState, StateIndexer indexer) {
+		this.domain = domain;
+		this.seedState = seedState.copy();
+		this.indexer = indexer;
 		this.random = new Random();
 	}
 
+	/**
+	 * Reseeds the generator, so the states it generates from now on can be reproduced
+	 * @param seed
+	 */
+	public void setSeed(long seed) {
+		this.random.setSeed(seed);
+	}
+
 	@Override
 	public State generateState() {
-		return this.reachableStates.get(this.random.nextInt(this.reachableStates.size()));
+		if (this.indexer != null) {
+			int[] indices = this.getReachableIndices();
+			return this.indexer.getState(indices[this.random.nextInt(indices.length)]);
+		}
+		// The cached states are shared with other generators, so callers get their own copy
+		List<State> states = this.getStates();
+		return states.get(this.random.nextInt(states.size())).copy();
+	}
+	
+	/**
+	 * Returns the states this generator samples from, each is generated with equal probability. Without
+	 * an indexer the states are the cached ones, shared with other generators, so they must not be
+	 * modified.
+	 * @return
+	 */
+	public List<State> getReachableStates() {
+		if (this.indexer == null) {
+			return new ArrayList<State>(this.getStates());
+		}
+		int[] indices = this.getReachableIndices();
+		List<State> states = new ArrayList<State>(indices.length);
+		for (int index : indices) {
+			states.add(this.indexer.getState(index));
+		}
+		return states;
+	}
+	
+	private List<State> getStates() {
+		if (this.reachableStates == null) {
+			this.reachableStates = ReachableStateCache.getShared().getReachableStates(this.domain, this.seedState);
+		}
+		return this.reachableStates;
+	}
+	
+	private int[] getReachableIndices() {
+		if (this.reachableIndices == null) {
+			this.reachableIndices = 
+					ReachableStateCache.getShared().getReachableIndices(this.domain, this.seedState, this.indexer);
+		}
+		return this.reachableIndices;
 	}
 }
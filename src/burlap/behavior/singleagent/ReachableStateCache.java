@@ -0,0 +1,238 @@
+package burlap.behavior.singleagent;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import burlap.behavior.singleagent.auxiliary.StateReachability;
+import burlap.behavior.statehashing.NameDependentStateHashFactory;
+import burlap.behavior.statehashing.StateHashFactory;
+import burlap.behavior.statehashing.StateHashTuple;
+import burlap.behavior.statehashing.StateIndexer;
+import burlap.oomdp.core.State;
+import burlap.oomdp.core.TransitionProbability;
+import burlap.oomdp.singleagent.Action;
+import burlap.oomdp.singleagent.GroundedAction;
+import burlap.oomdp.singleagent.SADomain;
+
+/**
+ * Caches the states reachable from a seed state, so the breadth first search of a domain is only run
+ * once however many start state generators are made for it. Entries are keyed by the domain object
+ * and the seed state's hash. The cache is thread safe, and when several threads ask for the same
+ * entry only one of them searches while the others wait for its result.
+ *
+ * Cached states point back to their domain, so the cache holds on to every domain it has an entry
+ * for. It keeps at most a fixed number of entries and drops the least recently used one when a new
+ * search is added, so the domains of finished experiments can be collected.
+ *
+ * States can be kept either as a list of full states, or for domains with a StateIndexer as an array
+ * of state indices. The indexed search only keeps one bit per index and a queue of ints, creating each
+ * state while it is expanded, so much larger state spaces fit in memory.
+ * @author brawner
+ *
+ */
+public class ReachableStateCache {
+	public static final int 					DEFAULT_MAXENTRIES = 8;
+
+	private static final ReachableStateCache 	SHARED = new ReachableStateCache();
+
+	private StateHashFactory 					hashFactory;
+	private Map<Key, FutureTask<Object>> 		entries;
+
+	public ReachableStateCache() {
+		this(DEFAULT_MAXENTRIES);
+	}
+
+	/**
+	 * Constructor
+	 * @param maxEntries Most searches kept, the least recently used is dropped beyond this
+	 */
+	public ReachableStateCache(final int maxEntries) {
+		this.hashFactory = new NameDependentStateHashFactory();
+		this.entries = new LinkedHashMap<Key, FutureTask<Object>>(16, 0.75f, true) {
+			private static final long 			serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, FutureTask<Object>> eldest) {
+				return this.size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Returns the cache shared by every RandomStartStateGenerator
+	 * @return
+	 */
+	public static ReachableStateCache getShared() {
+		return SHARED;
+	}
+
+	/**
+	 * Returns the states reachable from the seed state, searching the domain if they aren't cached
+	 * @param domain
+	 * @param seedState
+	 * @return An unmodifiable list of the reachable states, shared with other callers
+	 */
+	@SuppressWarnings("unchecked")
+	public List<State> getReachableStates(final SADomain domain, State seedState) {
+		final State seed = seedState.copy();
+		Key key = new Key(domain, this.hashFactory.hashState(seed), null);
+		return (List<State>)this.get(key, new Callable<Object>() {
+			@Override
+			public Object call() {
+				return Collections.unmodifiableList(
+						StateReachability.getReachableStates(seed, domain, new NameDependentStateHashFactory()));
+			}
+		});
+	}
+
+	/**
+	 * Returns the indices of the states reachable from the seed state, searching the domain if they
+	 * aren't cached
+	 * @param domain
+	 * @param seedState
+	 * @param indexer Indexer which can index every reachable state
+	 * @return The reachable indices in the order they were found, shared with other callers so they
+	 * must not be modified
+	 */
+	public int[] getReachableIndices(final SADomain domain, State seedState, final StateIndexer indexer) {
+		final State seed = seedState.copy();
+		Key key = new Key(domain, this.hashFactory.hashState(seed), indexer);
+		return (int[])this.get(key, new Callable<Object>() {
+			@Override
+			public Object call() {
+				return ReachableStateCache.searchIndices(domain, seed, indexer);
+			}
+		});
+	}
+
+	/**
+	 * Removes every cached entry
+	 */
+	public void clear() {
+		synchronized (this.entries) {
+			this.entries.clear();
+		}
+	}
+
+	/**
+	 * Returns the number of searches cached, including ones still running
+	 * @return
+	 */
+	public int size() {
+		synchronized (this.entries) {
+			return this.entries.size();
+		}
+	}
+
+	private Object get(Key key, Callable<Object> search) {
+		FutureTask<Object> entry;
+		boolean searching = false;
+		synchronized (this.entries) {
+			entry = this.entries.get(key);
+			if (entry == null) {
+				entry = new FutureTask<Object>(search);
+				this.entries.put(key, entry);
+				searching = true;
+			}
+		}
+		// The search runs outside the lock, so other entries can be read meanwhile
+		if (searching) {
+			entry.run();
+		}
+		try {
+			return entry.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while finding reachable states", e);
+		} catch (ExecutionException e) {
+			synchronized (this.entries) {
+				if (this.entries.get(key) == entry) {
+					this.entries.remove(key);
+				}
+			}
+			throw new RuntimeException("Finding reachable states failed", e.getCause());
+		}
+	}
+
+	/**
+	 * Breadth first search over state indices
+	 */
+	private static int[] searchIndices(SADomain domain, State seedState, StateIndexer indexer) {
+		BitSet visited = new BitSet(indexer.getStateCount());
+		int[] queue = new int[16];
+		int head = 0;
+		int tail = 0;
+		List<Action> actions = domain.getActions();
+
+		int seedIndex = ReachableStateCache.getIndex(indexer, seedState);
+		visited.set(seedIndex);
+		queue[tail++] = seedIndex;
+		while (head < tail) {
+			State state = indexer.getState(queue[head++]);
+			for (GroundedAction ga : state.getAllGroundedActionsFor(actions)) {
+				for (TransitionProbability tp : ga.action.getTransitions(state, ga.params)) {
+					int index = ReachableStateCache.getIndex(indexer, tp.s);
+					if (!visited.get(index)) {
+						visited.set(index);
+						if (tail == queue.length) {
+							int[] grown = new int[2 * queue.length];
+							System.arraycopy(queue, 0, grown, 0, tail);
+							queue = grown;
+						}
+						queue[tail++] = index;
+					}
+				}
+			}
+		}
+
+		int[] indices = new int[tail];
+		System.arraycopy(queue, 0, indices, 0, tail);
+		return indices;
+	}
+
+	private static int getIndex(StateIndexer indexer, State state) {
+		int index = indexer.getIndex(state);
+		if (index < 0) {
+			throw new IllegalArgumentException("Reachable state can't be indexed: " + state.getCompleteStateDescription());
+		}
+		return index;
+	}
+
+	/**
+	 * Domains are matched by identity, seed states by their hash, and indexers by identity
+	 */
+	private static class Key {
+		private final SADomain 					domain;
+		private final StateHashTuple 			seed;
+		private final StateIndexer 				indexer;
+
+		public Key(SADomain domain, StateHashTuple seed, StateIndexer indexer) {
+			this.domain = domain;
+			this.seed = seed;
+			this.indexer = indexer;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key o = (Key)other;
+			return this.domain == o.domain && this.indexer == o.indexer && this.seed.equals(o.seed);
+		}
+
+		@Override
+		public int hashCode() {
+			return (31 * System.identityHashCode(this.domain) + System.identityHashCode(this.indexer)) * 31 + this.seed.hashCode();
+		}
+	}
+}
@@ -0,0 +1,434 @@
+package burlap.behavior.singleagent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import burlap.behavior.singleagent.Policy.ActionProb;
+import burlap.debugtools.MicroBenchmark;
+import burlap.oomdp.auxiliary.StateGenerator;
+import burlap.oomdp.auxiliary.common.NullTermination;
+import burlap.oomdp.core.State;
+import burlap.oomdp.core.TerminalFunction;
+import burlap.oomdp.core.TransitionProbability;
+import burlap.oomdp.singleagent.GroundedAction;
+import burlap.oomdp.singleagent.RewardFunction;
+
+/**
+ * Estimates u(pi) by sampling episodes of a policy, optionally spread over an executor. Every episode
+ * draws its actions and transitions from its own Random, seeded from the estimator's seed, the
+ * apprenticeship iteration and the episode index, so results are the same whatever threads run them.
+ * Visited states are streamed into a DiscountedFeatureAccumulator and dropped straight away, so no
+ * EpisodeAnalysis is built and memory doesn't grow with the episode length. Each thread reuses one
+ * accumulator, and each episode's sums are kept as a sparse vector of the features it touched, then
+ * added together in episode order.
+ *
+ * Transitions are sampled from Action.getTransitions instead of executing the action, which keeps the
+ * domain's shared random generator out of the episodes. Only primitive actions are supported. Episodes
+ * end early when they reach a terminal state, which is counted, as ExactFeatureExpectationEvaluator does.
+ * @author brawner
+ *
+ */
+public class RolloutFeatureExpectationEstimator {
+	private FeatureIndicatorCache 				featureCache;
+	private ExecutorService 					executor;
+	private long 								seed;
+	private TerminalFunction 					terminalFunction;
+	private ThreadLocal<DiscountedFeatureAccumulator> 	accumulators;
+	private AtomicLong 							executorAllocatedBytes;
+
+	/**
+	 * Constructor for episodes which never end early
+	 * @param featureCache Feature cache which maps states to their true features
+	 * @param executor Executor to run episodes on, or null to run them on the calling thread
+	 * @param seed Seed from which every episode's random generator is derived
+	 */
+	public RolloutFeatureExpectationEstimator(FeatureIndicatorCache featureCache, ExecutorService executor, long seed) {
+		this(featureCache, executor, seed, new NullTermination());
+	}
+
+	/**
+	 * Constructor
+	 * @param featureCache Feature cache which maps states to their true features
+	 * @param executor Executor to run episodes on, or null to run them on the calling thread
+	 * @param seed Seed from which every episode's random generator is derived
+	 * @param terminalFunction Terminal function, episodes end when they reach a terminal state
+	 */
+	public RolloutFeatureExpectationEstimator(FeatureIndicatorCache featureCache, ExecutorService executor, long seed, 
+			TerminalFunction terminalFunction) {
+		this.featureCache = featureCache;
+		this.executor = executor;
+		this.seed = seed;
+		this.terminalFunction = terminalFunction;
+		this.executorAllocatedBytes = new AtomicLong();
+		this.accumulators = new ThreadLocal<DiscountedFeatureAccumulator>() {
+			@Override
+			protected DiscountedFeatureAccumulator initialValue() {
+				return new DiscountedFeatureAccumulator(RolloutFeatureExpectationEstimator.this.featureCache);
+			}
+		};
+	}
+
+	/**
+	 * Samples one episode from each initial state and averages their discounted features.
+	 * @param policy Policy to follow
+	 * @param initialStates The first state of each episode
+	 * @param episodeLength Number of states in each episode, counting the initial state
+	 * @param iteration Apprenticeship learning iteration, used to derive the episode seeds
+	 * @return The Feature Expectations (double array that matches the number of features)
+	 */
+	public double[] estimateFeatureExpectation(Policy policy, List<State> initialStates, int episodeLength, int iteration) {
+		PolicyActionCache policyActions = new PolicyActionCache(policy, this.featureCache);
+		List<SparseFeatureVector> partialSums = this.sampleFeatureSums(policyActions, initialStates, episodeLength, iteration, 0);
+
+		double[] featureExpectations = new double[this.featureCache.getFeatureCount()];
+		for (SparseFeatureVector partialSum : partialSums) {
+			partialSum.addTo(featureExpectations, 1.0);
+		}
+		for (int i = 0; i < featureExpectations.length; ++i) {
+			featureExpectations[i] /= partialSums.size();
+		}
+		return featureExpectations;
+	}
+
+	/**
+	 * Samples episodes in batches of the minimum count until the confidence interval around the feature
+	 * expectation is no wider than the tolerance on each side, or the maximum count is reached. A policy
+	 * whose episodes barely differ stops after the first batch, while a noisy one is sampled up to the
+	 * maximum. Batches don't depend on the executor, so neither does the number of episodes sampled.
+	 * @param policy Policy to follow
+	 * @param startStateGenerator Generator of the episodes' first states, only called from this thread
+	 * @param minEpisodeCount Number of episodes in every batch, and the fewest sampled
+	 * @param maxEpisodeCount Most episodes sampled
+	 * @param tolerance Largest accepted half width of the confidence interval
+	 * @param confidenceScore Number of standard errors the confidence interval spans on each side
+	 * @param episodeLength Number of states in each episode, counting the initial state
+	 * @param iteration Apprenticeship learning iteration, used to derive the episode seeds
+	 * @return The estimated feature expectation, with the number of episodes sampled
+	 */
+	public FeatureExpectationEstimate estimateFeatureExpectation(Policy policy, StateGenerator startStateGenerator, 
+			int minEpisodeCount, int maxEpisodeCount, double tolerance, double confidenceScore, int episodeLength, int iteration) {
+		PolicyActionCache policyActions = new PolicyActionCache(policy, this.featureCache);
+		int featureCount = this.featureCache.getFeatureCount();
+		FeatureExpectationEstimate.RunningEstimate runningEstimate = new FeatureExpectationEstimate.RunningEstimate(featureCount);
+		double[] featureSums = new double[featureCount];
+		do {
+			int batchSize = Math.min(minEpisodeCount, maxEpisodeCount - runningEstimate.getSampleCount());
+			List<State> initialStates = new ArrayList<State>(batchSize);
+			for (int j = 0; j < batchSize; ++j) {
+				initialStates.add(startStateGenerator.generateState());
+			}
+			List<SparseFeatureVector> partialSums = 
+					this.sampleFeatureSums(policyActions, initialStates, episodeLength, iteration, runningEstimate.getSampleCount());
+			for (SparseFeatureVector partialSum : partialSums) {
+				Arrays.fill(featureSums, 0.0);
+				partialSum.addTo(featureSums, 1.0);
+				runningEstimate.add(featureSums);
+			}
+		} while (runningEstimate.getSampleCount() < maxEpisodeCount && 
+				runningEstimate.getConfidenceHalfWidth(confidenceScore) > tolerance);
+		return runningEstimate.getEstimate();
+	}
+
+	/**
+	 * Samples one episode from each initial state and returns their discounted feature sums, in the
+	 * order of the initial states
+	 * @param firstEpisode Index of the first episode, used to derive the episode seeds
+	 */
+	private List<SparseFeatureVector> sampleFeatureSums(PolicyActionCache policyActions, List<State> initialStates, 
+			int episodeLength, int iteration, int firstEpisode) {
+		List<RolloutTask> tasks = new ArrayList<RolloutTask>(initialStates.size());
+		for (int j = 0; j < initialStates.size(); ++j) {
+			Random random = new Random(RolloutFeatureExpectationEstimator.episodeSeed(this.seed, iteration, firstEpisode + j));
+			tasks.add(new RolloutTask(policyActions, initialStates.get(j), episodeLength, random));
+		}
+
+		List<SparseFeatureVector> partialSums = new ArrayList<SparseFeatureVector>(tasks.size());
+		if (this.executor == null) {
+			for (RolloutTask task : tasks) {
+				partialSums.add(task.call());
+			}
+		}
+		else {
+			try {
+				for (Future<SparseFeatureVector> future : this.executor.invokeAll(tasks)) {
+					partialSums.add(future.get());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while sampling episodes", e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException("Sampling an episode failed", e.getCause());
+			}
+		}
+		return partialSums;
+	}
+
+	/**
+	 * Returns the bytes allocated by episodes that ran on the executor's threads, summed over every
+	 * estimate so far. Episodes run on the calling thread aren't included, so the caller can add this to
+	 * its own thread's count without counting anything twice. It stays 0 if the JVM doesn't count
+	 * allocations.
+	 * @return
+	 */
+	public long getExecutorAllocatedBytes() {
+		return this.executorAllocatedBytes.get();
+	}
+
+	/**
+	 * Follows a policy until the episode has a number of states, drawing actions and transitions from
+	 * the given random generator. Like Policy.evaluateBehavior, the episode's length counts the initial
+	 * state, so numSteps - 1 transitions are taken.
+	 * @param policy Policy to follow
+	 * @param initialState State the episode starts in
+	 * @param rewardFunction Reward function to record
+	 * @param numSteps Number of states in the episode
+	 * @param random Random generator for this episode
+	 * @return The sampled episode
+	 */
+	public static EpisodeAnalysis rollout(Policy policy, State initialState, RewardFunction rewardFunction, int numSteps, Random random) {
+		return RolloutFeatureExpectationEstimator.rollout(policy, initialState, rewardFunction, new NullTermination(), numSteps, random);
+	}
+
+	/**
+	 * Follows a policy until the episode reaches a terminal state or has a number of states, like
+	 * Policy.evaluateBehavior with a terminal function, but drawing actions and transitions from the given
+	 * random generator.
+	 * @param policy Policy to follow
+	 * @param initialState State the episode starts in
+	 * @param rewardFunction Reward function to record
+	 * @param terminalFunction Terminal function, the episode ends at the first terminal state
+	 * @param numSteps Most states in the episode
+	 * @param random Random generator for this episode
+	 * @return The sampled episode
+	 */
+	public static EpisodeAnalysis rollout(Policy policy, State initialState, RewardFunction rewardFunction, 
+			TerminalFunction terminalFunction, int numSteps, Random random) {
+		EpisodeAnalysis episodeAnalysis = new EpisodeAnalysis(initialState);
+		State state = initialState;
+		for (int step = 1; step < numSteps && !terminalFunction.isTerminal(state); ++step) {
+			GroundedAction groundedAction = sampleAction(policy, state, random);
+			State nextState = sampleTransition(state, groundedAction, random);
+			episodeAnalysis.recordTransitionTo(nextState, groundedAction, rewardFunction.reward(state, groundedAction, nextState));
+			state = nextState;
+		}
+		return episodeAnalysis;
+	}
+
+	/**
+	 * Follows a policy until the episode has a number of states, adding every visited state to a feature
+	 * accumulator instead of recording the episode. The initial state counts as the first of them, so the
+	 * sums cover as many states as an expert episode of the same length.
+	 * @param policy Policy to follow
+	 * @param initialState State the episode starts in
+	 * @param numSteps Number of states in the episode
+	 * @param random Random generator for this episode
+	 * @param accumulator Accumulator the visited states are added to
+	 */
+	public static void rollout(Policy policy, State initialState, int numSteps, Random random, DiscountedFeatureAccumulator accumulator) {
+		RolloutFeatureExpectationEstimator.rollout(policy, initialState, new NullTermination(), numSteps, random, accumulator);
+	}
+
+	/**
+	 * Follows a policy until the episode reaches a terminal state or has a number of states, adding every
+	 * visited state, the terminal one included, to a feature accumulator.
+	 * @param policy Policy to follow
+	 * @param initialState State the episode starts in
+	 * @param terminalFunction Terminal function, the episode ends at the first terminal state
+	 * @param numSteps Most states in the episode
+	 * @param random Random generator for this episode
+	 * @param accumulator Accumulator the visited states are added to
+	 */
+	public static void rollout(Policy policy, State initialState, TerminalFunction terminalFunction, int numSteps, 
+			Random random, DiscountedFeatureAccumulator accumulator) {
+		if (numSteps <= 0) {
+			return;
+		}
+		State state = initialState;
+		accumulator.add(state);
+		for (int step = 1; step < numSteps && !terminalFunction.isTerminal(state); ++step) {
+			GroundedAction groundedAction = sampleAction(policy, state, random);
+			state = sampleTransition(state, groundedAction, random);
+			accumulator.add(state);
+		}
+	}
+
+	/**
+	 * Derives the seed of one episode. Seeds of neighbouring episodes and iterations are spread apart
+	 * with the SplitMix64 finalizer so their streams aren't correlated.
+	 * @param seed
+	 * @param iteration
+	 * @param episode
+	 * @return
+	 */
+	static long episodeSeed(long seed, int iteration, int episode) {
+		long z = seed + 0x9E3779B97F4A7C15L * (((long)iteration << 32) + episode + 1);
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Samples a policy's action in a state. Policies wrapped by a PolicyActionCache are sampled from
+	 * their cached alias tables, others by a scan over their action distribution.
+	 */
+	private static GroundedAction sampleAction(Policy policy, State state, Random random) {
+		if (policy instanceof PolicyActionCache) {
+			return ((PolicyActionCache)policy).sampleAction(state, random);
+		}
+		return RolloutFeatureExpectationEstimator.sampleAction(policy.getActionDistributionForState(state), random);
+	}
+
+	private static GroundedAction sampleAction(List<ActionProb> actionDistribution, Random random) {
+		double roll = random.nextDouble();
+		double probabilitySum = 0.0;
+		for (ActionProb actionProb : actionDistribution) {
+			probabilitySum += actionProb.pSelection;
+			if (roll < probabilitySum) {
+				return actionProb.ga;
+			}
+		}
+		// Rounding can leave the sum just under 1
+		for (int i = actionDistribution.size() - 1; i >= 0; --i) {
+			if (actionDistribution.get(i).pSelection > 0) {
+				return actionDistribution.get(i).ga;
+			}
+		}
+		return null;
+	}
+
+	private static State sampleTransition(State state, GroundedAction groundedAction, Random random) {
+		if (!groundedAction.action.isPrimitive()) {
+			throw new RuntimeException("Sampled episodes only support primitive actions, not " + groundedAction.action.getName());
+		}
+		List<TransitionProbability> transitions = groundedAction.action.getTransitions(state, groundedAction.params);
+		double roll = random.nextDouble();
+		double probabilitySum = 0.0;
+		for (TransitionProbability transition : transitions) {
+			probabilitySum += transition.p;
+			if (roll < probabilitySum) {
+				return transition.s;
+			}
+		}
+		return transitions.get(transitions.size() - 1).s;
+	}
+
+	/**
+	 * Runs one episode and returns its discounted feature sum
+	 */
+	private class RolloutTask implements Callable<SparseFeatureVector> {
+		private PolicyActionCache 				policyActions;
+		private State 							initialState;
+		private int 							episodeLength;
+		private Random 							random;
+		private Thread 							callingThread;
+
+		public RolloutTask(PolicyActionCache policyActions, State initialState, int episodeLength, Random random) {
+			this.policyActions = policyActions;
+			this.initialState = initialState;
+			this.episodeLength = episodeLength;
+			this.random = random;
+			this.callingThread = Thread.currentThread();
+		}
+
+		@Override
+		public SparseFeatureVector call() {
+			// Episodes run on the calling thread are already in that thread's own count
+			boolean countAllocations = Thread.currentThread() != this.callingThread;
+			long startAllocatedBytes = countAllocations ? MicroBenchmark.getCurrentThreadAllocatedBytes() : -1;
+			DiscountedFeatureAccumulator accumulator = accumulators.get();
+			accumulator.reset();
+			RolloutFeatureExpectationEstimator.rollout(this.policyActions, this.initialState, 
+					RolloutFeatureExpectationEstimator.this.terminalFunction, this.episodeLength, this.random, accumulator);
+			SparseFeatureVector featureVector = accumulator.getFeatureVector();
+			if (startAllocatedBytes >= 0) {
+				long allocatedBytes = MicroBenchmark.getCurrentThreadAllocatedBytes();
+				RolloutFeatureExpectationEstimator.this.executorAllocatedBytes.addAndGet(allocatedBytes - startAllocatedBytes);
+			}
+			return featureVector;
+		}
+	}
+
+	/**
+	 * Wraps a policy so that its action distribution is only computed once per state, and kept with an
+	 * alias table in an array indexed by the feature cache's state ids. Most policies, and the planners
+	 * behind them, aren't safe to query from several threads, so the wrapped policy is only called under
+	 * a lock. Distributions that were already computed are read and sampled without one.
+	 */
+	private static class PolicyActionCache extends Policy {
+		private Policy 												policy;
+		private FeatureIndicatorCache 								featureCache;
+		private volatile ActionDistribution[] 						actionDistributions;
+
+		public PolicyActionCache(Policy policy, FeatureIndicatorCache featureCache) {
+			this.policy = policy;
+			this.featureCache = featureCache;
+			this.actionDistributions = new ActionDistribution[0];
+		}
+
+		@Override
+		public GroundedAction getAction(State s) {
+			synchronized (this.policy) {
+				return this.policy.getAction(s);
+			}
+		}
+
+		@Override
+		public List<ActionProb> getActionDistributionForState(State s) {
+			return this.getDistribution(s).getActionProbs();
+		}
+
+		/**
+		 * Samples the wrapped policy's action in a state from its alias table
+		 * @param s
+		 * @param random Random generator to draw from
+		 * @return
+		 */
+		public GroundedAction sampleAction(State s, Random random) {
+			return this.getDistribution(s).sample(random);
+		}
+
+		/**
+		 * Returns the distribution of a state, asking the wrapped policy for it the first time the state
+		 * is seen. Two threads asking for a new state at once both compute it, and one of the equal
+		 * distributions is kept.
+		 */
+		private ActionDistribution getDistribution(State s) {
+			int stateId = this.featureCache.getStateId(s);
+			ActionDistribution[] actionDistributions = this.actionDistributions;
+			if (stateId >= actionDistributions.length) {
+				actionDistributions = this.extendDistributions(Math.max(stateId + 1, this.featureCache.getStateCount()));
+			}
+			ActionDistribution actionDistribution = actionDistributions[stateId];
+			if (actionDistribution == null) {
+				synchronized (this.policy) {
+					actionDistribution = new ActionDistribution(this.policy.getActionDistributionForState(s));
+				}
+				actionDistributions[stateId] = actionDistribution;
+			}
+			return actionDistribution;
+		}
+
+		private synchronized ActionDistribution[] extendDistributions(int length) {
+			ActionDistribution[] actionDistributions = this.actionDistributions;
+			if (length <= actionDistributions.length) {
+				return actionDistributions;
+			}
+			ActionDistribution[] newDistributions = 
+					Arrays.copyOf(actionDistributions, Math.max(length, 2 * actionDistributions.length));
+			this.actionDistributions = newDistributions;
+			return newDistributions;
+		}
+
+		@Override
+		public boolean isStochastic() {
+			return this.policy.isStochastic();
+		}
+	}
+}
@@ -0,0 +1,218 @@
+package burlap.behavior.singleagent;
+
+import java.util.Arrays;
+
+/**
+ * An immutable feature vector which only stores its non zero entries, as parallel arrays of
+ * increasing indices and their values. Operations cost time in the number of stored entries rather
+ * than the number of features, so vectors over thousands of mostly inactive features, like macro cell
+ * occupancies, stay cheap.
+ * @author brawner
+ *
+ */
+public class SparseFeatureVector {
+	private static final double[] 				NO_VALUES = new double[]{};
+
+	private final int[] 						indices;
+	private final double[] 						values;
+
+	/**
+	 * Constructor takes ownership of the arrays, they must not be modified afterwards.
+	 * @param indices Strictly increasing feature indices
+	 * @param values Value of each index
+	 */
+	SparseFeatureVector(int[] indices, double[] values) {
+		this.indices = indices;
+		this.values = values;
+	}
+
+	/**
+	 * Creates a vector from indices and values, which are copied
+	 * @param indices Strictly increasing feature indices
+	 * @param values Value of each index
+	 * @return
+	 */
+	public static SparseFeatureVector fromEntries(int[] indices, double[] values) {
+		if (indices.length != values.length) {
+			throw new IllegalArgumentException("Indices and values must have the same length");
+		}
+		return new SparseFeatureVector(indices.clone(), values.clone());
+	}
+
+	/**
+	 * Creates a binary vector which is 1 at each index, such as the active features of a state
+	 * @param indices Strictly increasing feature indices
+	 * @return
+	 */
+	public static SparseFeatureVector fromIndices(int[] indices) {
+		double[] values = (indices.length == 0) ? NO_VALUES : new double[indices.length];
+		Arrays.fill(values, 1.0);
+		return new SparseFeatureVector(indices.clone(), values);
+	}
+
+	/**
+	 * Creates a vector of the non zero entries of a dense array
+	 * @param dense
+	 * @return
+	 */
+	public static SparseFeatureVector fromDense(double[] dense) {
+		int count = 0;
+		for (double value : dense) {
+			if (value != 0.0) {
+				++count;
+			}
+		}
+		int[] indices = new int[count];
+		double[] values = new double[count];
+		int k = 0;
+		for (int i = 0; i < dense.length; ++i) {
+			if (dense[i] != 0.0) {
+				indices[k] = i;
+				values[k] = dense[i];
+				++k;
+			}
+		}
+		return new SparseFeatureVector(indices, values);
+	}
+
+	/**
+	 * Returns the number of stored entries
+	 * @return
+	 */
+	public int getEntryCount() {
+		return this.indices.length;
+	}
+
+	public int getIndex(int entry) {
+		return this.indices[entry];
+	}
+
+	public double getValue(int entry) {
+		return this.values[entry];
+	}
+
+	/**
+	 * Returns the value of a feature, 0 if it isn't stored
+	 * @param index
+	 * @return
+	 */
+	public double get(int index) {
+		int entry = Arrays.binarySearch(this.indices, index);
+		return (entry < 0) ? 0.0 : this.values[entry];
+	}
+
+	/**
+	 * Dot product with a dense vector
+	 * @param dense
+	 * @return
+	 */
+	public double dot(double[] dense) {
+		double sum = 0.0;
+		for (int k = 0; k < this.indices.length; ++k) {
+			sum += this.values[k] * dense[this.indices[k]];
+		}
+		return sum;
+	}
+
+	/**
+	 * Dot product with another sparse vector, merging their indices
+	 * @param other
+	 * @return
+	 */
+	public double dot(SparseFeatureVector other) {
+		double sum = 0.0;
+		int a = 0;
+		int b = 0;
+		while (a < this.indices.length && b < other.indices.length) {
+			int indexA = this.indices[a];
+			int indexB = other.indices[b];
+			if (indexA == indexB) {
+				sum += this.values[a++] * other.values[b++];
+			}
+			else if (indexA < indexB) {
+				++a;
+			}
+			else {
+				++b;
+			}
+		}
+		return sum;
+	}
+
+	public double normSquared() {
+		double sum = 0.0;
+		for (double value : this.values) {
+			sum += value * value;
+		}
+		return sum;
+	}
+
+	/**
+	 * Returns this + scale * other
+	 * @param other
+	 * @param scale
+	 * @return
+	 */
+	public SparseFeatureVector plus(SparseFeatureVector other, double scale) {
+		int[] indices = new int[this.indices.length + other.indices.length];
+		double[] values = new double[indices.length];
+		int a = 0;
+		int b = 0;
+		int count = 0;
+		while (a < this.indices.length || b < other.indices.length) {
+			int indexA = (a < this.indices.length) ? this.indices[a] : Integer.MAX_VALUE;
+			int indexB = (b < other.indices.length) ? other.indices[b] : Integer.MAX_VALUE;
+			double value;
+			int index;
+			if (indexA == indexB) {
+				index = indexA;
+				value = this.values[a++] + scale * other.values[b++];
+			}
+			else if (indexA < indexB) {
+				index = indexA;
+				value = this.values[a++];
+			}
+			else {
+				index = indexB;
+				value = scale * other.values[b++];
+			}
+			if (value != 0.0) {
+				indices[count] = index;
+				values[count] = value;
+				++count;
+			}
+		}
+		return new SparseFeatureVector(Arrays.copyOf(indices, count), Arrays.copyOf(values, count));
+	}
+
+	/**
+	 * Returns this - other
+	 * @param other
+	 * @return
+	 */
+	public SparseFeatureVector minus(SparseFeatureVector other) {
+		return this.plus(other, -1.0);
+	}
+
+	/**
+	 * Adds scale times this vector to a dense array
+	 * @param dense
+	 * @param scale
+	 */
+	public void addTo(double[] dense, double scale) {
+		for (int k = 0; k < this.indices.length; ++k) {
+			dense[this.indices[k]] += scale * this.values[k];
+		}
+	}
+
+	/**
+	 * Returns a dense copy of this vector
+	 * @param dimension Length of the dense array, at least the largest index plus one
+	 * @return
+	 */
+	public double[] toDense(int dimension) {
+		double[] dense = new double[dimension];
+		this.addTo(dense, 1.0);
+		return dense;
+	}
+}
@@ -0,0 +1,27 @@
+package burlap.behavior.singleagent;
+
+import burlap.oomdp.core.State;
+
+/**
+ * Maps a state to the binary features which are true in it. Domains whose features can be computed
+ * directly from a state's attributes can implement this instead of testing a PropositionalFunction per
+ * feature.
+ * @author brawner
+ *
+ */
+public interface StateFeatureExtractor {
+
+	/**
+	 * Returns the number of features, the length of a dense feature vector
+	 * @return
+	 */
+	int getFeatureCount();
+
+	/**
+	 * Returns the indices of the features which are true in this state, in increasing order. The
+	 * returned array may be shared, so it must not be modified.
+	 * @param state State to evaluate
+	 * @return Sorted indices of the true features
+	 */
+	int[] getActiveFeatures(State state);
+}
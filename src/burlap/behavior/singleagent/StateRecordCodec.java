@@ -0,0 +1,35 @@
+package burlap.behavior.singleagent;
+
+import java.nio.ByteBuffer;
+
+import burlap.oomdp.core.State;
+
+/**
+ * Encodes the states of a domain as fixed width binary records, so episodes can be stored compactly
+ * and any state of a stored episode can be found by its position. Codecs shouldn't keep any state
+ * between calls, so one codec can be shared by writers and readers on several threads.
+ * @author brawner
+ *
+ */
+public interface StateRecordCodec {
+
+	/**
+	 * Returns the number of bytes of every record
+	 * @return
+	 */
+	int getRecordSize();
+
+	/**
+	 * Writes a state's record at the buffer's position, advancing it by the record size
+	 * @param state State to encode
+	 * @param buffer Buffer with at least the record size remaining
+	 */
+	void encode(State state, ByteBuffer buffer);
+
+	/**
+	 * Reads the record at the buffer's position, advancing it by the record size
+	 * @param buffer Buffer positioned at a record
+	 * @return The decoded state
+	 */
+	State decode(ByteBuffer buffer);
+}
@@ -0,0 +1,446 @@
+package burlap.behavior.singleagent.planning.stochastic.valueiteration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import burlap.behavior.singleagent.QValue;
+import burlap.behavior.singleagent.planning.OOMDPPlanner;
+import burlap.behavior.singleagent.planning.QComputablePlanner;
+import burlap.behavior.statehashing.GridAgentStateIndexer;
+import burlap.behavior.statehashing.IndexedStateHashFactory;
+import burlap.behavior.statehashing.StateHashFactory;
+import burlap.debugtools.DPrint;
+import burlap.domain.singleagent.gridworld.GridWorldDomain;
+import burlap.oomdp.core.Domain;
+import burlap.oomdp.core.State;
+import burlap.oomdp.core.TerminalFunction;
+import burlap.oomdp.singleagent.Action;
+import burlap.oomdp.singleagent.GroundedAction;
+import burlap.oomdp.singleagent.RewardFunction;
+
+/**
+ * Value iteration for grid worlds whose states are only the agent's cell, such as MacroGridWorld. Every
+ * cell is a state, indexed by a GridAgentStateIndexer, and the value function is a primitive array over
+ * those indices. Transitions are built once from the grid's map and its movement direction
+ * probabilities, transitionDynamics[action][direction] as GridWorldDomain uses them, instead of
+ * performing actions on copied states. Each plan evaluates the reward function once per state,
+ * action and direction, then sweeps only over arrays.
+ *
+ * Sweeps are Gauss-Seidel by default, updating the values in place so later states in a sweep already
+ * see this sweep's updates, which usually needs fewer sweeps. They can be made synchronous (Jacobi)
+ * to match ValueIteration's updates. Given a ForkJoinPool, sweeps are synchronous and split into
+ * blocks of states which are updated in parallel, each reading the previous sweep's values and
+ * writing the next, and the largest change is reduced across the blocks. The rewards and terminal
+ * flags are evaluated over the same blocks, so with a pool the reward and terminal functions must be
+ * safe to call from several threads, as the feature cache backed reward functions are.
+ *
+ * Values are kept when the reward function is replaced with setRewardFunction, so successive plans
+ * warm start, and are cleared by plannerInit.
+ *
+ * Grid worlds with other objects in their states, like DrivingGridWorld's cars, can't be planned with
+ * this.
+ * @author brawner
+ *
+ */
+public class GridValueIteration extends OOMDPPlanner implements QComputablePlanner {
+	public static final boolean 				DEFAULT_USINGGAUSSSEIDEL = true;
+	public static final int 					DEFAULT_SWEEPBLOCKSIZE = 1024;
+
+	private static final int[][] 				DIRECTIONS = {{0, 1}, {0, -1}, {1, 0}, {-1, 0}};
+	private static final String[] 				DIRECTIONACTIONS = {GridWorldDomain.ACTIONNORTH,
+		GridWorldDomain.ACTIONSOUTH, GridWorldDomain.ACTIONEAST, GridWorldDomain.ACTIONWEST};
+
+	protected GridAgentStateIndexer 			indexer;
+	protected int[][] 							map;
+	protected double[][] 						transitionDynamics;
+	protected double 							maxDelta;
+	protected int 								maxIterations;
+	protected boolean 							usingGaussSeidel;
+	protected ForkJoinPool 						sweepPool;
+	protected int 								sweepBlockSize;
+
+	protected State[] 							states;
+	protected GroundedAction[] 					groundedActions;
+	protected double[][] 						actionDirectionProbabilities;
+	protected int[] 							successors;
+	protected double[] 							expectedRewards;
+	protected boolean[] 						terminalStates;
+	protected double[] 							values;
+	protected double[] 							nextValues;
+	protected int 								lastSweepCount;
+
+	/**
+	 * Initializes the planner.
+	 * @param domain the domain in which to plan, generated by a GridWorldDomain
+	 * @param rf the reward function
+	 * @param tf the terminal state function
+	 * @param gamma the discount factor
+	 * @param indexer indexer over the agent's cells in the domain's grid
+	 * @param map the grid's map, map[x][y] is 1 for walls
+	 * @param transitionDynamics probability of moving north, south, east and west (second index) for
+	 * each movement action (first index), in the same order
+	 * @param maxDelta when the maximum change in the value function is smaller than this value, VI will terminate.
+	 * @param maxIterations when the number of VI iterations exceeds this value, VI will terminate.
+	 */
+	public GridValueIteration(Domain domain, RewardFunction rf, TerminalFunction tf, double gamma,
+			GridAgentStateIndexer indexer, int[][] map, double[][] transitionDynamics, double maxDelta, int maxIterations) {
+		this.indexer = indexer;
+		this.map = map;
+		this.transitionDynamics = transitionDynamics;
+		this.maxDelta = maxDelta;
+		this.maxIterations = maxIterations;
+		this.usingGaussSeidel = GridValueIteration.DEFAULT_USINGGAUSSSEIDEL;
+		this.sweepPool = null;
+		this.sweepBlockSize = GridValueIteration.DEFAULT_SWEEPBLOCKSIZE;
+		this.debugCode = 10;
+		this.buildSuccessors();
+		this.plannerInit(domain, rf, tf, gamma, new IndexedStateHashFactory(indexer));
+	}
+
+	/**
+	 * Initializes the planner and clears its values. The hashing factory is ignored, states are always
+	 * hashed by this planner's indexer.
+	 */
+	@Override
+	public void plannerInit(Domain domain, RewardFunction rf, TerminalFunction tf, double gamma, StateHashFactory hashingFactory) {
+		super.plannerInit(domain, rf, tf, gamma, new IndexedStateHashFactory(this.indexer));
+		this.buildActions();
+		int stateCount = this.indexer.getStateCount();
+		this.expectedRewards = new double[stateCount * this.groundedActions.length];
+		this.terminalStates = new boolean[stateCount];
+		this.values = new double[stateCount];
+		this.nextValues = new double[stateCount];
+		this.lastSweepCount = 0;
+	}
+
+	/**
+	 * Sets whether sweeps update values in place (Gauss-Seidel) or from the previous sweep's values (Jacobi)
+	 * @param usingGaussSeidel
+	 */
+	public void setUsingGaussSeidel(boolean usingGaussSeidel) {
+		this.usingGaussSeidel = usingGaussSeidel;
+	}
+
+	public boolean getUsingGaussSeidel() {
+		return this.usingGaussSeidel;
+	}
+
+	/**
+	 * Sets the pool sweeps and reward evaluation are run on in parallel. Parallel sweeps are always
+	 * synchronous, Gauss-Seidel is only used when the pool is null, which is the default. The reward and
+	 * terminal functions are called from the pool's threads.
+	 * @param sweepPool
+	 */
+	public void setSweepPool(ForkJoinPool sweepPool) {
+		this.sweepPool = sweepPool;
+	}
+
+	public ForkJoinPool getSweepPool() {
+		return this.sweepPool;
+	}
+
+	/**
+	 * Sets the number of states below which a parallel sweep isn't split further
+	 * @param sweepBlockSize
+	 */
+	public void setSweepBlockSize(int sweepBlockSize) {
+		this.sweepBlockSize = Math.max(1, sweepBlockSize);
+	}
+
+	/**
+	 * Replaces the reward function, keeping the values so they seed the next round of planning.
+	 * @param rf The new reward function
+	 */
+	public void setRewardFunction(RewardFunction rf) {
+		this.rf = rf;
+	}
+
+	/**
+	 * Evaluates the reward function over the grid and runs VI from the current values. Every cell is
+	 * planned for, so the initial state only has to be in the grid.
+	 */
+	@Override
+	public void planFromState(State initialState) {
+		if (this.indexer.getIndex(initialState) < 0) {
+			throw new IllegalArgumentException("Initial state is not in the grid");
+		}
+		this.evaluateRewards();
+		this.runVI();
+	}
+
+	/**
+	 * Sweeps the value function until the largest change is below maxDelta or maxIterations sweeps have run
+	 */
+	public void runVI() {
+		int i = 0;
+		boolean inPlace = this.usingGaussSeidel && this.sweepPool == null;
+		for (i = 0; i < this.maxIterations; ++i) {
+			double[] target = inPlace ? this.values : this.nextValues;
+			double delta = (this.sweepPool == null) ? 
+					this.sweep(0, this.values.length, target) : 
+					this.sweepPool.invoke(new SweepTask(0, this.values.length, target));
+			if (!inPlace) {
+				this.nextValues = this.values;
+				this.values = target;
+			}
+			if (delta < this.maxDelta) {
+				break;
+			}
+		}
+		this.lastSweepCount = Math.min(i + 1, this.maxIterations);
+
+		DPrint.cl(this.debugCode, "Passes: " + i);
+	}
+
+	/**
+	 * Returns a copy of the value of every state, by index
+	 * @return
+	 */
+	public double[] getValues() {
+		return this.values.clone();
+	}
+
+	/**
+	 * Restores the planner to values planned earlier for a reward function, for instance ones saved by
+	 * getValues, without running any sweeps.
+	 * @param rf The reward function the values were planned for
+	 * @param values Value of every state, by index
+	 */
+	public void restoreValues(RewardFunction rf, double[] values) {
+		if (values.length != this.values.length) {
+			throw new IllegalArgumentException("Expected " + this.values.length + " values, got " + values.length);
+		}
+		this.rf = rf;
+		this.evaluateRewards();
+		System.arraycopy(values, 0, this.values, 0, values.length);
+	}
+
+	/**
+	 * Returns the number of sweeps over the state space the last call to runVI needed
+	 * @return
+	 */
+	public int getLastSweepCount() {
+		return this.lastSweepCount;
+	}
+
+	/**
+	 * Returns the number of states planned for, every cell of the grid
+	 * @return
+	 */
+	public int getStateCount() {
+		return this.values.length;
+	}
+
+	/**
+	 * Returns the value of a state
+	 * @param s
+	 * @return
+	 */
+	public double value(State s) {
+		return this.values[this.getIndex(s)];
+	}
+
+	@Override
+	public List<QValue> getQs(State s) {
+		int index = this.getIndex(s);
+		List<QValue> qs = new ArrayList<QValue>(this.groundedActions.length);
+		for (int a = 0; a < this.groundedActions.length; ++a) {
+			qs.add(new QValue(s, this.groundedActions[a], this.q(index, a)));
+		}
+		return qs;
+	}
+
+	@Override
+	public QValue getQ(State s, GroundedAction ga) {
+		int index = this.getIndex(s);
+		for (int a = 0; a < this.groundedActions.length; ++a) {
+			if (this.groundedActions[a].action.getName().equals(ga.action.getName())) {
+				return new QValue(s, ga, this.q(index, a));
+			}
+		}
+		throw new IllegalArgumentException("Action " + ga.action.getName() + " is not a movement action");
+	}
+
+	private int getIndex(State s) {
+		int index = this.indexer.getIndex(s);
+		if (index < 0) {
+			throw new IllegalArgumentException("State is not in the grid");
+		}
+		return index;
+	}
+
+	/**
+	 * Updates the states in [start, end) into target
+	 * @return The largest change in value
+	 */
+	private double sweep(int start, int end, double[] target) {
+		double delta = 0.;
+		for (int s = start; s < end; ++s) {
+			double v = this.values[s];
+			double maxQ = this.terminalStates[s] ? 0.0 : this.maxQ(s);
+			target[s] = maxQ;
+			delta = Math.max(Math.abs(maxQ - v), delta);
+		}
+		return delta;
+	}
+
+	private double maxQ(int s) {
+		double maxQ = Double.NEGATIVE_INFINITY;
+		for (int a = 0; a < this.groundedActions.length; ++a) {
+			maxQ = Math.max(maxQ, this.q(s, a));
+		}
+		return maxQ;
+	}
+
+	private double q(int s, int a) {
+		double[] probabilities = this.actionDirectionProbabilities[a];
+		int successorOffset = s * DIRECTIONS.length;
+		double expectedValue = 0.0;
+		for (int d = 0; d < DIRECTIONS.length; ++d) {
+			if (probabilities[d] != 0.0) {
+				expectedValue += probabilities[d] * this.values[this.successors[successorOffset + d]];
+			}
+		}
+		return this.expectedRewards[s * this.groundedActions.length + a] + this.gamma * expectedValue;
+	}
+
+	/**
+	 * Finds the cell each direction of movement leads to from each cell, staying put at walls and edges
+	 */
+	private void buildSuccessors() {
+		int stateCount = this.indexer.getStateCount();
+		this.states = new State[stateCount];
+		this.successors = new int[stateCount * DIRECTIONS.length];
+		for (int s = 0; s < stateCount; ++s) {
+			this.states[s] = this.indexer.getState(s);
+			int x = this.indexer.getX(s);
+			int y = this.indexer.getY(s);
+			for (int d = 0; d < DIRECTIONS.length; ++d) {
+				int next = this.indexer.getIndex(x + DIRECTIONS[d][0], y + DIRECTIONS[d][1]);
+				if (next < 0 || this.map[this.indexer.getX(next)][this.indexer.getY(next)] == 1) {
+					next = s;
+				}
+				this.successors[s * DIRECTIONS.length + d] = next;
+			}
+		}
+	}
+
+	/**
+	 * Matches the planner's actions to the rows of the transition dynamics by name
+	 */
+	private void buildActions() {
+		this.groundedActions = new GroundedAction[this.actions.size()];
+		this.actionDirectionProbabilities = new double[this.actions.size()][];
+		for (int a = 0; a < this.actions.size(); ++a) {
+			Action action = this.actions.get(a);
+			int row = -1;
+			for (int d = 0; d < DIRECTIONACTIONS.length; ++d) {
+				if (DIRECTIONACTIONS[d].equals(action.getName())) {
+					row = d;
+				}
+			}
+			if (row < 0) {
+				throw new IllegalArgumentException("Action " + action.getName() + " is not a movement action");
+			}
+			this.groundedActions[a] = new GroundedAction(action, new String[]{});
+			this.actionDirectionProbabilities[a] = this.transitionDynamics[row];
+		}
+	}
+
+	/**
+	 * Computes each state's terminal flag and the expected reward of each of its actions, across the
+	 * sweep pool if there is one
+	 */
+	private void evaluateRewards() {
+		if (this.sweepPool == null) {
+			this.evaluateRewards(0, this.states.length);
+		}
+		else {
+			this.sweepPool.invoke(new RewardTask(0, this.states.length));
+		}
+	}
+
+	/**
+	 * Computes the terminal flags and expected rewards of a range of states
+	 * @param start First state index of the range
+	 * @param end State index past the end of the range
+	 */
+	private void evaluateRewards(int start, int end) {
+		int actionCount = this.groundedActions.length;
+		for (int s = start; s < end; ++s) {
+			State state = this.states[s];
+			this.terminalStates[s] = this.tf.isTerminal(state);
+			for (int a = 0; a < actionCount; ++a) {
+				double[] probabilities = this.actionDirectionProbabilities[a];
+				double reward = 0.0;
+				for (int d = 0; d < DIRECTIONS.length; ++d) {
+					if (probabilities[d] != 0.0) {
+						State next = this.states[this.successors[s * DIRECTIONS.length + d]];
+						reward += probabilities[d] * this.rf.reward(state, this.groundedActions[a], next);
+					}
+				}
+				this.expectedRewards[s * actionCount + a] = reward;
+			}
+		}
+	}
+
+	/**
+	 * Sweeps a range of states, halving it across the pool until it is no larger than the block size
+	 */
+	private class SweepTask extends RecursiveTask<Double> {
+		private static final long 				serialVersionUID = 1L;
+
+		private final int 						start;
+		private final int 						end;
+		private final double[] 					target;
+
+		public SweepTask(int start, int end, double[] target) {
+			this.start = start;
+			this.end = end;
+			this.target = target;
+		}
+
+		@Override
+		protected Double compute() {
+			if (this.end - this.start <= sweepBlockSize) {
+				return GridValueIteration.this.sweep(this.start, this.end, this.target);
+			}
+			int middle = (this.start + this.end) >>> 1;
+			SweepTask left = new SweepTask(this.start, middle, this.target);
+			left.fork();
+			double rightDelta = new SweepTask(middle, this.end, this.target).compute();
+			return Math.max(left.join(), rightDelta);
+		}
+	}
+
+	/**
+	 * Evaluates the rewards of a range of states, halving it across the pool like a sweep
+	 */
+	private class RewardTask extends RecursiveAction {
+		private static final long 				serialVersionUID = 1L;
+
+		private final int 						start;
+		private final int 						end;
+
+		public RewardTask(int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.end - this.start <= sweepBlockSize) {
+				GridValueIteration.this.evaluateRewards(this.start, this.end);
+				return;
+			}
+			int middle = (this.start + this.end) >>> 1;
+			RewardTask left = new RewardTask(this.start, middle);
+			left.fork();
+			new RewardTask(middle, this.end).compute();
+			left.join();
+		}
+	}
+}
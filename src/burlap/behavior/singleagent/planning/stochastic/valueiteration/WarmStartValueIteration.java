@@ -0,0 +1,122 @@
+package burlap.behavior.singleagent.planning.stochastic.valueiteration;
+
+import java.util.Set;
+
+import burlap.behavior.statehashing.StateHashFactory;
+import burlap.behavior.statehashing.StateHashTuple;
+import burlap.debugtools.DPrint;
+import burlap.oomdp.core.Domain;
+import burlap.oomdp.core.State;
+import burlap.oomdp.core.TerminalFunction;
+import burlap.oomdp.singleagent.RewardFunction;
+
+/**
+ * Value iteration that can be re-planned for a new reward function without throwing away what it
+ * already knows. The enumerated states, their transition dynamics and the value function are kept
+ * when the reward function is changed, so the next call to planFromState starts VI from the previous
+ * values. When consecutive reward functions are close, as they are between iterations of
+ * apprenticeship learning, this needs far fewer sweeps than planning from scratch.
+ * @author brawner
+ *
+ */
+public class WarmStartValueIteration extends ValueIteration {
+	protected int 						lastSweepCount;
+
+	/**
+	 * Initializes the planner.
+	 * @param domain the domain in which to plan
+	 * @param rf the reward function
+	 * @param tf the terminal state function
+	 * @param gamma the discount factor
+	 * @param hashingFactory the state hashing factory to use
+	 * @param maxDelta when the maximum change in the value function is smaller than this value, VI will terminate.
+	 * @param maxIterations when the number of VI iterations exceeds this value, VI will terminate.
+	 */
+	public WarmStartValueIteration(Domain domain, RewardFunction rf, TerminalFunction tf, double gamma,
+			StateHashFactory hashingFactory, double maxDelta, int maxIterations) {
+		super(domain, rf, tf, gamma, hashingFactory, maxDelta, maxIterations);
+		this.lastSweepCount = 0;
+	}
+
+	/**
+	 * Creates a warm starting planner with the same terminal function, hashing factory, stopping
+	 * conditions and debug code as an existing value iteration planner, so it prints whenever the
+	 * existing planner would have. Nothing the existing planner computed is copied.
+	 * @param planner Planner whose settings are used
+	 * @param domain the domain in which to plan
+	 * @param rf the reward function
+	 * @param gamma the discount factor
+	 * @return A new warm starting planner
+	 */
+	public static WarmStartValueIteration fromValueIteration(ValueIteration planner, Domain domain, RewardFunction rf, double gamma) {
+		WarmStartValueIteration warmStartPlanner = new WarmStartValueIteration(domain, rf, planner.getTF(), gamma,
+				planner.getHashingFactory(), planner.maxDelta, planner.maxIterations);
+		warmStartPlanner.setDebugCode(planner.getDebugCode());
+		return warmStartPlanner;
+	}
+
+	/**
+	 * Replaces the reward function, keeping the enumerated states, transition dynamics and values so
+	 * they seed the next round of planning.
+	 * @param rf The new reward function
+	 */
+	public void setRewardFunction(RewardFunction rf) {
+		this.rf = rf;
+	}
+
+	/**
+	 * Finds any states reachable from this state that haven't been enumerated yet, then runs VI from the
+	 * current value function. Unlike ValueIteration, VI runs even if the state was already known.
+	 */
+	@Override
+	public void planFromState(State initialState) {
+		this.initializeOptionsForExpectationComputations();
+		this.performReachabilityFrom(initialState);
+		this.runVI();
+	}
+
+	@Override
+	public void runVI() {
+		if (!this.foundReachableStates) {
+			throw new RuntimeException("Cannot run VI until the reachable states have been found. Use planFromState method at least once or instead.");
+		}
+
+		Set<StateHashTuple> states = this.mapToStateIndex.keySet();
+
+		int i = 0;
+		for (i = 0; i < this.maxIterations; i++) {
+			double delta = 0.;
+			for (StateHashTuple sh : states) {
+				if (this.tf.isTerminal(sh.s)) {
+					this.valueFunction.put(sh, 0.);
+					continue;
+				}
+				double v = this.value(sh);
+				double maxQ = this.performBellmanUpdateOn(sh);
+				delta = Math.max(Math.abs(maxQ - v), delta);
+			}
+			if (delta < this.maxDelta) {
+				break;
+			}
+		}
+		this.lastSweepCount = Math.min(i + 1, this.maxIterations);
+
+		DPrint.cl(this.debugCode, "Passes: " + i);
+	}
+
+	/**
+	 * Returns the number of sweeps over the state space the last call to runVI needed
+	 * @return
+	 */
+	public int getLastSweepCount() {
+		return this.lastSweepCount;
+	}
+
+	/**
+	 * Returns the number of states that have been enumerated
+	 * @return
+	 */
+	public int getStateCount() {
+		return this.mapToStateIndex.size();
+	}
+}
@@ -0,0 +1,87 @@
+package burlap.behavior.statehashing;
+
+import java.util.List;
+
+import burlap.domain.singleagent.gridworld.GridWorldDomain;
+import burlap.oomdp.core.Domain;
+import burlap.oomdp.core.ObjectInstance;
+import burlap.oomdp.core.State;
+
+/**
+ * Indexes the one agent states of a GridWorldDomain by the agent's cell. Every other object of the
+ * state is ignored, so it only suits grid worlds whose states hold nothing but the agent, such as
+ * MacroGridWorld. Cell (x, y) has index x * height + y, so an index unpacks back to its coordinates
+ * with a division and a remainder.
+ * @author brawner
+ *
+ */
+public class GridAgentStateIndexer implements StateIndexer {
+	private final Domain 						domain;
+	private final int 							width;
+	private final int 							height;
+
+	/**
+	 * Constructor
+	 * @param domain Domain the agent's states are created in
+	 * @param width Width of the grid
+	 * @param height Height of the grid
+	 */
+	public GridAgentStateIndexer(Domain domain, int width, int height) {
+		this.domain = domain;
+		this.width = width;
+		this.height = height;
+	}
+
+	public int getWidth() {
+		return this.width;
+	}
+
+	public int getHeight() {
+		return this.height;
+	}
+
+	@Override
+	public int getStateCount() {
+		return this.width * this.height;
+	}
+
+	/**
+	 * Returns the index of a cell
+	 * @param x
+	 * @param y
+	 * @return The cell's index, or -1 if it is off the grid
+	 */
+	public int getIndex(int x, int y) {
+		if (x < 0 || y < 0 || x >= this.width || y >= this.height) {
+			return -1;
+		}
+		return x * this.height + y;
+	}
+
+	public int getX(int index) {
+		return index / this.height;
+	}
+
+	public int getY(int index) {
+		return index % this.height;
+	}
+
+	@Override
+	public int getIndex(State state) {
+		List<ObjectInstance> agents = state.getObjectsOfTrueClass(GridWorldDomain.CLASSAGENT);
+		if (agents.size() == 0) {
+			return -1;
+		}
+		ObjectInstance agent = agents.get(0);
+		return this.getIndex(agent.getDiscValForAttribute(GridWorldDomain.ATTX), 
+				agent.getDiscValForAttribute(GridWorldDomain.ATTY));
+	}
+
+	@Override
+	public State getState(int index) {
+		State state = new State();
+		state.addObject(new ObjectInstance(this.domain.getObjectClass(GridWorldDomain.CLASSAGENT), GridWorldDomain.CLASSAGENT + 0));
+		GridWorldDomain.setAgent(state, this.getX(index), this.getY(index));
+		return state;
+	}
+}
@@ -0,0 +1,77 @@
+package burlap.behavior.statehashing;
+
+import burlap.oomdp.core.State;
+
+/**
+ * Hashes states by their index from a StateIndexer. A state's hash code is its index, and two hashed
+ * states are equal when their indices are, so existing planners that key on StateHashTuples avoid
+ * hashing and comparing every object attribute of every state.
+ * @author brawner
+ *
+ */
+public class IndexedStateHashFactory implements StateHashFactory {
+	private StateIndexer 						indexer;
+
+	/**
+	 * Constructor
+	 * @param indexer Indexer that can index every state which will be hashed
+	 */
+	public IndexedStateHashFactory(StateIndexer indexer) {
+		this.indexer = indexer;
+	}
+
+	public StateIndexer getIndexer() {
+		return this.indexer;
+	}
+
+	@Override
+	public StateHashTuple hashState(State s) {
+		int index = this.indexer.getIndex(s);
+		if (index < 0) {
+			throw new IllegalArgumentException("State can't be indexed: " + s.getCompleteStateDescription());
+		}
+		return new IndexedStateHashTuple(s, index);
+	}
+
+	/**
+	 * Hash tuple whose hash code and equality come from the state's index
+	 * @author brawner
+	 *
+	 */
+	public static class IndexedStateHashTuple extends StateHashTuple {
+		private final int 						index;
+
+		public IndexedStateHashTuple(State s, int index) {
+			super(s);
+			this.index = index;
+			this.hashCode = index;
+			this.needToRecomputeHashCode = false;
+		}
+
+		public int getIndex() {
+			return this.index;
+		}
+
+		@Override
+		public void computeHashCode() {
+			this.hashCode = this.index;
+			this.needToRecomputeHashCode = false;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof IndexedStateHashTuple)) {
+				return false;
+			}
+			return this.index == ((IndexedStateHashTuple)other).index;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.index;
+		}
+	}
+}
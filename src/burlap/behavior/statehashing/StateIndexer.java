@@ -0,0 +1,34 @@
+package burlap.behavior.statehashing;
+
+import burlap.oomdp.core.State;
+
+/**
+ * Maps the states of a domain with a small, fixed state space to dense integer indices in
+ * [0, getStateCount()). Planners, policies and features can then keep per-state values in primitive
+ * arrays indexed by state, instead of hash maps keyed by full OO-MDP states.
+ * @author brawner
+ *
+ */
+public interface StateIndexer {
+
+	/**
+	 * Returns the number of indices, one more than the largest index
+	 * @return
+	 */
+	int getStateCount();
+
+	/**
+	 * Returns the index of a state. States that are equal have the same index, and states that differ
+	 * have different indices.
+	 * @param state
+	 * @return The state's index, or -1 if the state can't be indexed
+	 */
+	int getIndex(State state);
+
+	/**
+	 * Creates the state with an index
+	 * @param index
+	 * @return A new state whose index is index
+	 */
+	State getState(int index);
+}
@@ -0,0 +1,151 @@
+package burlap.debugtools;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the independent jobs of an experiment sweep concurrently on a fixed number of threads. Each job
+ * is given its own seed, derived from the sweep's seed and the job's index, so its results don't
+ * depend on which thread runs it or the order jobs finish in. Jobs return lines of CSV, which are
+ * written and flushed as each job finishes, so a long sweep's results survive it being stopped part way.
+ *
+ * Jobs run at the same time, so each should build its own domain, planner, hashing factory and
+ * anything else it mutates, sharing only what is read. A job only reproduces if all of its randomness
+ * comes from its seed. Policy.evaluateBehavior and performing actions draw from BURLAP's shared
+ * RandomFactory generator, which every job advances, so jobs should sample episodes with
+ * RolloutFeatureExpectationEstimator.rollout and a Random made from their seed. Timings are never
+ * reproduced.
+ * @author brawner
+ *
+ */
+public class ExperimentRunner {
+	private int 							threadCount;
+	private long 							seed;
+	private List<Job> 						jobs;
+
+	/**
+	 * Constructor
+	 * @param threadCount Number of jobs run at once
+	 * @param seed Seed the jobs' seeds are derived from
+	 */
+	public ExperimentRunner(int threadCount, long seed) {
+		this.threadCount = Math.max(1, threadCount);
+		this.seed = seed;
+		this.jobs = new ArrayList<Job>();
+	}
+
+	/**
+	 * One configuration of a sweep
+	 */
+	public interface Job {
+		/**
+		 * Runs the configuration
+		 * @param seed Seed for everything random in this job
+		 * @return Lines of CSV to record, without line endings
+		 */
+		List<String> run(long seed);
+	}
+
+	/**
+	 * Adds a job to the sweep
+	 * @param job
+	 * @return The job's index, which its seed is derived from
+	 */
+	public int addJob(Job job) {
+		this.jobs.add(job);
+		return this.jobs.size() - 1;
+	}
+
+	public int getJobCount() {
+		return this.jobs.size();
+	}
+
+	/**
+	 * Returns the seed a job is run with
+	 * @param seed The sweep's seed
+	 * @param job Index of the job
+	 * @return
+	 */
+	public static long getJobSeed(long seed, int job) {
+		long z = seed + 0x9E3779B97F4A7C15L * (job + 1L);
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Returns every combination of one value from each axis, the last axis varying fastest
+	 * @param axes Values of each parameter of the sweep
+	 * @return One array per configuration, holding a value for each axis
+	 */
+	public static List<int[]> getConfigurations(int[]... axes) {
+		List<int[]> configurations = new ArrayList<int[]>();
+		configurations.add(new int[0]);
+		for (int[] axis : axes) {
+			List<int[]> extended = new ArrayList<int[]>(configurations.size() * axis.length);
+			for (int[] configuration : configurations) {
+				for (int value : axis) {
+					int[] next = new int[configuration.length + 1];
+					System.arraycopy(configuration, 0, next, 0, configuration.length);
+					next[configuration.length] = value;
+					extended.add(next);
+				}
+			}
+			configurations = extended;
+		}
+		return configurations;
+	}
+
+	/**
+	 * Runs every job added, writing each job's lines as soon as it finishes. A job that throws is
+	 * reported on System.err and doesn't stop the others.
+	 * @param writer Where the lines are written, it is flushed after each job but not closed
+	 * @return The number of jobs which failed
+	 * @throws IOException If the results can't be written
+	 */
+	public int run(Writer writer) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.threadCount, Math.max(1, this.jobs.size())));
+		CompletionService<List<String>> completionService = new ExecutorCompletionService<List<String>>(executor);
+		try {
+			for (int i = 0; i < this.jobs.size(); ++i) {
+				final Job job = this.jobs.get(i);
+				final long jobSeed = ExperimentRunner.getJobSeed(this.seed, i);
+				completionService.submit(new Callable<List<String>>() {
+					@Override
+					public List<String> call() {
+						return job.run(jobSeed);
+					}
+				});
+			}
+
+			int failures = 0;
+			for (int i = 0; i < this.jobs.size(); ++i) {
+				try {
+					for (String line : completionService.take().get()) {
+						writer.write(line);
+						writer.write("\n");
+					}
+					writer.flush();
+				} catch (ExecutionException e) {
+					++failures;
+					System.err.println("Experiment job failed");
+					e.getCause().printStackTrace();
+				}
+			}
+			return failures;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while running experiments", e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,197 @@
+package burlap.debugtools;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * A small benchmark harness for timing hot methods without an external framework. Each benchmark is
+ * warmed up for a fixed time so the JIT has compiled it, then run in several measurement batches. For
+ * each batch it records the mean time per operation and, on JVMs that count them, the bytes allocated
+ * per operation by the calling thread. Every operation's result is folded into a sink so the JIT can't
+ * remove the work as dead code.
+ * @author brawner
+ *
+ */
+public class MicroBenchmark {
+	public static final long 				DEFAULT_WARMUPNANOS = 1000000000L;
+	public static final long 				DEFAULT_BATCHNANOS = 500000000L;
+	public static final int 				DEFAULT_BATCHCOUNT = 5;
+
+	private long 							warmupNanos;
+	private long 							batchNanos;
+	private int 							batchCount;
+	private volatile int 					sink;
+
+	public MicroBenchmark() {
+		this.warmupNanos = MicroBenchmark.DEFAULT_WARMUPNANOS;
+		this.batchNanos = MicroBenchmark.DEFAULT_BATCHNANOS;
+		this.batchCount = MicroBenchmark.DEFAULT_BATCHCOUNT;
+	}
+
+	/**
+	 * Constructor
+	 * @param warmupNanos Time each benchmark runs before it is measured
+	 * @param batchNanos Minimum time of each measurement batch
+	 * @param batchCount Number of measurement batches
+	 */
+	public MicroBenchmark(long warmupNanos, long batchNanos, int batchCount) {
+		this.warmupNanos = warmupNanos;
+		this.batchNanos = batchNanos;
+		this.batchCount = batchCount;
+	}
+
+	/**
+	 * An operation to benchmark. Whatever it returns is consumed by the harness.
+	 */
+	public interface Operation {
+		Object run();
+	}
+
+	/**
+	 * Warms up and measures an operation
+	 * @param name Name reported with the result
+	 * @param operation Operation to measure
+	 * @return The measured times and allocations
+	 */
+	public Result measure(String name, Operation operation) {
+		long operationsPerBatch = this.runFor(operation, this.warmupNanos);
+
+		double[] nanosPerOperation = new double[this.batchCount];
+		double bytesPerOperation = -1;
+		for (int b = 0; b < this.batchCount; ++b) {
+			long startBytes = MicroBenchmark.getCurrentThreadAllocatedBytes();
+			long start = System.nanoTime();
+			for (long i = 0; i < operationsPerBatch; ++i) {
+				this.consume(operation.run());
+			}
+			long elapsed = System.nanoTime() - start;
+			long endBytes = MicroBenchmark.getCurrentThreadAllocatedBytes();
+
+			nanosPerOperation[b] = (double)elapsed / operationsPerBatch;
+			if (startBytes >= 0 && endBytes >= 0) {
+				bytesPerOperation = (double)(endBytes - startBytes) / operationsPerBatch;
+			}
+		}
+		return new Result(name, operationsPerBatch, nanosPerOperation, bytesPerOperation);
+	}
+
+	/**
+	 * Measures an operation and prints its result
+	 * @param name Name reported with the result
+	 * @param operation Operation to measure
+	 * @return The measured times and allocations
+	 */
+	public Result measureAndPrint(String name, Operation operation) {
+		Result result = this.measure(name, operation);
+		System.out.println(result);
+		return result;
+	}
+
+	/**
+	 * Runs the operation for at least the given time, doubling the number of calls between clock reads.
+	 * @return The number of calls that fit in one measurement batch, at least 1
+	 */
+	private long runFor(Operation operation, long nanos) {
+		long calls = 0;
+		long chunk = 1;
+		long start = System.nanoTime();
+		long elapsed = 0;
+		while (elapsed < nanos || calls == 0) {
+			for (long i = 0; i < chunk; ++i) {
+				this.consume(operation.run());
+			}
+			calls += chunk;
+			chunk *= 2;
+			elapsed = System.nanoTime() - start;
+		}
+		double nanosPerCall = (double)elapsed / calls;
+		return Math.max(1, (long)(this.batchNanos / nanosPerCall));
+	}
+
+	private void consume(Object result) {
+		this.sink += (result == null) ? 0 : System.identityHashCode(result);
+	}
+
+	/**
+	 * Returns the number of bytes the current thread has allocated, or -1 if the JVM doesn't count them
+	 * @return
+	 */
+	public static long getCurrentThreadAllocatedBytes() {
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		if (threadBean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean)threadBean;
+			if (allocationBean.isThreadAllocatedMemorySupported() && allocationBean.isThreadAllocatedMemoryEnabled()) {
+				return allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Times and allocations of one benchmark
+	 */
+	public static class Result {
+		private String 						name;
+		private long 						operationsPerBatch;
+		private double[] 					nanosPerOperation;
+		private double 						bytesPerOperation;
+
+		public Result(String name, long operationsPerBatch, double[] nanosPerOperation, double bytesPerOperation) {
+			this.name = name;
+			this.operationsPerBatch = operationsPerBatch;
+			this.nanosPerOperation = nanosPerOperation.clone();
+			this.bytesPerOperation = bytesPerOperation;
+		}
+
+		public String getName() {return this.name;}
+
+		public long getOperationsPerBatch() {return this.operationsPerBatch;}
+
+		public double[] getNanosPerOperation() {return this.nanosPerOperation.clone();}
+
+		/**
+		 * Bytes allocated per operation in the last batch, -1 if the JVM doesn't count them
+		 * @return
+		 */
+		public double getBytesPerOperation() {return this.bytesPerOperation;}
+
+		public double getMeanNanos() {
+			double sum = 0.0;
+			for (double nanos : this.nanosPerOperation) {
+				sum += nanos;
+			}
+			return sum / this.nanosPerOperation.length;
+		}
+
+		public double getMinNanos() {
+			double min = Double.POSITIVE_INFINITY;
+			for (double nanos : this.nanosPerOperation) {
+				min = Math.min(min, nanos);
+			}
+			return min;
+		}
+
+		/**
+		 * Sample standard deviation of the batch means
+		 * @return
+		 */
+		public double getStandardDeviationNanos() {
+			if (this.nanosPerOperation.length < 2) {
+				return 0.0;
+			}
+			double mean = this.getMeanNanos();
+			double sum = 0.0;
+			for (double nanos : this.nanosPerOperation) {
+				sum += (nanos - mean) * (nanos - mean);
+			}
+			return Math.sqrt(sum / (this.nanosPerOperation.length - 1));
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-48s %14.1f ns/op  +- %10.1f  (min %14.1f)  %12.1f B/op  %d ops/batch",
+					this.name, this.getMeanNanos(), this.getStandardDeviationNanos(), this.getMinNanos(),
+					this.bytesPerOperation, this.operationsPerBatch);
+		}
+	}
+}